@@ -1,8 +1,7 @@
 #! /usr/bin/env bash
 #
 # Run Bakers Game
-# usage: bakersgame.sh <boardfile>
+# usage: bakersgame.sh [--seed <seed>] [--solutions <count>] [--threads <count>] [--time <seconds>] [--nodes <count>] [--prune] [--portfolio] [--restart <policy>] [--keep-visited] [--path-only] [--recent <count>] [--checkpoint <file>] [--checkpoint-interval <seconds>] [--store <file>] [--endgame <cards>] [--patterns <directory>] [--shorten <depth>] [--warm-start <solutionfile>] [--external <directory>] [--shards <count>] [--port <port>] [--auto] <boardfile>
 
-mvn exec:java -Dexec.args=$1
+mvn exec:java -Dexec.args="$*"
 exit 0
-
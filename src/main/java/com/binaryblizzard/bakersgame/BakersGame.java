@@ -1,10 +1,18 @@
 package com.binaryblizzard.bakersgame;
 
+import java.io.BufferedReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -27,18 +35,241 @@ public class BakersGame {
 
     private final Board initialBoard;
 
+    /** The seed for the random number generators that order moves of equal weight. */
+
+    private final long seed;
+
+    /** True if the searches prune against the best solution, this is always done when several searches run at once. */
+
+    private boolean pruning = false;
+
+    /** The policy that decides when a depth first search abandons a descent and starts again. */
+
+    private RestartPolicy restartPolicy = RestartPolicy.NONE;
+
+    /** True if the boards seen before are kept when a descent is abandoned. */
+
+    private boolean keepingVisited = false;
+
+    /** True if the depth first searches only keep the boards on their paths rather than every board they have seen. */
+
+    private boolean pathOnly = false;
+
+    /** The number of boards the depth first searches cache after finishing them when they only keep their paths. */
+
+    private int recentBoards = 0;
+
+    /** The file to checkpoint the depth first searches to and resume them from, null for no checkpoints. */
+
+    private Path checkpointPath = null;
+
+    /** The time between checkpoints in milliseconds. */
+
+    private long checkpointInterval = 60_000;
+
+    /** The most cards left off the Foundation for the depth first searches to solve the board exactly, 0 for never. */
+
+    private int endgameCards = 0;
+
+    /** The store of positions known to be dead or solved that the depth first searches share, null if there is none. */
+
+    private PositionStore positionStore = null;
+
+    /** The pattern databases the endgame solvers take their lower bounds from, null if there are none. */
+
+    private PatternDatabase patternDatabase = null;
+
+    /** The most moves in a shortcut when the best solution is shortened, negative to leave solutions as they are. */
+
+    private int shortcutDepth = SolutionShortener.DEFAULT_DEPTH;
+
+    /** A solution known before the run, e.g. from an earlier run, null if there is none. */
+
+    private List<Move> knownSolution = null;
+
+    /** The number of boards the depth first searches are expected to see, 0 if not known. */
+
+    private int expectedBoards = 0;
+
+    /** The estimate of the search tree the settings were chosen from, null if there is none. */
+
+    private TreeSizeEstimator.Estimate estimate = null;
+
+    /** The BestSolution of the run in progress, null when no run is in progress. */
+
+    private volatile BestSolution currentRun = null;
+
+    /** The width of the first pass of the beam search in a portfolio. */
+
+    private static final int PORTFOLIO_BEAM_WIDTH = 256;
+
+    /** The most boards in the estimated tree for the automatic settings to search all of it for the shortest solution. */
+
+    private static final double AUTO_WHOLE_TREE_BOARDS = 1e6;
+
+    /** The least share of the random probes that have to win for the automatic settings to pick a depth first search. */
+
+    private static final double AUTO_SOLUTION_RATE = 0.01;
+
+    /** The least time budget the automatic settings pick in milliseconds. */
+
+    private static final long AUTO_MIN_TIME = 10_000;
+
+    /** The most time budget the automatic settings pick in milliseconds. */
+
+    private static final long AUTO_MAX_TIME = 600_000;
+
+    /** The most boards the automatic settings make room for in the set of boards seen before. */
+
+    private static final int AUTO_MAX_EXPECTED_BOARDS = 1 << 24;
+
     /**
      * Create a BakersGame solver.
      *
      * @param boardFile A path to a file defining the initial deal
+     * @param seed The seed for the random number generator that orders moves of equal weight
      * @throws IOException If the file can't be read
      */
 
-    public BakersGame(String boardFile) throws IOException {
+    public BakersGame(String boardFile, long seed) throws IOException {
 
+        this.seed = seed;
         initialBoard = new Board(boardFile);
         boardName = Paths.get(boardFile).getFileName().toString().replaceFirst("[.][^.]+$", "");
-        LOG.info("Board name: " + boardName);
+        LOG.info("Board name: " + boardName + ", seed: " + seed);
+    }
+
+    /**
+     * Create a BakersGame solver with a random seed.
+     *
+     * @param boardFile A path to a file defining the initial deal
+     * @throws IOException If the file can't be read
+     */
+
+    public BakersGame(String boardFile) throws IOException {
+        this(boardFile, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Set whether the searches prune against the best solution found so far.
+     *
+     * @param pruning true to skip boards that can't lead to a shorter solution
+     */
+
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Set the policy that decides when a depth first search abandons a descent and starts again.
+     *
+     * @param restartPolicy The restart policy
+     * @param keepingVisited true to keep the boards seen before when a descent is abandoned
+     */
+
+    public void setRestartPolicy(RestartPolicy restartPolicy, boolean keepingVisited) {
+
+        this.restartPolicy = restartPolicy;
+        this.keepingVisited = keepingVisited;
+    }
+
+    /**
+     * Have the depth first searches only keep the boards on their paths, so their memory grows with the depth of the
+     * search rather than with the number of boards seen, optionally with a fixed size cache of the boards they finished
+     * with most recently.
+     *
+     * @param pathOnly true to only keep the paths
+     * @param recentBoards The number of boards to cache, 0 for no cache
+     */
+
+    public void setPathOnly(boolean pathOnly, int recentBoards) {
+
+        this.pathOnly = pathOnly;
+        this.recentBoards = recentBoards;
+    }
+
+    /**
+     * Checkpoint the depth first searches to a file every so often. If the file already exists the searches resume from
+     * it. When several searches run at once each one has its own file named after the given one.
+     *
+     * @param checkpointPath The file to write the checkpoints to
+     * @param checkpointInterval The time between checkpoints in milliseconds
+     */
+
+    public void setCheckpoint(Path checkpointPath, long checkpointInterval) {
+
+        this.checkpointPath = checkpointPath;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Have the depth first searches solve the boards with few cards left off the Foundation exactly.
+     *
+     * @param endgameCards The most cards left off the Foundation for a board to be solved exactly, 0 for never
+     */
+
+    public void setEndgameCards(int endgameCards) {
+        this.endgameCards = endgameCards;
+    }
+
+    /**
+     * Have the depth first searches use a store of positions known to be dead or solved, and add what they learn to it.
+     * The store lasts across runs and deals.
+     *
+     * @param positionStore The store or null for none
+     */
+
+    public void setPositionStore(PositionStore positionStore) {
+        this.positionStore = positionStore;
+    }
+
+    /**
+     * Have the endgame solvers of the depth first searches take their lower bounds from pattern databases.
+     *
+     * @param patternDatabase The databases or null for none
+     */
+
+    public void setPatternDatabase(PatternDatabase patternDatabase) {
+        this.patternDatabase = patternDatabase;
+    }
+
+    /**
+     * Set how hard the solutions are shortened. Each solution the searches find has its loops and double moves of a card
+     * taken out before it is compared with the best one when the searches prune, and the best solution at the end also
+     * has stretches replaced by shortcuts of up to this many moves (see SolutionShortener).
+     *
+     * @param shortcutDepth The most moves in a shortcut, 0 for none, negative to leave solutions as they are
+     */
+
+    public void setShortcutDepth(int shortcutDepth) {
+        this.shortcutDepth = shortcutDepth;
+    }
+
+    /**
+     * Start the searches from a solution found before, e.g. by an earlier run. It is the best solution until a shorter
+     * one is found, so the searches prune against it from the start and only look for shorter ones, and the depth
+     * first searches skip the boards they reach in more moves than it took to reach them.
+     *
+     * @param knownSolution The moves of the solution
+     * @throws IllegalArgumentException If the moves don't win the game from the initial board
+     */
+
+    public void setKnownSolution(List<Move> knownSolution) throws IllegalArgumentException {
+
+        Board board = initialBoard;
+        try {
+            for (Move move : knownSolution)
+                board = board.applyMove(move);
+
+        } catch (IllegalStateException ex) {
+            throw new IllegalArgumentException("The solution does not fit the board: " + ex.getMessage(), ex);
+        }
+
+        if (! board.gameIsWon())
+            throw new IllegalArgumentException("The solution does not win the game");
+
+        this.knownSolution = new ArrayList<>(knownSolution);
+        LOG.info("Starting from a known solution of length " + knownSolution.size());
     }
 
     /**
@@ -51,112 +282,353 @@ public class BakersGame {
      */
 
     public boolean solveGame(int maxSolutions) throws IOException {
+        return solveGame(maxSolutions, 1, 0);
+    }
 
-        // Initialize the game data structures
+    /**
+     * Generate solutions for the Bakers Game using several searches at once and write out the shortest one.
+     *
+     * @param maxSolutions The maximum number of solutions to stop after
+     * @param threads The number of searches to run at once
+     * @param timeBudget The time to stop after in milliseconds, 0 for no limit
+     * @return true if a solution was found.
+     * @throws IOException If an error occurs
+     * @see #solve(int, int, long, long)
+     */
 
-        List<Move> solution = null;
-        Stack<Board> gameStates = new Stack<>();
-        Set<String> previousBoards = new HashSet<>();
+    public boolean solveGame(int maxSolutions, int threads, long timeBudget) throws IOException {
+        return writeSolution(solve(maxSolutions, threads, timeBudget, 0));
+    }
 
-        // Some stats to collect
+    /**
+     * Search for the shortest solution within a budget. Each search restarts from the initial board with its own seed
+     * after every solution, so they are independent random probes of the tree. They all publish to and prune against one
+     * shared best solution, so every solution found is shorter than the last. The run ends when the total number of
+     * solutions is reached, the time or node budget runs out, a search without a budget covers its whole tree or
+     * cancel() is called, and whatever is the best solution at that point is returned.
+     *
+     * @param maxSolutions The maximum number of solutions to stop after
+     * @param threads The number of searches to run at once
+     * @param timeBudget The time to stop after in milliseconds, 0 for no limit
+     * @param nodeBudget The number of boards to stop after, counted across all the searches, 0 for no limit
+     * @return The shortest solution found or null if there is none
+     * @throws IOException If an error occurs
+     */
 
-        int cnt = 0;
-        int skipped = 0;
-        int solutions = 0;
+    public List<Move> solve(int maxSolutions, int threads, long timeBudget, long nodeBudget) throws IOException {
+
+        BestSolution bestSolution = new BestSolution(maxSolutions, timeBudget, nodeBudget);
+        boolean pruningAll = pruning || (threads > 1) || (knownSolution != null);
+        if (pruningAll)
+            setUpShortener(bestSolution);
+        seedKnownSolution(bestSolution);
+
+        List<Search> searches = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            SearchContext context = new SearchContext(seed + i, new MoveHistory());
+            context.setPruning(pruningAll);
+            context.setRestartPolicy(restartPolicy);
+            context.setKeepingVisited(keepingVisited);
+            context.setPathOnly(pathOnly);
+            context.setRecentBoards(recentBoards);
+            context.setPositionStore(positionStore);
+            context.setEndgameCards(endgameCards);
+            context.setPatternDatabase(patternDatabase);
+            context.setKnownSolution(knownSolution);
+            context.setExpectedBoards(expectedBoards);
+            DepthFirstSearch search = new DepthFirstSearch(initialBoard, context, bestSolution);
+            if (checkpointPath != null)
+                setUpCheckpoint(search, (threads == 1) ? checkpointPath : checkpointPath.resolveSibling(checkpointPath.getFileName() + "." + i));
+            searches.add(search);
+        }
 
-        Board currentBoard = initialBoard;
-        previousBoards.add(currentBoard.getSignature());
+        return runSearches(searches, bestSolution);
+    }
 
-        // This is the main loop where we apply the next move to a board and check for a solution.
+    /**
+     * Have a search take checkpoints, resuming it from the last one if there is one.
+     *
+     * @param search The search
+     * @param path The file for its checkpoints
+     * @throws IOException If the checkpoint can't be read
+     */
 
-        while (true) {
+    private void setUpCheckpoint(DepthFirstSearch search, Path path) throws IOException {
 
-            // If there are no more moves with the current board, we have to pop the previous board from the stack. If we run out of boards we are done
+        Checkpoint checkpoint = null;
+        if (Files.exists(path)) {
+            LOG.info("Resuming from checkpoint " + path);
+            checkpoint = Checkpoint.read(path);
+        }
 
-            while (currentBoard.boardHasFailed())
-                if (gameStates.isEmpty()) {
+        search.setCheckpoint(new CheckpointWriter(path, checkpointInterval, checkpoint), checkpoint);
+    }
 
-                    // We've searched the whole tree
+    /**
+     * Solve the game with a portfolio of different search strategies running at once, since which one does best depends
+     * on the deal. Without a budget the first solution found wins and the other searches are stopped, with one the
+     * searches all run until it is used up and the shortest solution wins. The strategy that found it is logged.
+     *
+     * @param timeBudget The time to stop after in milliseconds, 0 for no limit
+     * @param nodeBudget The number of boards to stop after, counted across all the searches, 0 for no limit
+     * @return The shortest solution found or null if there is none
+     * @throws IOException If an error occurs
+     */
 
-                    if (solution != null) {
-                        LOG.info("Final solution");
-                        dumpGameSolution(solution);
-                        return true;
-                    }
+    public List<Move> solvePortfolio(long timeBudget, long nodeBudget) throws IOException {
+
+        boolean budgeted = (timeBudget > 0) || (nodeBudget > 0);
+        BestSolution bestSolution = new BestSolution(budgeted ? Integer.MAX_VALUE : 1, timeBudget, nodeBudget);
+        setUpShortener(bestSolution);
+        seedKnownSolution(bestSolution);
+        SearchContext dfsContext = new SearchContext(seed, new MoveHistory());
+        dfsContext.setPruning(true);
+        dfsContext.setRestartPolicy(restartPolicy);
+        dfsContext.setKeepingVisited(keepingVisited);
+        dfsContext.setPathOnly(pathOnly);
+        dfsContext.setRecentBoards(recentBoards);
+        dfsContext.setPositionStore(positionStore);
+        dfsContext.setEndgameCards(endgameCards);
+        dfsContext.setPatternDatabase(patternDatabase);
+        dfsContext.setKnownSolution(knownSolution);
+        dfsContext.setExpectedBoards(expectedBoards);
+
+        List<Search> searches = new ArrayList<>();
+        searches.add(new DepthFirstSearch(initialBoard, dfsContext, bestSolution));
+        searches.add(new BestFirstSearch(initialBoard, new SearchContext(seed + 1, new MoveHistory()), BoardEvaluator.BALANCED, bestSolution));
+        searches.add(new BestFirstSearch(initialBoard, new SearchContext(seed + 2, new MoveHistory()), BoardEvaluator.CAUTIOUS, bestSolution));
+        searches.add(new BeamSearch(initialBoard, new SearchContext(seed + 3, new MoveHistory()), BoardEvaluator.GREEDY, PORTFOLIO_BEAM_WIDTH, bestSolution));
+
+        List<Move> solution = runSearches(searches, bestSolution);
+        if (bestSolution.getWinner() != null)
+            LOG.info("Shortest solution found by the " + bestSolution.getWinner());
+
+        return solution;
+    }
 
-                    // We failed to find anything
+    /**
+     * Find a shortest solution with a breadth first search that keeps its boards in files, so it is only limited by the
+     * disk. It can take a long time on a whole deal, so a known solution helps by letting it prune the boards that
+     * can't beat it.
+     *
+     * @param directory The directory for the files of the search
+     * @param timeBudget The time to stop after in milliseconds, 0 for no limit
+     * @param nodeBudget The number of boards to stop after, 0 for no limit
+     * @return A shortest solution, the best one found if the search was stopped, or null if there is none
+     * @throws IOException If an error occurs
+     */
 
-                    LOG.severe("Failed to find a solution");
-                    return false;
+    public List<Move> solveExternal(Path directory, long timeBudget, long nodeBudget) throws IOException {
 
-                } else {
+        BestSolution bestSolution = new BestSolution(Integer.MAX_VALUE, timeBudget, nodeBudget);
+        seedKnownSolution(bestSolution);
+        SearchContext context = new SearchContext(seed, new MoveHistory());
+        List<Search> searches = List.of(new ExternalBreadthFirstSearch(initialBoard, context, directory, ExternalBreadthFirstSearch.DEFAULT_RUN_RECORDS, bestSolution));
+        try {
+            return runSearches(searches, bestSolution);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
 
-                    // Just pop the previous board
+    /**
+     * Search with the boards spread over several ShardWorker processes, which have to be started separately with the
+     * same board file and connect to the given port. Each worker keeps only the boards it owns, so the search can hold
+     * more boards than fit in one process.
+     *
+     * @param shards The number of workers to wait for
+     * @param port The port the workers connect to
+     * @param maxSolutions The maximum number of solutions to stop after
+     * @param timeBudget The time to stop after in milliseconds, 0 for no limit
+     * @param nodeBudget The number of boards to stop after, counted across all the workers, 0 for no limit
+     * @return The shortest solution found or null if there is none
+     * @throws IOException If an error occurs
+     */
 
-                    currentBoard = gameStates.pop();
-                }
+    public List<Move> solveSharded(int shards, int port, int maxSolutions, long timeBudget, long nodeBudget) throws IOException {
 
-            // Try the next move with the current board
+        BestSolution bestSolution = new BestSolution(maxSolutions, timeBudget, nodeBudget);
+        setUpShortener(bestSolution);
+        seedKnownSolution(bestSolution);
+        List<Search> searches = List.of(new ShardCoordinator(initialBoard, shards, port, bestSolution));
+        try {
+            return runSearches(searches, bestSolution);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
 
-            Board nextBoard = currentBoard.applyNextMove();
+    /**
+     * Choose how to search from an estimate of the size of the search tree, then search. A tree small enough to search
+     * all of gets a pruning depth first search for the shortest solution. Otherwise a depth first search is used if the
+     * random probes of the estimate come across solutions often enough, and the portfolio if they don't, since its
+     * best first searches steer towards the few solutions there are. Without a budget the time budget is the time the
+     * estimate says the tree would take, within limits, and the set of boards seen before is made big enough for the
+     * boards that can be searched in that time.
+     *
+     * @param maxSolutions The maximum number of solutions to stop after
+     * @param threads The number of depth first searches to run at once
+     * @param timeBudget The time to stop after in milliseconds, 0 to choose one
+     * @param nodeBudget The number of boards to stop after, counted across all the searches, 0 for no limit
+     * @return The shortest solution found, empty if the board is already won, or null if there is none
+     * @throws IOException If an error occurs
+     */
 
-            // See if we have a solution
+    public List<Move> solveAuto(int maxSolutions, int threads, long timeBudget, long nodeBudget) throws IOException {
 
-            if (nextBoard.gameIsWon()) {
+        if (initialBoard.gameIsWon()) {
+            LOG.info("The board is already won, there is nothing to estimate or search");
+            return new ArrayList<>();
+        }
 
-                // Check to see if this is the shortest solution so far
+        estimate = new TreeSizeEstimator(seed).estimate(initialBoard, TreeSizeEstimator.DEFAULT_NODE_BUDGET);
+        LOG.info("Estimated " + estimate);
 
-                solutions++;
-                if (solutions % 100 == 0)
-                    LOG.info("Found " + solutions + " solutions");
+        boolean wholeTree = estimate.getTreeSize() <= AUTO_WHOLE_TREE_BOARDS;
+        if (! wholeTree && (timeBudget == 0) && (nodeBudget == 0))
+            timeBudget = Math.max(AUTO_MIN_TIME, Math.min(AUTO_MAX_TIME, estimate.getTreeTime()));
+        double reachable = (timeBudget > 0) ? estimate.getBoardsPerSecond() * timeBudget / 1000 : estimate.getTreeSize();
+        expectedBoards = (int) Math.min(AUTO_MAX_EXPECTED_BOARDS, Math.min(estimate.getTreeSize(), reachable));
 
-                if ((solution == null) || (nextBoard.getSolution().size() < solution.size())) {
+        String budget = (timeBudget > 0) ? " with a time budget of " + (timeBudget / 1000) + " s" : "";
+        if (wholeTree) {
+            LOG.info("Searching the whole tree for the shortest solution" + budget + " and room for " + expectedBoards + " boards");
+            pruning = true;
+            return solve(maxSolutions, threads, timeBudget, nodeBudget);
+        }
 
-                    // Yes so save it and print it
+        if (estimate.getSolutionRate() >= AUTO_SOLUTION_RATE) {
+            LOG.info("Running the depth first search" + budget + " and room for " + expectedBoards + " boards");
+            return solve(maxSolutions, threads, timeBudget, nodeBudget);
+        }
 
-                    LOG.info("Found solution #" + solutions + " of length " + nextBoard.getSolution().size() + ", previous shortest was " + (solution == null ? "" : solution.size()));
-                    solution = new ArrayList<>(nextBoard.getSolution());
-                }
+        LOG.info("Running the portfolio" + budget + " and room for " + expectedBoards + " boards");
+        return solvePortfolio(timeBudget, nodeBudget);
+    }
+
+    /**
+     * Have the solutions published to a BestSolution shortened, so searches that prune prune against the shortened
+     * length. Only the quick shortenings are done here since there may be many solutions.
+     *
+     * @param bestSolution The BestSolution
+     */
 
-                // Quit if we reach the maximum solutions
+    private void setUpShortener(BestSolution bestSolution) {
 
-                if (solutions == maxSolutions) {
-                    LOG.info("Quitting after " + solutions + " solutions, shortest is " + solution.size());
-                    dumpGameSolution(solution);
-                    return true;
-                }
+        if (shortcutDepth >= 0)
+            bestSolution.setShortener(new SolutionShortener(initialBoard, 0));
+    }
 
-                // Reset to the first board and keep looking for more
+    /**
+     * Start a run from the known solution, if there is one, without counting it as one of the solutions of the run.
+     *
+     * @param bestSolution The BestSolution of the run
+     */
 
-                previousBoards.clear();
-                gameStates.clear();
-                nextBoard = initialBoard;
-                nextBoard.computePendingMoves();
-            }
+    private void seedKnownSolution(BestSolution bestSolution) {
 
-            // Have we seen next board before?
+        if (knownSolution == null)
+            return;
 
-            if (! previousBoards.contains(nextBoard.getSignature())) {
+        Board board = initialBoard;
+        for (Move move : knownSolution)
+            board = board.applyMove(move);
+        bestSolution.seed(board, "known solution");
+    }
+
+    /**
+     * Stop the run in progress. The searches stop within a board and the solve method returns the best solution found
+     * so far. This is meant to be called from another thread, it does nothing if no run is in progress.
+     */
+
+    public void cancel() {
+
+        BestSolution bestSolution = currentRun;
+        if (bestSolution != null)
+            bestSolution.cancel();
+    }
+
+    /**
+     * Run a set of searches, one in this thread or all of them at once in a pool. When this returns they have all
+     * stopped.
+     *
+     * @param searches The searches to run
+     * @param bestSolution The BestSolution they publish to
+     * @return The shortest solution found or null if there is none
+     * @throws IOException If a search fails
+     */
+
+    private List<Move> runSearches(List<Search> searches, BestSolution bestSolution) throws IOException {
+
+        currentRun = bestSolution;
+        try {
+
+            if (searches.size() == 1)
+                searches.get(0).run();
 
-                // No so save the previous board on the stack and move forward with this one
+            else {
 
-                gameStates.push(currentBoard);
-                currentBoard = nextBoard;
-                previousBoards.add(currentBoard.getSignature());
+                ExecutorService executor = Executors.newFixedThreadPool(searches.size());
+                try {
 
-            } else
+                    List<Future<?>> futures = new ArrayList<>(searches.size());
+                    for (Search search : searches)
+                        futures.add(executor.submit(search));
+                    for (Future<?> future : futures)
+                        future.get();
 
-                // Yes so just skip it and continue with the current one
+                } catch (InterruptedException | ExecutionException ex) {
+                    throw new IOException("Search failed", ex);
 
-                skipped++;
+                } finally {
+                    executor.shutdown();
+                }
+            }
 
-            // Output some information periodically
+        } finally {
+            bestSolution.finish();
+            currentRun = null;
+            if (positionStore != null) {
+                positionStore.flush();
+                LOG.info("Position store has " + positionStore.size() + " positions");
+            }
+        }
 
-//            if (cnt++ % 100 == 0) {
-//                LOG.info(currentBoard.toString() + " stack depth: " + gameStates.size() + " cnt: " + cnt + " skipped: " + skipped);
-//                stdin.readLine();
-//            }
+        List<Move> solution = bestSolution.getSolution();
+        if (estimate != null)
+            LOG.info(String.format("Predicted %.3g boards in the tree and solutions of %s moves, expanded %d boards and found %s", estimate.getTreeSize(),
+                    (estimate.getMedianSolutionDepth() < 0) ? "unknown" : "about " + estimate.getMedianSolutionDepth(), bestSolution.getNodes(),
+                    (solution == null) ? "no solution" : "a solution of " + solution.size() + " moves"));
+        if (solution == null)
+            return null;
+
+        LOG.info("Quitting after " + bestSolution.getSolutions() + " solutions and " + bestSolution.getNodes() + " boards, shortest is " + solution.size());
+        if (shortcutDepth >= 0) {
+            long start = System.currentTimeMillis();
+            List<Move> shortened = new SolutionShortener(initialBoard, shortcutDepth).shorten(solution);
+            LOG.info("Shortened the solution from " + solution.size() + " to " + shortened.size() + " moves in " + (System.currentTimeMillis() - start) + " ms");
+            solution = shortened;
         }
+
+        return solution;
+    }
+
+    /**
+     * Write out a solution.
+     *
+     * @param solution The solution, null if none was found
+     * @return true if there is a solution
+     */
+
+    private boolean writeSolution(List<Move> solution) {
+
+        if (solution == null) {
+            LOG.severe("Failed to find a solution");
+            return false;
+        }
+
+        dumpGameSolution(solution);
+        return true;
     }
 
     /**
@@ -182,9 +654,70 @@ public class BakersGame {
     }
 
     /**
-     * Try to solve a BakersGame
+     * Read a solution written by an earlier run, one move per line.
      *
-     * @param args The path to a file with the initial board state
+     * @param path The solution file
+     * @return The moves of the solution
+     * @throws IOException If the file can't be read or a line is not a move
+     */
+
+    public static List<Move> readSolution(Path path) throws IOException {
+
+        List<Move> solution = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank())
+                    continue;
+
+                try {
+                    solution.add(Move.parse(line));
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException(path + " line " + lineNumber + ": " + ex.getMessage(), ex);
+                }
+            }
+        }
+
+        return solution;
+    }
+
+    /**
+     * Print the command line options and exit.
+     */
+
+    private static void usage() {
+
+        System.err.println("usage: BakersGame [--seed <seed>] [--solutions <count>] [--threads <count>] [--time <seconds>] [--nodes <count>] [--prune] [--portfolio] [--restart <policy>] [--keep-visited] [--path-only] [--recent <count>] [--checkpoint <file>] [--checkpoint-interval <seconds>] [--store <file>] [--endgame <cards> [--patterns <directory>]] [--shorten <depth>] [--warm-start <solutionfile>] [--external <directory>] [--shards <count>] [--port <port>] [--auto] <boardfile>");
+        System.exit(2);
+    }
+
+    /**
+     * Get the value of an option, printing the usage and exiting if the command line ends before it.
+     *
+     * @param args The command line
+     * @param i The index of the value
+     * @return The value
+     */
+
+    private static String optionValue(String[] args, int i) {
+
+        if (i >= args.length) {
+            System.err.println("No value for " + args[i - 1]);
+            usage();
+        }
+
+        return args[i];
+    }
+
+    /**
+     * Try to solve a BakersGame. --patterns only gives the endgame solver of --endgame its lower bounds, the main search
+     * doesn't prune with the pattern databases, so it needs --endgame.
+     *
+     * @param args The command line options followed by the path to a file with the initial board state:
+     *             <pre>[--seed &lt;seed&gt;] [--solutions &lt;count&gt;] [--threads &lt;count&gt;] [--time &lt;seconds&gt;] [--nodes &lt;count&gt;] [--prune] [--portfolio] [--restart &lt;policy&gt;] [--keep-visited] [--path-only] [--recent &lt;count&gt;] [--checkpoint &lt;file&gt;] [--checkpoint-interval &lt;seconds&gt;] [--store &lt;file&gt;] [--endgame &lt;cards&gt; [--patterns &lt;directory&gt;]] [--shorten &lt;depth&gt;] [--warm-start &lt;solutionfile&gt;] [--external &lt;directory&gt;] [--shards &lt;count&gt;] [--port &lt;port&gt;] [--auto] &lt;boardfile&gt;</pre>
      */
 
     public static void main(String[] args) {
@@ -194,8 +727,107 @@ public class BakersGame {
         System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
         try {
 
-            BakersGame bakersGame = new BakersGame(args[0]);
-            boolean success = bakersGame.solveGame(2000);
+            // Parse the command line
+
+            String boardFile = null;
+            long seed = new SplittableRandom().nextLong();
+            int maxSolutions = 2000;
+            int threads = 1;
+            long timeBudget = 0;
+            long nodeBudget = 0;
+            boolean pruning = false;
+            boolean portfolio = false;
+            RestartPolicy restartPolicy = RestartPolicy.NONE;
+            boolean keepingVisited = false;
+            boolean pathOnly = false;
+            int recentBoards = 0;
+            Path checkpointPath = null;
+            long checkpointInterval = 60_000;
+            Path storePath = null;
+            int endgameCards = 0;
+            Path patternsPath = null;
+            int shortcutDepth = SolutionShortener.DEFAULT_DEPTH;
+            Path warmStartPath = null;
+            Path externalPath = null;
+            int shards = 0;
+            int port = ShardProtocol.DEFAULT_PORT;
+            boolean auto = false;
+            for (int i = 0; i < args.length; i++)
+                if (args[i].equals("--seed"))
+                    seed = Long.parseLong(optionValue(args, ++i));
+                else if (args[i].equals("--solutions"))
+                    maxSolutions = Integer.parseInt(optionValue(args, ++i));
+                else if (args[i].equals("--threads"))
+                    threads = Integer.parseInt(optionValue(args, ++i));
+                else if (args[i].equals("--time"))
+                    timeBudget = Long.parseLong(optionValue(args, ++i)) * 1000;
+                else if (args[i].equals("--nodes"))
+                    nodeBudget = Long.parseLong(optionValue(args, ++i));
+                else if (args[i].equals("--prune"))
+                    pruning = true;
+                else if (args[i].equals("--portfolio"))
+                    portfolio = true;
+                else if (args[i].equals("--restart"))
+                    restartPolicy = RestartPolicy.parse(optionValue(args, ++i));
+                else if (args[i].equals("--keep-visited"))
+                    keepingVisited = true;
+                else if (args[i].equals("--path-only"))
+                    pathOnly = true;
+                else if (args[i].equals("--recent"))
+                    recentBoards = Integer.parseInt(optionValue(args, ++i));
+                else if (args[i].equals("--checkpoint"))
+                    checkpointPath = Paths.get(optionValue(args, ++i));
+                else if (args[i].equals("--checkpoint-interval"))
+                    checkpointInterval = Long.parseLong(optionValue(args, ++i)) * 1000;
+                else if (args[i].equals("--store"))
+                    storePath = Paths.get(optionValue(args, ++i));
+                else if (args[i].equals("--endgame"))
+                    endgameCards = Integer.parseInt(optionValue(args, ++i));
+                else if (args[i].equals("--patterns"))
+                    patternsPath = Paths.get(optionValue(args, ++i));
+                else if (args[i].equals("--shorten"))
+                    shortcutDepth = Integer.parseInt(optionValue(args, ++i));
+                else if (args[i].equals("--warm-start"))
+                    warmStartPath = Paths.get(optionValue(args, ++i));
+                else if (args[i].equals("--external"))
+                    externalPath = Paths.get(optionValue(args, ++i));
+                else if (args[i].equals("--shards"))
+                    shards = Integer.parseInt(optionValue(args, ++i));
+                else if (args[i].equals("--port"))
+                    port = Integer.parseInt(optionValue(args, ++i));
+                else if (args[i].equals("--auto"))
+                    auto = true;
+                else
+                    boardFile = args[i];
+
+            if (boardFile == null)
+                usage();
+
+            // The pattern databases only bound the endgame solver, the main search doesn't prune with them
+
+            if ((patternsPath != null) && (endgameCards <= 0)) {
+                System.err.println("--patterns needs --endgame <cards>, the pattern databases only bound the endgame search");
+                usage();
+            }
+
+            BakersGame bakersGame = new BakersGame(boardFile, seed);
+            bakersGame.setPruning(pruning);
+            bakersGame.setRestartPolicy(restartPolicy, keepingVisited);
+            bakersGame.setPathOnly(pathOnly, recentBoards);
+            bakersGame.setCheckpoint(checkpointPath, checkpointInterval);
+            bakersGame.setEndgameCards(endgameCards);
+            bakersGame.setShortcutDepth(shortcutDepth);
+            if (warmStartPath != null)
+                bakersGame.setKnownSolution(readSolution(warmStartPath));
+            if (storePath != null)
+                bakersGame.setPositionStore(new PositionStore(storePath, PositionStore.DEFAULT_SLOTS));
+            if (patternsPath != null)
+                bakersGame.setPatternDatabase(new PatternDatabase(patternsPath));
+            List<Move> solution = (externalPath != null) ? bakersGame.solveExternal(externalPath, timeBudget, nodeBudget) :
+                    (shards > 0) ? bakersGame.solveSharded(shards, port, maxSolutions, timeBudget, nodeBudget) :
+                    auto ? bakersGame.solveAuto(maxSolutions, threads, timeBudget, nodeBudget) :
+                    portfolio ? bakersGame.solvePortfolio(timeBudget, nodeBudget) : bakersGame.solve(maxSolutions, threads, timeBudget, nodeBudget);
+            boolean success = bakersGame.writeSolution(solution);
             System.exit(success ? 0 : 1);
 
         } catch (Exception ex) {
@@ -0,0 +1,166 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A beam search for solutions. It expands the boards one move at a time, all the boards at one depth together, and only
+ * keeps the best few of the next depth as scored by a BoardEvaluator. A narrow beam is fast but can throw away every
+ * board that leads to a solution, so when the beam dies out the search starts again with one twice as wide.
+ */
+
+public class BeamSearch implements Search {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(BeamSearch.class.getName());
+
+    /** The number of boards to expand between reports to the BestSolution. */
+
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** The widest beam to try before giving up. */
+
+    private static final int MAX_WIDTH = 1 << 16;
+
+    /** The board that the search starts from. */
+
+    private final Board initialBoard;
+
+    /** The weights used to score the boards. */
+
+    private final BoardEvaluator evaluator;
+
+    /** Where solutions are published. */
+
+    private final BestSolution bestSolution;
+
+    /** The number of boards kept at each depth. */
+
+    private int width;
+
+    /** The number of boards expanded. */
+
+    private long nodes = 0;
+
+    /** The number of boards skipped because they were proved to be dead. */
+
+    private long deadlocked = 0;
+
+    /**
+     * Create a BeamSearch.
+     *
+     * @param initialBoard The board to start from
+     * @param context The search context for the boards of this search
+     * @param evaluator The weights used to score the boards
+     * @param width The number of boards kept at each depth in the first pass
+     * @param bestSolution Where to publish solutions
+     */
+
+    public BeamSearch(Board initialBoard, SearchContext context, BoardEvaluator evaluator, int width, BestSolution bestSolution) {
+
+        this.initialBoard = new Board(initialBoard, context);
+        this.evaluator = evaluator;
+        this.width = width;
+        this.bestSolution = bestSolution;
+    }
+
+    /**
+     * Run passes with wider and wider beams until the run is finished.
+     */
+
+    @Override
+    public void run() {
+
+        while ((width <= MAX_WIDTH) && ! bestSolution.isFinished()) {
+            runPass();
+            width *= 2;
+        }
+
+        // Report the boards expanded since the last full interval
+
+        bestSolution.countNodes(nodes % CHECK_INTERVAL);
+        LOG.info("The " + getName() + " expanded " + nodes + " boards and skipped " + deadlocked + " dead");
+    }
+
+    /**
+     * Run one pass of the search with the current width.
+     */
+
+    private void runPass() {
+
+        Set<String> previousBoards = new HashSet<>();
+        List<Board> beam = new ArrayList<>();
+        initialBoard.computePendingMoves();
+        beam.add(initialBoard);
+        previousBoards.add(initialBoard.getSignature());
+
+        while (! beam.isEmpty()) {
+
+            // Expand every board in the beam and keep the best of the boards that have not been seen before
+
+            List<Board> nextBeam = new ArrayList<>();
+            List<Integer> scores = new ArrayList<>();
+            for (Board board : beam) {
+
+                if (bestSolution.isFinished())
+                    return;
+                if (++nodes % CHECK_INTERVAL == 0)
+                    bestSolution.countNodes(CHECK_INTERVAL);
+
+                for (Board nextBoard : board.getNextBoards())
+                    if (nextBoard.gameIsWon()) {
+                        bestSolution.offer(nextBoard, getName());
+                        if (bestSolution.isFinished())
+                            return;
+
+                    } else if (nextBoard.isDead())
+                        deadlocked++;
+
+                    else if ((nextBoard.getSolutionLength() + Card.DECK_SIZE - nextBoard.getFoundationCount() < bestSolution.getBestLength()) &&
+                            previousBoards.add(nextBoard.getSignature())) {
+                        nextBeam.add(nextBoard);
+                        scores.add(evaluator.evaluate(nextBoard));
+                    }
+            }
+
+            beam = selectBest(nextBeam, scores);
+        }
+    }
+
+    /**
+     * Pick the boards with the highest scores. Boards with the same score keep the order they were found in.
+     *
+     * @param boards The boards to pick from
+     * @param scores The score of each board
+     * @return At most width of the boards
+     */
+
+    private List<Board> selectBest(List<Board> boards, List<Integer> scores) {
+
+        if (boards.size() <= width)
+            return boards;
+
+        List<Integer> indexes = new ArrayList<>(boards.size());
+        for (int i = 0; i < boards.size(); i++)
+            indexes.add(i);
+        indexes.sort(Comparator.comparing((Integer i) -> scores.get(i)).reversed());
+
+        List<Board> best = new ArrayList<>(width);
+        for (int i = 0; i < width; i++)
+            best.add(boards.get(indexes.get(i)));
+
+        return best;
+    }
+
+    /** @see Search#getName() */
+
+    @Override
+    public String getName() {
+        return "beam search with " + evaluator + " weights";
+    }
+}
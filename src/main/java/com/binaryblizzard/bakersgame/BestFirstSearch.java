@@ -0,0 +1,170 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A best first search for solutions. It keeps every board it has reached but not expanded in a queue ordered by the
+ * score a BoardEvaluator gives it and always expands the best one. It does not stop at the first solution, it carries
+ * on pruning against the best one known until the run is finished or the queue is empty.
+ */
+
+public class BestFirstSearch implements Search {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(BestFirstSearch.class.getName());
+
+    /** The number of boards to expand between reports to the BestSolution. */
+
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** A board waiting in the queue. */
+
+    private static final class Node {
+
+        /** The board. */
+
+        private final Board board;
+
+        /** The score of the board. */
+
+        private final int score;
+
+        /** The order the board was queued in, so that boards with the same score come out first in first out. */
+
+        private final long order;
+
+        /**
+         * Create a Node.
+         *
+         * @param board The board
+         * @param score The score of the board
+         * @param order The order the board was queued in
+         */
+
+        private Node(Board board, int score, long order) {
+
+            this.board = board;
+            this.score = score;
+            this.order = order;
+        }
+    }
+
+    /** The board that the search starts from. */
+
+    private final Board initialBoard;
+
+    /** The weights used to score the boards. */
+
+    private final BoardEvaluator evaluator;
+
+    /** Where solutions are published. */
+
+    private final BestSolution bestSolution;
+
+    /** The number of boards expanded. */
+
+    private long nodes = 0;
+
+    /** The number of boards skipped because they were proved to be dead. */
+
+    private long deadlocked = 0;
+
+    /**
+     * Create a BestFirstSearch.
+     *
+     * @param initialBoard The board to start from
+     * @param context The search context for the boards of this search
+     * @param evaluator The weights used to score the boards
+     * @param bestSolution Where to publish solutions
+     */
+
+    public BestFirstSearch(Board initialBoard, SearchContext context, BoardEvaluator evaluator, BestSolution bestSolution) {
+
+        this.initialBoard = new Board(initialBoard, context);
+        this.evaluator = evaluator;
+        this.bestSolution = bestSolution;
+    }
+
+    /**
+     * Run the search until the run is finished or there are no boards left.
+     */
+
+    @Override
+    public void run() {
+
+        PriorityQueue<Node> queue = new PriorityQueue<>((a, b) -> (a.score != b.score) ? Integer.compare(b.score, a.score) : Long.compare(a.order, b.order));
+        Set<String> previousBoards = new HashSet<>();
+        long order = 0;
+
+        initialBoard.computePendingMoves();
+        queue.add(new Node(initialBoard, evaluator.evaluate(initialBoard), order++));
+        previousBoards.add(initialBoard.getSignature());
+
+        while (! queue.isEmpty()) {
+
+            if (bestSolution.isFinished())
+                break;
+            if (++nodes % CHECK_INTERVAL == 0)
+                bestSolution.countNodes(CHECK_INTERVAL);
+
+            // Expand the best board, the bound may have dropped since it was queued
+
+            Board board = queue.poll().board;
+            if (! canBeatBest(board))
+                continue;
+
+            for (Board nextBoard : board.getNextBoards()) {
+
+                if (nextBoard.gameIsWon()) {
+                    bestSolution.offer(nextBoard, getName());
+                    if (bestSolution.isFinished()) {
+                        finish(queue.size());
+                        return;
+                    }
+
+                } else if (nextBoard.isDead())
+                    deadlocked++;
+
+                else if (canBeatBest(nextBoard) && previousBoards.add(nextBoard.getSignature()))
+                    queue.add(new Node(nextBoard, evaluator.evaluate(nextBoard), order++));
+            }
+        }
+
+        finish(queue.size());
+    }
+
+    /**
+     * Check if a board could still lead to a solution shorter than the best one. Every card that is not on the
+     * Foundation needs at least one more move.
+     *
+     * @param board The board to check
+     * @return true if the board is worth expanding
+     */
+
+    private boolean canBeatBest(Board board) {
+        return board.getSolutionLength() + Card.DECK_SIZE - board.getFoundationCount() < bestSolution.getBestLength();
+    }
+
+    /** @see Search#getName() */
+
+    @Override
+    public String getName() {
+        return "best first search with " + evaluator + " weights";
+    }
+
+    /**
+     * Report the boards expanded since the last full interval and log the statistics for this search.
+     *
+     * @param queued The number of boards left in the queue
+     */
+
+    private void finish(int queued) {
+
+        bestSolution.countNodes(nodes % CHECK_INTERVAL);
+        LOG.info("The " + getName() + " expanded " + nodes + " boards, skipped " + deadlocked + " dead and left " + queued + " in the queue");
+    }
+}
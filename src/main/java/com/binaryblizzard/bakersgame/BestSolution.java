@@ -0,0 +1,290 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The best solution found so far by one or more searches running at the same time. The searches publish every solution
+ * they find here and prune against the best length. It also decides when the whole run is finished, either because
+ * enough solutions were found, the time or node budget ran out, one of the searches covered its whole tree or the run
+ * was cancelled from another thread.
+ * <p>
+ * Whatever the reason, stopping only sets a volatile flag that the searches poll on every board, so checking costs a
+ * memory read and they stop within one board of it. The deadline is set by a timer rather than by the searches reading
+ * the clock, and the searches report the boards they expand in batches.
+ */
+
+public class BestSolution {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(BestSolution.class.getName());
+
+    /** The timer that ends runs at their deadline, shared by all runs. */
+
+    private static final Timer TIMER = new Timer("BestSolution deadline", true);
+
+    /** The number of solutions to stop after. */
+
+    private final int maxSolutions;
+
+    /** The time budget in milliseconds, 0 for no limit. */
+
+    private final long timeBudget;
+
+    /** The number of boards the searches may expand between them, 0 for no limit. */
+
+    private final long nodeBudget;
+
+    /** The number of boards the searches have reported expanding. */
+
+    private final AtomicLong nodes = new AtomicLong();
+
+    /** The task that finishes the run at the deadline, null if there is no time budget. */
+
+    private final TimerTask deadlineTask;
+
+    /** Shortens each solution before it is compared with the best one, null to take them as they are. */
+
+    private SolutionShortener shortener = null;
+
+    /** The shortest solution found so far. */
+
+    private List<Move> solution = null;
+
+    /** The name of the search that found the shortest solution. */
+
+    private String winner = null;
+
+    /** The length of the shortest solution found so far. */
+
+    private volatile int bestLength = Integer.MAX_VALUE;
+
+    /** The number of solutions found. */
+
+    private int solutions = 0;
+
+    /** Set when the run is finished. */
+
+    private volatile boolean finished = false;
+
+    /**
+     * Create a BestSolution. The clock for the time budget starts now.
+     *
+     * @param maxSolutions The number of solutions to stop after
+     * @param timeBudget The time to stop after in milliseconds, 0 for no limit
+     * @param nodeBudget The number of boards to stop after, 0 for no limit
+     */
+
+    public BestSolution(int maxSolutions, long timeBudget, long nodeBudget) {
+
+        this.maxSolutions = maxSolutions;
+        this.timeBudget = timeBudget;
+        this.nodeBudget = nodeBudget;
+
+        if (timeBudget > 0) {
+            deadlineTask = new TimerTask() {
+                @Override
+                public void run() {
+                    stop("Time budget used up");
+                }
+            };
+            TIMER.schedule(deadlineTask, timeBudget);
+
+        } else
+            deadlineTask = null;
+    }
+
+    /**
+     * Create a BestSolution with no node budget.
+     *
+     * @param maxSolutions The number of solutions to stop after
+     * @param timeBudget The time to stop after in milliseconds, 0 for no limit
+     */
+
+    public BestSolution(int maxSolutions, long timeBudget) {
+        this(maxSolutions, timeBudget, 0);
+    }
+
+    /**
+     * Shorten each solution before it is compared with the best one, so the searches prune against the shortened length.
+     *
+     * @param shortener The shortener or null to take the solutions as they are
+     */
+
+    public synchronized void setShortener(SolutionShortener shortener) {
+        this.shortener = shortener;
+    }
+
+    /**
+     * Publish a solution.
+     *
+     * @param board The winning board
+     * @param searchName The name of the search that found it
+     * @return true if the solution is the shortest one so far
+     */
+
+    public synchronized boolean offer(Board board, String searchName) {
+
+        // Count it and quit if we reach the maximum solutions
+
+        solutions++;
+        if (solutions % 100 == 0)
+            LOG.info("Found " + solutions + " solutions");
+        if (solutions >= maxSolutions)
+            finish();
+
+        // Check to see if this is the shortest solution so far
+
+        List<Move> offered = (shortener != null) ? shortener.shorten(board.getSolution()) : board.getSolution();
+        if (offered.size() >= bestLength)
+            return false;
+
+        LOG.info("Found solution #" + solutions + " of length " + offered.size() + ((offered.size() < board.getSolutionLength()) ? " (shortened from " + board.getSolutionLength() + ")" : "") +
+                " with " + searchName + ", previous shortest was " + (solution == null ? "" : solution.size()));
+        solution = offered;
+        winner = searchName;
+        bestLength = solution.size();
+        return true;
+    }
+
+    /**
+     * Start from a solution known before the run, such as one from an earlier run or a checkpoint. It becomes the bound
+     * the searches prune against but it is not counted as a solution found, so it doesn't end the run.
+     *
+     * @param board The winning board
+     * @param source Where the solution came from
+     */
+
+    public synchronized void seed(Board board, String source) {
+
+        List<Move> seeded = (shortener != null) ? shortener.shorten(board.getSolution()) : board.getSolution();
+        if (seeded.size() >= bestLength)
+            return;
+
+        LOG.info("Bounding the searches by the " + source + " of length " + seeded.size());
+        solution = seeded;
+        winner = source;
+        bestLength = solution.size();
+    }
+
+    /**
+     * Get the length of the shortest solution found so far.
+     *
+     * @return The length or Integer.MAX_VALUE if there is no solution yet
+     */
+
+    public int getBestLength() {
+        return bestLength;
+    }
+
+    /**
+     * Get the shortest solution.
+     *
+     * @return The solution or null if none was found
+     */
+
+    public synchronized List<Move> getSolution() {
+        return solution;
+    }
+
+    /**
+     * Get the name of the search that found the shortest solution.
+     *
+     * @return The name or null if no solution was found
+     */
+
+    public synchronized String getWinner() {
+        return winner;
+    }
+
+    /**
+     * Get the number of solutions found.
+     *
+     * @return The number of solutions
+     */
+
+    public synchronized int getSolutions() {
+        return solutions;
+    }
+
+    /**
+     * Check if the run is finished. This is a read of a volatile flag so it is cheap enough to call for every board.
+     *
+     * @return true if the searches should stop
+     */
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Report boards expanded by a search, which ends the run if the node budget is used up. Searches call this every
+     * so often with a batch of boards rather than for each one.
+     *
+     * @param count The number of boards expanded since the last report
+     */
+
+    public void countNodes(long count) {
+
+        if ((nodes.addAndGet(count) >= nodeBudget) && (nodeBudget > 0))
+            stop("Node budget used up");
+    }
+
+    /**
+     * Get the number of boards the searches have reported expanding.
+     *
+     * @return The number of boards
+     */
+
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    /**
+     * Check if the run has a time or node budget, i.e. it stops at some point even if the searches go on forever.
+     *
+     * @return true if the run has a budget
+     */
+
+    public boolean hasBudget() {
+        return (timeBudget > 0) || (nodeBudget > 0);
+    }
+
+    /**
+     * Cancel the run. The searches stop within a board and the best solution so far is kept. This can be called from
+     * any thread.
+     */
+
+    public void cancel() {
+        stop("Cancelled");
+    }
+
+    /**
+     * Mark the run as finished.
+     */
+
+    public void finish() {
+
+        finished = true;
+        if (deadlineTask != null)
+            deadlineTask.cancel();
+    }
+
+    /**
+     * Finish the run early and log why, unless it has already finished.
+     *
+     * @param reason The reason the run stopped
+     */
+
+    private synchronized void stop(String reason) {
+
+        if (! finished) {
+            LOG.info(reason);
+            finish();
+        }
+    }
+}
@@ -1,52 +1,116 @@
 package com.binaryblizzard.bakersgame;
 
 import com.binaryblizzard.bakersgame.heuristics.*;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.*;
 import java.util.logging.Logger;
 
 /** A class representing the state of a Bakers Game board. */
 
-@SuppressWarnings({"rawtypes", "unchecked"})
 public class Board {
 
     /** The logger for this class. */
 
     private static final Logger LOG = Logger.getLogger(Board.class.getName());
 
-    /** The foundation is the set of piles where cards ar built up in suit from Ace to King. */
+    /**
+     * The cards on the board. This holds the foundation, the set of piles where cards are built up in suit from Ace to
+     * King, the Tableau, the 8 columns (or cascades) of cards that can be arranged in descending order by suit, and the
+     * Reserve, the set of free cells that can hold up to 4 cards. The core is immutable and shared with the boards that
+     * were derived from this one wherever they have the same cards.
+     */
+
+    private final BoardCore core;
 
-    private final Map<Card.Suit, List<Card>> foundation = new HashMap<>();
+    /** The stages that the pending moves are generated in. */
 
-    /** The Tableau is the set of columns (or cascades) that consist of the cards that can be arranged in descending order by suit. There are 8 cascades. */
+    private enum Stage {
+        FOUNDATION,
+        OTHER,
+        DONE
+    }
 
-    private final ArrayList[] tableau = new ArrayList[8];
+    /** A list of pending moves. */
 
-    /** The set of free cells that can hold up to 4 cards. */
+    private final List<Move> pendingMoves = new ArrayList<>();
 
-    private final List<Card> reserve = new ArrayList<>(4);
+    /** The next stage of moves to generate. */
 
-    /** A list of pending moves. */
+    private Stage stage = Stage.FOUNDATION;
+
+    /** A mask with the bits of one source column in tableauMoves. */
+
+    private static final long ROW_MASK = 0xFFL;
+
+    /** A mask with the bits of one target column in tableauMoves. */
+
+    private static final long COLUMN_MASK = 0x0101010101010101L;
+
+    /** Bit (from * 8 + to) is set when the last card of Tableau column from can be moved on to Tableau column to. */
+
+    private long tableauMoves;
+
+    /** Bit (slot * 8 + to) is set when the card in a slot of the Reserve can be moved on to Tableau column to. */
+
+    private int reserveMoves;
+
+    /** A bit for each Tableau column that has changed since tableauMoves and reserveMoves were last brought up to date. */
+
+    private int staleColumns = 0xFF;
+
+    /** True if the Reserve has changed since reserveMoves was last brought up to date. */
+
+    private boolean staleReserve = true;
+
+    /** The codes of the moves generated for this board, null until they are all generated or if moves aren't reduced. */
+
+    private int[] generatedCodes = null;
+
+    /** The board made by the last move tried from this one, until the next move is tried. */
 
-    private final List<Move> pendingMoves = new ArrayList<>(110);
+    private Board lastChild = null;
+
+    /** The boards made by moves tried from this one that have tried all of their own moves, null if there are none. */
+
+    private List<Board> exhaustedChildren = null;
+
+    /** The codes of the moves not to try because they only reorder moves already tried, null if there are none. */
+
+    private int[] sleepingCodes = null;
+
+    /** True if the move that undoes the last move was dropped. */
+
+    private boolean reversalDropped = false;
+
+    /** True if a move was dropped because it only reorders moves already tried. */
+
+    private boolean sleepingDropped = false;
 
     /** The sequence of moves that produced this board. */
 
-    private List<Move> solution = new ArrayList<>(110);
+    private final MovePath solution;
+
+    /** The context of the search that this board is part of. */
 
-    /** A Random number used to shuffle lists. */
+    private SearchContext context;
 
-    private final Random random = new Random();
+    /** True if the board was proved to be dead when it was created (see DeadlockDetector). */
 
-    /** A collection of heuristics used to evaluate moves. */
+    private final boolean dead;
 
-    private final Heuristic[] heuristics = new Heuristic[]{
+    /** A collection of heuristics used to evaluate moves. They hold no state so every board shares them. */
+
+    private static final Heuristic[] HEURISTICS = new Heuristic[]{
             new TableauAddToSuit(),
             new TableauCoverLowerCardOfSameSuit(),
             new TableauEmptyAColumn(),
@@ -63,13 +127,44 @@ public class Board {
 
     public Board() {
 
-        // Initialize the structures
+        core = BoardCore.EMPTY;
+        solution = MovePath.EMPTY;
+        context = new SearchContext();
+        dead = false;
+    }
 
-        for (Card.Suit suit : Card.SUITS)
-            foundation.put(suit, new ArrayList<>());
+    /**
+     * Create a Board with given cards, e.g. a position made up for a test.
+     *
+     * @param core The cards on the board
+     * @param context The search context for the board
+     */
+
+    Board(BoardCore core, SearchContext context) {
 
-        for (int i = 0; i < tableau.length; i++)
-            tableau[i] = new ArrayList<Card>();
+        this.core = core;
+        solution = MovePath.EMPTY;
+        this.context = context;
+        dead = context.isDetectingDeadlocks() && DeadlockDetector.isDead(core);
+        computePendingMoves();
+    }
+
+    /**
+     * Create a Board with given cards reached by given moves, e.g. one sent by another process. It is taken not to be
+     * dead, whoever made it has already checked.
+     *
+     * @param core The cards on the board
+     * @param solution The moves that reach the board
+     * @param context The search context for the board
+     */
+
+    Board(BoardCore core, MovePath solution, SearchContext context) {
+
+        this.core = core;
+        this.solution = solution;
+        this.context = context;
+        dead = false;
+        computePendingMoves();
     }
 
     /**
@@ -79,12 +174,73 @@ public class Board {
      */
 
     public Board(String filePath) throws IOException {
+        this(loadJson(filePath), new SearchContext());
+    }
 
-        this();
+    /**
+     * Read a Board from JSON text in the form of the files, e.g. one sent by another program. Unlike a file the text is
+     * checked, the board has to hold every card once.
+     *
+     * @param json The JSON text
+     * @return The board
+     * @throws IllegalArgumentException If the text is not a board with every card on it once
+     */
+
+    public static Board fromJson(String json) throws IllegalArgumentException {
 
-        // Load the board object from the JSON file
+        // Gson reports a missing or mistyped field with several kinds of runtime exception
+
+        BoardCore cards;
+        try {
+            cards = parseJson(JsonParser.parseString(json));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid board: " + ex.getMessage(), ex);
+        }
 
-        JsonObject board = JsonParser.parseReader(new FileReader(filePath)).getAsJsonObject().getAsJsonObject("board");
+        long deck = 0;
+        int count = cards.getFoundationCount() + cards.getReserveCount();
+        for (Card.Suit suit : Card.SUITS)
+            for (int rank = 0; rank < cards.getFoundationHeight(suit.ordinal()); rank++)
+                deck |= 1L << ((suit.ordinal() * Card.RANKS.length) + rank);
+        deck |= cards.getReserve();
+        for (int i = 0; i < BoardCore.COLUMNS; i++) {
+            count += cards.getColumnSize(i);
+            for (int index = 0; index < cards.getColumnSize(i); index++)
+                deck |= 1L << cards.getColumnCard(i, index);
+        }
+
+        if ((count != Card.DECK_SIZE) || (Long.bitCount(deck) != Card.DECK_SIZE))
+            throw new IllegalArgumentException("Invalid board: it has to hold each of the " + Card.DECK_SIZE + " cards once");
+
+        return new Board(cards, new SearchContext());
+    }
+
+    /**
+     * Load the cards of a board from a JSON file.
+     *
+     * @param filePath The path to the file to load the board from
+     * @return The cards
+     * @throws IOException If the file can't be read
+     */
+
+    private static BoardCore loadJson(String filePath) throws IOException {
+
+        try (Reader reader = new FileReader(filePath)) {
+            return parseJson(JsonParser.parseReader(reader));
+        }
+    }
+
+    /**
+     * Get the cards of a board from its JSON form.
+     *
+     * @param root The JSON form
+     * @return The cards
+     */
+
+    private static BoardCore parseJson(JsonElement root) {
+
+        BoardCore cards = BoardCore.EMPTY;
+        JsonObject board = root.getAsJsonObject().getAsJsonObject("board");
 
         // Load the foundation object and populate it
 
@@ -93,72 +249,126 @@ public class Board {
             if (foundationObject.has(suit.name())) {
                 JsonArray suitCards = foundationObject.getAsJsonArray(suit.name());
                 for (JsonElement cardElement : suitCards.asList())
-                    foundation.get(suit).add(new Card(cardElement.getAsString()));
+                    cards = cards.withFoundationCard(new Card(cardElement.getAsString()).getIndex());
             }
 
         // Load the reserve
 
         JsonArray reserveArray = board.getAsJsonArray("reserve");
         for (JsonElement cardElement : reserveArray.asList())
-            reserve.add(new Card(cardElement.getAsString()));
+            cards = cards.withReserveCard(new Card(cardElement.getAsString()).getIndex());
 
         // Now the Tableau
 
         JsonArray tableauArray = board.getAsJsonArray("tableau");
-        for (int i = 0; i < tableau.length; i++) {
+        for (int i = 0; i < BoardCore.COLUMNS; i++) {
             JsonArray column = tableauArray.get(i).getAsJsonArray();
             for (JsonElement cardElement : column.asList())
-                tableau[i].add(new Card(cardElement.getAsString()));
+                cards = cards.withColumnCard(new Card(cardElement.getAsString()).getIndex(), i);
         }
 
-        // Compute the possible moves for the board
+        return cards;
+    }
 
-        computePendingMoves();
-//        LOG.info(this.toString());
+    /**
+     * Create a Board that has the same cards and moves as another one but its own pending moves and search context.
+     * Nothing is copied, so this is a cheap way to hand a board to another search or thread.
+     *
+     * @param copyFrom The board to share the cards with
+     * @param context The search context for the new board
+     */
+
+    public Board(Board copyFrom, SearchContext context) {
+
+        core = copyFrom.core;
+        solution = copyFrom.solution;
+        this.context = context;
+        dead = copyFrom.dead;
     }
 
     /**
-     * Create a Board that is based on another board.
+     * Create a Board that is the result of applying a move to another board.
      *
      * @param copyFrom The board to copy the new one from.
+     * @param move The move to apply
      */
 
     private Board(Board copyFrom, Move move) {
 
-        this();
+        // Move the card, only the parts of the board it touches are copied
 
-        // Copy the Foundation
+        core = copyFrom.core.withMove(move.getCard().getIndex(), move.getFrom().getIndex(), move.getTo().getIndex());
 
-        for (Card.Suit suit : Card.SUITS)
-            for (Card card : copyFrom.foundation.get(suit))
-                foundation.get(suit).add(card);
+        // Set the sequence of moves
 
-        // Copy the Reserve
+        solution = copyFrom.solution.append(move);
+        context = copyFrom.context;
 
-        reserve.addAll(copyFrom.reserve);
+        // Find out straight away if the board is hopeless so the search never expands it
 
-        // And the Tableau
+        dead = context.isDetectingDeadlocks() && DeadlockDetector.isDead(core);
 
-        for (int i = 0; i < copyFrom.tableau.length; i++) {
-            List<Card> column = copyFrom.tableau[i];
-            for (Card card : column)
-                tableau[i].add(card);
-        }
+        // Start from the legal moves of the parent and only mark the columns and Reserve touched by the move as changed
 
-        // Set the sequence of moves
+        tableauMoves = copyFrom.tableauMoves;
+        reserveMoves = copyFrom.reserveMoves;
+        staleColumns = copyFrom.staleColumns;
+        staleReserve = copyFrom.staleReserve;
 
-        solution = new ArrayList<>(copyFrom.solution);
-        solution.add(move);
+        if (move.getFrom().getArea() == CardPosition.Area.TABLEAU)
+            staleColumns |= 1 << move.getFrom().getColumn();
+        if (move.getTo().getArea() == CardPosition.Area.TABLEAU)
+            staleColumns |= 1 << move.getTo().getColumn();
+        if ((move.getFrom() == CardPosition.RESERVE) || (move.getTo() == CardPosition.RESERVE))
+            staleReserve = true;
     }
 
     /**
-     * Get the Tableau section of the Board.
+     * Set the search context used when ordering the pending moves. Boards created from this one share it.
      *
-     * @return The Tableau
+     * @param context The context to use
      */
 
-    public ArrayList[] getTableau() {
-        return tableau;
+    public void setSearchContext(SearchContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Get a column of the Tableau.
+     *
+     * @param column The column to get
+     * @return A read only view of the cards in the column from the bottom up
+     */
+
+    public List<Card> getColumn(int column) {
+
+        return new AbstractList<>() {
+
+            @Override
+            public Card get(int index) {
+                return Card.forIndex(core.getColumnCard(column, index));
+            }
+
+            @Override
+            public int size() {
+                return core.getColumnSize(column);
+            }
+        };
+    }
+
+    /**
+     * Get the cards in the Reserve.
+     *
+     * @return The cards in the Reserve, sorted
+     */
+
+    public List<Card> getReserve() {
+
+        List<Card> cards = new ArrayList<>(BoardCore.RESERVE_SIZE);
+        for (int slot = 0; slot < core.getReserveCount(); slot++)
+            cards.add(Card.forIndex(core.getReserveCard(slot)));
+
+        return cards;
     }
 
     /**
@@ -168,7 +378,37 @@ public class Board {
      */
 
     public List<Move> getSolution() {
-        return solution;
+        return solution.toList();
+    }
+
+    /**
+     * Get the number of moves that lead to this board.
+     *
+     * @return The length of the solution
+     */
+
+    public int getSolutionLength() {
+        return solution.length();
+    }
+
+    /**
+     * Get the cards on the board.
+     *
+     * @return The core of the board
+     */
+
+    BoardCore getCore() {
+        return core;
+    }
+
+    /**
+     * Get the number of cards that have been moved to the Foundation.
+     *
+     * @return The number of cards on the Foundation
+     */
+
+    public int getFoundationCount() {
+        return core.getFoundationCount();
     }
 
     /**
@@ -181,16 +421,17 @@ public class Board {
 
         // The game is won if the Reserve and Tableau are empty
 
-        if (! reserve.isEmpty())
-            return false;
-
-        for (List<Card> column : tableau)
-            if (! column.isEmpty())
-                return false;
+        return core.isEmpty();
+    }
 
-        // Woot!
+    /**
+     * Check if the board was proved to be dead when it was created, i.e. no sequence of moves from it can win the game.
+     *
+     * @return true if the board is dead, false if it might still be won
+     */
 
-        return true;
+    public boolean isDead() {
+        return dead;
     }
 
     /**
@@ -200,7 +441,7 @@ public class Board {
      */
 
     public boolean boardHasFailed() {
-        return pendingMoves.isEmpty();
+        return ! fillPendingMoves();
     }
 
     /**
@@ -214,76 +455,211 @@ public class Board {
 
         // Get the next move and transfer it to the tried moves list
 
-        if (pendingMoves.isEmpty())
+        if (! fillPendingMoves())
             throw new IllegalStateException("Board has no more moves available");
         Move move = pendingMoves.remove(0);
 
-        // Make a copy of this board
+        // Make sure that the card is where the move says it is and can go where it says, then make the new board
 
+        checkMove(move);
         Board resultingBoard = new Board(this, move);
+        if (context.isReducingMoves())
+            putMovesToSleep(resultingBoard, move);
 
-        // Remove the card from the from position
+        // Return the new board, its pending moves are generated when they are first needed
 
-        Card card = move.getCard();
-        resultingBoard.removeCard(card, move.getFrom());
+        return resultingBoard;
+    }
 
-        // Put it in the new position
+    /**
+     * Apply a given move and return the resulting board. The pending moves of this board are not touched.
+     *
+     * @param move The move to apply
+     * @return The resulting board after the move is applied
+     * @throws IllegalStateException If the move is illegal
+     */
 
-        resultingBoard.addCard(card, move.getTo());
+    public Board applyMove(Move move) throws IllegalStateException {
 
-        // Compute the pending moves for the new board.
+        checkMove(move);
+        return new Board(this, move);
+    }
 
-        resultingBoard.computePendingMoves();
+    /**
+     * Get the moves that are still to be tried from this board, in the order they will be tried. They are generated
+     * first if they haven't been yet.
+     *
+     * @return A copy of the pending moves
+     */
 
-        // Return the new board
+    public List<Move> getPendingMoves() {
 
-        return resultingBoard;
+        // Every stage produces all of its moves at once, so after this the list is complete
+
+        fillPendingMoves();
+        return new ArrayList<>(pendingMoves);
     }
 
     /**
-     * Check if a given card can be moved to a target position.
+     * Replace the moves that are still to be tried from this board, e.g. when a search is restored from a checkpoint.
+     * No more moves are generated after them.
      *
-     * @param card The card to check
-     * @param targetPosition The position to move it to
-     * @return true if the move is legal, false otherwise
+     * @param moves The moves to try, in order
      */
 
-    public boolean isMoveLegal(Card card, CardPosition targetPosition) {
+    public void setPendingMoves(List<Move> moves) {
 
-        // The reserve must have an empty slot
-
-        if ((targetPosition.getArea() == CardPosition.Area.RESERVE)) {
-            return reserve.size() != 4;
+        pendingMoves.clear();
+        pendingMoves.addAll(moves);
+        stage = Stage.DONE;
+    }
 
-        } else if (targetPosition.getArea() == CardPosition.Area.FOUNDATION) {
+    /**
+     * Apply every remaining move and return the resulting boards. This is for searches that expand a whole board at a
+     * time, the boards come back in the order the moves would have been tried.
+     *
+     * @return The boards after each of the moves
+     */
 
-            // Check the last card in the target foundation column to make sure it is the one lower than the new card
+    public List<Board> getNextBoards() {
 
-            List<Card> pile = foundation.get(card.getSuit());
-            if (pile.isEmpty() && (card.getRank() != Card.Rank.Ace))
-                return false;
+        List<Board> nextBoards = new ArrayList<>();
+        while (fillPendingMoves())
+            nextBoards.add(applyNextMove());
 
-            else if (! pile.isEmpty()) {
+        // None of them were expanded so there is nothing to learn from them
 
-                Card topCard = pile.get(pile.size() - 1);
-                return topCard.getRank().getValue() == (card.getRank().getValue() - 1);
-            }
+        lastChild = null;
+        return nextBoards;
+    }
 
-        } else {
+    /**
+     * Work out which moves a new board doesn't need to try. If an earlier move from this board touched none of the same
+     * Tableau columns as the new move, and the board it made tried the new move, then the new move followed by the
+     * earlier one leads to a board that was already searched. Only boards that tried all of their moves count, since
+     * the moves they tried are known to have been searched.
+     *
+     * @param child The new board
+     * @param move The move that made it
+     */
 
-            // Check if we can add the card to the tableau. The column must be empty or last card must have the same suit and be one higher than the card
+    private void putMovesToSleep(Board child, Move move) {
 
-            List<Card> column = tableau[targetPosition.getColumn()];
-            if (! column.isEmpty()) {
+        if ((lastChild != null) && lastChild.isExhausted()) {
+            if (exhaustedChildren == null)
+                exhaustedChildren = new ArrayList<>();
+            exhaustedChildren.add(lastChild);
+            lastChild.lastChild = null;
+            lastChild.exhaustedChildren = null;
+        }
 
-                Card lastCard = column.get(column.size() - 1);
-                return (lastCard.getSuit() == card.getSuit()) && (lastCard.getRank().getValue() == (card.getRank().getValue() + 1));
-            }
+        lastChild = child;
+        if (exhaustedChildren == null)
+            return;
+
+        int columns = getColumnMask(move);
+        int code = move.getCode();
+        int[] sleeping = new int[exhaustedChildren.size()];
+        int count = 0;
+        for (Board sibling : exhaustedChildren) {
+            Move earlier = sibling.solution.getLastMove();
+            if (((getColumnMask(earlier) & columns) == 0) && sibling.hasGenerated(code))
+                sleeping[count++] = earlier.getCode();
         }
 
-        // It must be a legal move
+        if (count > 0)
+            child.sleepingCodes = Arrays.copyOf(sleeping, count);
+    }
+
+    /**
+     * Check if every move of this board was generated and tried.
+     *
+     * @return true if there are no moves left to try
+     */
+
+    private boolean isExhausted() {
+        return (generatedCodes != null) && (stage == Stage.DONE) && pendingMoves.isEmpty();
+    }
+
+    /**
+     * Check if a move was generated for this board.
+     *
+     * @param code The code of the move
+     * @return true if it was generated and not dropped
+     */
+
+    private boolean hasGenerated(int code) {
+
+        for (int generatedCode : generatedCodes)
+            if (generatedCode == code)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Get the Tableau columns that a move takes a card from or puts one on.
+     *
+     * @param move The move
+     * @return A bit for each column
+     */
+
+    private static int getColumnMask(Move move) {
+
+        int mask = 0;
+        if (move.getFrom().getArea() == CardPosition.Area.TABLEAU)
+            mask |= 1 << move.getFrom().getColumn();
+        if (move.getTo().getArea() == CardPosition.Area.TABLEAU)
+            mask |= 1 << move.getTo().getColumn();
+
+        return mask;
+    }
+
+    /**
+     * Check if the move that undoes the last move was dropped, it would have led back to the board before this one.
+     *
+     * @return true if it was dropped
+     */
+
+    boolean isReversalDropped() {
+        return reversalDropped;
+    }
+
+    /**
+     * Check if a move was dropped because it only reorders moves already tried, it would have led to a board that was
+     * already searched.
+     *
+     * @return true if one was dropped
+     */
 
-        return true;
+    boolean isSleepingDropped() {
+        return sleepingDropped;
+    }
+
+    /**
+     * Check if a given card can be moved to a target position.
+     *
+     * @param card The card to check
+     * @param targetPosition The position to move it to
+     * @return true if the move is legal, false otherwise
+     */
+
+    public boolean isMoveLegal(Card card, CardPosition targetPosition) {
+
+        // The reserve must have an empty slot
+
+        if ((targetPosition.getArea() == CardPosition.Area.RESERVE))
+            return core.canMoveToReserve();
+
+        // The card must be the next one for its suit in the Foundation
+
+        else if (targetPosition.getArea() == CardPosition.Area.FOUNDATION)
+            return core.canMoveToFoundation(card.getIndex());
+
+        // The Tableau column must be empty or its last card must have the same suit and be one higher than the card
+
+        else
+            return core.canMoveToTableau(card.getIndex(), targetPosition.getColumn());
     }
 
     /**
@@ -296,201 +672,440 @@ public class Board {
     private int computeHeuristics(Move move) {
 
         int adjustment = 0;
-        for (Heuristic heuristic : heuristics)
+        for (Heuristic heuristic : HEURISTICS)
             adjustment += heuristic.evaluate(this, move);
 
+        // Favour moves that worked well in earlier searches
+
+        adjustment += context.getMoveHistory().getBonus(move);
+
         // Return the adjustment
 
         return adjustment;
     }
 
     /**
-     * Remove a card from a given position in the board.
+     * Check that a move can be applied to this board.
      *
-     * @param card The card to remove (this is used to verify this move)
-     * @param position The position to remove the card from
-     * @throws IllegalStateException If the card does not exist in the target position or if the move is invalid
+     * @param move The move to check
+     * @throws IllegalStateException If the card does not exist in the from position or cannot be put in the target position
      */
 
-    private void removeCard(Card card, CardPosition position) {
+    private void checkMove(Move move) throws IllegalStateException {
 
-        if (position.getArea() == CardPosition.Area.RESERVE) {
+        Card card = move.getCard();
+        CardPosition from = move.getFrom();
+        if (from.getArea() == CardPosition.Area.RESERVE) {
 
             // Find the card in the reserve
 
-            if (! reserve.remove(card))
+            if ((core.getReserve() & (1L << card.getIndex())) == 0)
                 throw new IllegalStateException("Failed to find card: " + card + " in Reserve");
 
-        } else if (position.getArea() == CardPosition.Area.TABLEAU) {
+        } else if (from.getArea() == CardPosition.Area.TABLEAU) {
 
             // Check that the card is the last element of the target column in the Tableau
 
-            List<Card> column = tableau[position.getColumn()];
-            int index = column.size() - 1;
-            if (column.isEmpty() || ! column.get(index).equals(card))
-                throw new IllegalStateException("Failed to find card: " + card + " at the end of column " + position.getColumn() + " in Tableau");
-            column.remove(index);
+            if (core.getTop(from.getColumn()) != card.getIndex())
+                throw new IllegalStateException("Failed to find card: " + card + " at the end of column " + from.getColumn() + " in Tableau");
 
         } else
 
             // Invalid position
 
-            throw new IllegalStateException("From position is not valid: " + position);
+            throw new IllegalStateException("From position is not valid: " + from);
+
+        // Verify that the move is legal
+
+        if (! isMoveLegal(card, move.getTo()))
+            throw new IllegalStateException("It is illegal to move card: " + card + " to position: " + move.getTo());
     }
 
     /**
-     * Put a card in a position on the board.
+     * Reset the list of possible moves for the current board state. The moves are not generated here, they are produced
+     * in stages by fillPendingMoves() when the search asks for them. Many boards are dropped as duplicates right after
+     * they are created so they never generate any moves, and boards with a forced move to the Foundation never score
+     * the rest. The remaining moves are generated and scored together, generating the builds on same suit cards ahead
+     * of the others looked cheaper but tried moves out of weight order and found noticeably longer solutions.
+     */
+
+    public void computePendingMoves() {
+
+        pendingMoves.clear();
+        stage = Stage.FOUNDATION;
+        staleColumns = 0xFF;
+        staleReserve = true;
+        generatedCodes = null;
+        lastChild = null;
+        exhaustedChildren = null;
+        reversalDropped = false;
+        sleepingDropped = false;
+    }
+
+    /**
+     * Generate the stages of moves until there is at least one pending move or all the stages are done.
      *
-     * @param card The card to put
-     * @param position The position
-     * @throws IllegalStateException If the card cannot be put in the target position
+     * @return true if there is a pending move
      */
 
-    private void addCard(Card card, CardPosition position) {
+    private boolean fillPendingMoves() {
 
-        // Verify that the move is legal
+        while (pendingMoves.isEmpty() && (stage != Stage.DONE))
+            switch (stage) {
 
-        if (! isMoveLegal(card, position))
-            throw new IllegalStateException("It is illegal to move card: " + card + " to position: " + position);
+                case FOUNDATION:
 
-        // Add the card to the target postion
+                    // If a card can go to the Foundation that is the only move to make
 
-        if (position.getArea() == CardPosition.Area.RESERVE) {
+                    stage = addFoundationMove() ? Stage.DONE : Stage.OTHER;
+                    if ((stage == Stage.DONE) && context.isReducingMoves())
+                        reduceMoves();
+                    break;
 
-            // Add the card and re-sort the reserve. This ensures that we don't waste moves targeting different slots when they all are equal
+                default:
 
-            reserve.add(card);
-            Collections.sort(reserve);
+                    // The rest of the moves are all scored together so that they are tried in order of their weight
 
-        } else if (position.getArea() == CardPosition.Area.FOUNDATION) {
+                    updateMoveMasks();
+                    addTableauMoves();
+                    addReserveMoves();
+                    stage = Stage.DONE;
+                    if (context.isReducingMoves())
+                        reduceMoves();
+            }
 
-            // Add the card to the foundation
+        return ! pendingMoves.isEmpty();
+    }
 
-            List<Card> pile = foundation.get(card.getSuit());
-            pile.add(card);
+    /**
+     * Drop the pending moves that can only lead to boards that have been or are being searched: the move that undoes
+     * the last move, which leads back to the board before this one, and the moves put to sleep by putMovesToSleep().
+     * They are dropped after the moves are ordered so the rest come out in the same order either way. The moves that
+     * are left are remembered for putMovesToSleep().
+     */
 
-        } else {
+    private void reduceMoves() {
 
-            // Add it to the Tableau
+        // The reverse of a move swaps its from and to positions
 
-            List<Card> column = tableau[position.getColumn()];
-            column.add(card);
+        Move lastMove = solution.getLastMove();
+        int reversal = -1;
+        if (lastMove != null) {
+            int code = lastMove.getCode();
+            reversal = (code & ~0xFF) | ((code & 0xF) << 4) | ((code >>> 4) & 0xF);
         }
+
+        generatedCodes = new int[pendingMoves.size()];
+        int count = 0;
+        for (Iterator<Move> iterator = pendingMoves.iterator(); iterator.hasNext(); ) {
+
+            int code = iterator.next().getCode();
+            if (code == reversal) {
+                iterator.remove();
+                reversalDropped = true;
+            } else if (isSleeping(code)) {
+                iterator.remove();
+                sleepingDropped = true;
+            } else
+                generatedCodes[count++] = code;
+        }
+
+        if (count < generatedCodes.length)
+            generatedCodes = Arrays.copyOf(generatedCodes, count);
     }
 
     /**
-     * Create a list of possible moves from the current board state. This updates the pendingMoves list for this board.
+     * Check if a move was put to sleep.
+     *
+     * @param code The code of the move
+     * @return true if the move only reorders moves already tried
      */
 
-    public void computePendingMoves() {
+    private boolean isSleeping(int code) {
 
-        // Make sure that the list of moves is empty
+        if (sleepingCodes != null)
+            for (int sleepingCode : sleepingCodes)
+                if (sleepingCode == code)
+                    return true;
 
-        pendingMoves.clear();
+        return false;
+    }
+
+    /**
+     * Check each of the available cards to see if they can go in the Foundation and if one can, add that move.
+     *
+     * @return true if a move to the Foundation was found
+     */
 
-        // Check each of the available cards to see if they can go in the Foundation, If one can, that is the only move to make
+    private boolean addFoundationMove() {
 
-        for (Card card : reserve)
-            if (isMoveLegal(card, CardPosition.FOUNDATION)) {
-                pendingMoves.add(new Move(CardPosition.RESERVE, CardPosition.FOUNDATION, card));
-                return;
+        for (long cards = core.getReserve(); cards != 0; cards &= cards - 1) {
+            int card = Long.numberOfTrailingZeros(cards);
+            if (core.canMoveToFoundation(card)) {
+                pendingMoves.add(new Move(CardPosition.RESERVE, CardPosition.FOUNDATION, Card.forIndex(card)));
+                return true;
             }
+        }
 
-        for (int i = 0; i < tableau.length; i++) {
-            List<Card> column = tableau[i];
-            if (! column.isEmpty()) {
-                Card card = column.get(column.size() - 1);
-                if (isMoveLegal(card, CardPosition.FOUNDATION)) {
-                    pendingMoves.add(new Move(CardPosition.TABLEAU[i], CardPosition.FOUNDATION, card));
-                    return;
-                }
+        for (int i = 0; i < BoardCore.COLUMNS; i++) {
+            int card = core.getTop(i);
+            if ((card != BoardCore.NO_CARD) && core.canMoveToFoundation(card)) {
+                pendingMoves.add(new Move(CardPosition.TABLEAU[i], CardPosition.FOUNDATION, Card.forIndex(card)));
+                return true;
             }
         }
 
-        // Check if the Reserve cards can move to the Tableau
+        return false;
+    }
 
-        for (Card card : reserve)
-            for (CardPosition position : CardPosition.TABLEAU)
-                if (isMoveLegal(card, position)) {
-                    Move move = new Move(CardPosition.RESERVE, position, card);
-                    move.updateWeight(computeHeuristics(move));
-                    pendingMoves.add(move);
-                }
+    /**
+     * Add the moves of Reserve and Tableau cards on to the Tableau.
+     */
+
+    private void addTableauMoves() {
 
-        // Check if the tableau cards can move to the reserve or other tableau spots
+        for (int target = 0; target < BoardCore.COLUMNS; target++) {
 
-        for (int i = 0; i < tableau.length; i++) {
+            CardPosition position = CardPosition.TABLEAU[target];
+            for (int slot = 0; slot < core.getReserveCount(); slot++)
+                if ((reserveMoves & (1 << ((slot * 8) + target))) != 0)
+                    addWeightedMove(new Move(CardPosition.RESERVE, position, Card.forIndex(core.getReserveCard(slot))));
 
-            List<Card> column = tableau[i];
-            if (! column.isEmpty()) {
+            for (int i = 0; i < BoardCore.COLUMNS; i++)
+                if ((tableauMoves & (1L << ((i * 8) + target))) != 0)
+                    addWeightedMove(new Move(CardPosition.TABLEAU[i], position, Card.forIndex(core.getTop(i))));
+        }
+    }
 
-                Card card = column.get(column.size() - 1);
-                for (CardPosition cardPosition : CardPosition.TABLEAU)
-                    if (isMoveLegal(card, cardPosition)) {
-                        Move move = new Move(CardPosition.TABLEAU[i], cardPosition, card);
-                        move.updateWeight(computeHeuristics(move));
-                        pendingMoves.add(move);
+    /**
+     * Bring the masks of legal moves on to the Tableau up to date. A move only changes at most two columns and the
+     * Reserve, so only the moves from and to the changed columns, and the Reserve moves when the Reserve changed, are
+     * computed again. Everything else is kept from the parent board.
+     */
+
+    private void updateMoveMasks() {
+
+        if (! context.isIncrementalMoves()) {
+            staleColumns = 0xFF;
+            staleReserve = true;
+        }
+
+        // Recompute the moves from and to each changed column
+
+        for (int column = 0; column < BoardCore.COLUMNS; column++)
+            if ((staleColumns & (1 << column)) != 0) {
+
+                tableauMoves &= ~(ROW_MASK << (column * 8)) & ~(COLUMN_MASK << column);
+                for (int other = 0; other < BoardCore.COLUMNS; other++)
+                    if (other != column) {
+                        if (canMoveLastCard(column, other))
+                            tableauMoves |= 1L << ((column * 8) + other);
+                        if (canMoveLastCard(other, column))
+                            tableauMoves |= 1L << ((other * 8) + column);
                     }
 
-                if (isMoveLegal(card, CardPosition.RESERVE)) {
-                    Move move = new Move(CardPosition.TABLEAU[i], CardPosition.RESERVE, card);
-                    move.updateWeight(computeHeuristics(move));
-                    pendingMoves.add(move);
+                if (! staleReserve) {
+                    reserveMoves &= ~((int) COLUMN_MASK << column);
+                    for (int slot = 0; slot < core.getReserveCount(); slot++)
+                        if (core.canMoveToTableau(core.getReserveCard(slot), column))
+                            reserveMoves |= 1 << ((slot * 8) + column);
                 }
             }
+
+        // The slots shift when the Reserve changes so recompute all of its moves
+
+        if (staleReserve) {
+            reserveMoves = 0;
+            for (int slot = 0; slot < core.getReserveCount(); slot++)
+                for (int column = 0; column < BoardCore.COLUMNS; column++)
+                    if (core.canMoveToTableau(core.getReserveCard(slot), column))
+                        reserveMoves |= 1 << ((slot * 8) + column);
         }
 
-        // Randomly shuffle the pending moves so that one end of the board does not get all the attention. This greatly
-        // improves the results and I'm not sure why
+        staleColumns = 0;
+        staleReserve = false;
 
-        Collections.shuffle(pendingMoves, random);
+        if (context.isVerifyingMoves())
+            verifyMoveMasks();
+    }
 
-        // Sort the moves by weight
+    /**
+     * Check the masks of legal moves against ones computed from scratch.
+     *
+     * @throws IllegalStateException If the masks do not match
+     */
+
+    private void verifyMoveMasks() throws IllegalStateException {
+
+        long incrementalTableauMoves = tableauMoves;
+        int incrementalReserveMoves = reserveMoves;
 
-        pendingMoves.sort((move1, move2) -> {
-            return Integer.compare(move2.getWeight(), move1.getWeight());
-        });
+        tableauMoves = 0;
+        for (int from = 0; from < BoardCore.COLUMNS; from++)
+            for (int to = 0; to < BoardCore.COLUMNS; to++)
+                if ((from != to) && canMoveLastCard(from, to))
+                    tableauMoves |= 1L << ((from * 8) + to);
 
-//        System.out.println(pendingMoves);
-//        System.exit(0);
+        reserveMoves = 0;
+        for (int slot = 0; slot < core.getReserveCount(); slot++)
+            for (int column = 0; column < BoardCore.COLUMNS; column++)
+                if (core.canMoveToTableau(core.getReserveCard(slot), column))
+                    reserveMoves |= 1 << ((slot * 8) + column);
+
+        if ((tableauMoves != incrementalTableauMoves) || (reserveMoves != incrementalReserveMoves))
+            throw new IllegalStateException("Incremental moves " + Long.toHexString(incrementalTableauMoves) + "/" + Integer.toHexString(incrementalReserveMoves) +
+                    " do not match full moves " + Long.toHexString(tableauMoves) + "/" + Integer.toHexString(reserveMoves) + " for " + this);
     }
 
     /**
-     * Create a signature for the board. This is a string of characters that uniquely identifies the board state
+     * Check if the last card of one Tableau column can be moved on to another column.
      *
-     * @return A unique signature for the board.
+     * @param from The column to move the card from
+     * @param to The column to move the card to
+     * @return true if the move is legal
      */
 
-    public String getSignature() {
+    private boolean canMoveLastCard(int from, int to) {
+
+        int card = core.getTop(from);
+        return (card != BoardCore.NO_CARD) && core.canMoveToTableau(card, to);
+    }
+
+    /**
+     * Add the moves of Tableau cards to the Reserve.
+     */
+
+    private void addReserveMoves() {
+
+        if (! core.canMoveToReserve())
+            return;
+
+        for (int i = 0; i < BoardCore.COLUMNS; i++)
+            if (core.getTop(i) != BoardCore.NO_CARD)
+                addWeightedMove(new Move(CardPosition.TABLEAU[i], CardPosition.RESERVE, Card.forIndex(core.getTop(i))));
+    }
+
+    /**
+     * Apply the heuristics to a move and add it to the pending moves.
+     *
+     * @param move The move to add
+     */
+
+    private void addWeightedMove(Move move) {
+
+        move.updateWeight(computeHeuristics(move));
+        addPendingMove(move);
+    }
+
+    /**
+     * Insert a move into the pending moves list so that the list stays sorted by descending weight. A move is put in a
+     * random slot among the moves with the same weight, so that one end of the board does not get all the attention.
+     * This gives the same ordering as shuffling and then sorting the list but without the extra work.
+     *
+     * @param move The move to add
+     */
+
+    private void addPendingMove(Move move) {
 
-        StringBuilder builder = new StringBuilder();
+        // Find the run of moves that have the same weight as the new one
 
-        // Foundation
+        int weight = move.getWeight();
+        int end = pendingMoves.size();
+        while ((end > 0) && (pendingMoves.get(end - 1).getWeight() < weight))
+            end--;
 
+        int start = end;
+        while ((start > 0) && (pendingMoves.get(start - 1).getWeight() == weight))
+            start--;
+
+        // Pick a random slot in the run
+
+        pendingMoves.add(start + context.getRandom().nextInt(end - start + 1), move);
+    }
+
+    /**
+     * Get the order of the columns in the canonical form of the board, boards that only differ in the order of their
+     * columns have the same canonical form.
+     *
+     * @return The column at each position of the canonical order
+     */
+
+    public int[] getCanonicalColumns() {
+        return core.getCanonicalColumns();
+    }
+
+    /**
+     * Encode the canonical form of the board.
+     *
+     * @param canonicalColumns The canonical order of the columns (see getCanonicalColumns())
+     * @return The encoded board
+     */
+
+    public byte[] encodeCanonical(int[] canonicalColumns) {
+        return core.encodeCanonical(canonicalColumns);
+    }
+
+    /**
+     * Get the board in the JSON form it is loaded from, see Board(String).
+     *
+     * @return The JSON text
+     */
+
+    public String toJson() {
+
+        JsonObject foundationObject = new JsonObject();
         for (Card.Suit suit : Card.SUITS) {
-            List<Card> pile =  foundation.get(suit);
-            if (pile.isEmpty())
-                builder.append("B");
-            else
-                pile.forEach(builder::append);
+            JsonArray suitCards = new JsonArray();
+            for (int rank = 0; rank < core.getFoundationHeight(suit.ordinal()); rank++)
+                suitCards.add(Card.forIndex((suit.ordinal() * Card.RANKS.length) + rank).toString());
+            foundationObject.add(suit.name(), suitCards);
         }
-        builder.append("|");
 
-        // Tableau
+        JsonArray reserveArray = new JsonArray();
+        for (long cards = core.getReserve(); cards != 0; cards &= cards - 1)
+            reserveArray.add(Card.forIndex(Long.numberOfTrailingZeros(cards)).toString());
 
-        for (List<Card> column : tableau) {
-            if (column.isEmpty())
-                builder.append("B");
-            else
-                column.forEach(builder::append);
-            builder.append("|");
+        JsonArray tableauArray = new JsonArray();
+        for (int i = 0; i < BoardCore.COLUMNS; i++) {
+            JsonArray column = new JsonArray();
+            for (int index = 0; index < core.getColumnSize(i); index++)
+                column.add(Card.forIndex(core.getColumnCard(i, index)).toString());
+            tableauArray.add(column);
         }
 
-        // Reserve
+        JsonObject board = new JsonObject();
+        board.add("foundation", foundationObject);
+        board.add("reserve", reserveArray);
+        board.add("tableau", tableauArray);
+        JsonObject root = new JsonObject();
+        root.add("board", board);
 
-        reserve.forEach(builder::append);
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    /**
+     * Write the board to a JSON file it can be loaded from again.
+     *
+     * @param filePath The path to the file
+     * @throws IOException If the file can't be written
+     */
+
+    public void writeJson(String filePath) throws IOException {
+
+        try (Writer writer = new FileWriter(filePath)) {
+            writer.write(toJson());
+            writer.write(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Create a signature for the board. This is a string of characters that uniquely identifies the board state
+     *
+     * @return A unique signature for the board.
+     */
 
-        return builder.toString();
+    public String getSignature() {
+        return core.getSignature();
     }
 
     /** @see Object#toString() */
@@ -498,10 +1113,22 @@ public class Board {
     @Override
     public String toString() {
 
+        Map<String, List<Card>> foundation = new LinkedHashMap<>();
+        for (Card.Suit suit : Card.SUITS) {
+            List<Card> pile = new ArrayList<>();
+            for (int rank = 0; rank < core.getFoundationHeight(suit.ordinal()); rank++)
+                pile.add(Card.forIndex((suit.ordinal() * Card.RANKS.length) + rank));
+            foundation.put(suit.name(), pile);
+        }
+
+        List<List<Card>> tableau = new ArrayList<>();
+        for (int column = 0; column < BoardCore.COLUMNS; column++)
+            tableau.add(getColumn(column));
+
         return "Board{" +
                 "foundation=" + foundation +
-                ", reserve=" + reserve +
-                ", tableau=" + Arrays.toString(tableau) +
+                ", reserve=" + getReserve() +
+                ", tableau=" + tableau +
                 '}';
     }
 }
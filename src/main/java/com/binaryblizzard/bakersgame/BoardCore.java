@@ -0,0 +1,499 @@
+package com.binaryblizzard.bakersgame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The cards on a board held in primitive form so that checking and generating moves is a few table lookups and bit
+ * operations. Cards are referred to by their index (see Card#getIndex()). The Foundation heights are packed four bits
+ * per suit into one int, the Reserve is a bitmask of the cards in it, each Tableau column is an array of card indexes
+ * and the last card of every column is packed one byte per column into a long.
+ * <p>
+ * A BoardCore is immutable. Moving a card creates a new core that shares every column the move did not touch with the
+ * old one, so creating a board costs a copy of at most two short columns and cores can be handed between threads
+ * freely.
+ */
+
+final class BoardCore {
+
+    /** The number of columns in the Tableau. */
+
+    static final int COLUMNS = 8;
+
+    /** The number of slots in the Reserve. */
+
+    static final int RESERVE_SIZE = 4;
+
+    /** The value used for no card, e.g. the last card of an empty column. */
+
+    static final int NO_CARD = -1;
+
+    /** The byte used to end the Reserve and each column in an encoded board. */
+
+    static final byte END_OF_AREA = 0x7F;
+
+    /** For each card, the index of the card that can be put on top of it in the Tableau, or NO_CARD for an Ace. */
+
+    static final int[] CARD_ON_TOP = new int[Card.DECK_SIZE];
+
+    static {
+        for (int card = 0; card < Card.DECK_SIZE; card++)
+            CARD_ON_TOP[card] = (rankOf(card) == 0) ? NO_CARD : card - 1;
+    }
+
+    /** The value of a byte in tops for an empty column. */
+
+    private static final int EMPTY_TOP = 0xFF;
+
+    /** The column shared by all empty columns. */
+
+    private static final byte[] EMPTY_COLUMN = new byte[0];
+
+    /** A board with no cards on it. */
+
+    static final BoardCore EMPTY = new BoardCore(0, 0, emptyColumns(), -1L);
+
+    /** The height of the Foundation pile for each suit, four bits per suit. */
+
+    private final int foundation;
+
+    /** A bit for each card that is in the Reserve. */
+
+    private final long reserve;
+
+    /** The cards in each column of the Tableau, from the bottom to the top. The arrays are shared and never modified. */
+
+    private final byte[][] columns;
+
+    /** The last card in each column, one byte per column, EMPTY_TOP for an empty column. */
+
+    private final long tops;
+
+    /**
+     * Create a BoardCore.
+     *
+     * @param foundation The packed Foundation heights
+     * @param reserve The Reserve bitmask
+     * @param columns The Tableau columns, the new core takes ownership of the outer array
+     * @param tops The packed last cards of the columns
+     */
+
+    private BoardCore(int foundation, long reserve, byte[][] columns, long tops) {
+
+        this.foundation = foundation;
+        this.reserve = reserve;
+        this.columns = columns;
+        this.tops = tops;
+    }
+
+    /**
+     * Create a set of empty columns.
+     *
+     * @return The columns
+     */
+
+    private static byte[][] emptyColumns() {
+
+        byte[][] columns = new byte[COLUMNS][];
+        for (int column = 0; column < COLUMNS; column++)
+            columns[column] = EMPTY_COLUMN;
+
+        return columns;
+    }
+
+    /**
+     * Get the suit of a card.
+     *
+     * @param card The index of the card
+     * @return The suit ordinal
+     */
+
+    static int suitOf(int card) {
+        return card / Card.RANKS.length;
+    }
+
+    /**
+     * Get the rank of a card.
+     *
+     * @param card The index of the card
+     * @return The rank ordinal, 0 for an Ace
+     */
+
+    static int rankOf(int card) {
+        return card % Card.RANKS.length;
+    }
+
+    /**
+     * Get the height of the Foundation pile for a suit.
+     *
+     * @param suit The suit ordinal
+     * @return The number of cards on the pile
+     */
+
+    int getFoundationHeight(int suit) {
+        return (foundation >>> (suit * 4)) & 0xF;
+    }
+
+    /**
+     * Get the number of cards on the Foundation.
+     *
+     * @return The number of cards
+     */
+
+    int getFoundationCount() {
+
+        int count = 0;
+        for (int suit = 0; suit < Card.SUITS.length; suit++)
+            count += getFoundationHeight(suit);
+
+        return count;
+    }
+
+    /**
+     * Get the Reserve as a bitmask.
+     *
+     * @return A bit for each card in the Reserve
+     */
+
+    long getReserve() {
+        return reserve;
+    }
+
+    /**
+     * Get the number of cards in the Reserve.
+     *
+     * @return The number of cards
+     */
+
+    int getReserveCount() {
+        return Long.bitCount(reserve);
+    }
+
+    /**
+     * Get the card in a slot of the Reserve. The cards are kept in the order of their indexes.
+     *
+     * @param slot The slot
+     * @return The index of the card
+     */
+
+    int getReserveCard(int slot) {
+
+        long cards = reserve;
+        for (int i = 0; i < slot; i++)
+            cards &= cards - 1;
+
+        return Long.numberOfTrailingZeros(cards);
+    }
+
+    /**
+     * Get the number of cards in a column.
+     *
+     * @param column The column
+     * @return The number of cards
+     */
+
+    int getColumnSize(int column) {
+        return columns[column].length;
+    }
+
+    /**
+     * Get a card in a column.
+     *
+     * @param column The column
+     * @param index The position in the column, 0 is the bottom
+     * @return The index of the card
+     */
+
+    int getColumnCard(int column, int index) {
+        return columns[column][index];
+    }
+
+    /**
+     * Get the last card in a column.
+     *
+     * @param column The column
+     * @return The index of the card or NO_CARD if the column is empty
+     */
+
+    int getTop(int column) {
+
+        int top = (int) (tops >>> (column * 8)) & 0xFF;
+        return (top == EMPTY_TOP) ? NO_CARD : top;
+    }
+
+    /**
+     * Check if the board is won, i.e. the Reserve and the Tableau are empty.
+     *
+     * @return true if the game is won
+     */
+
+    boolean isEmpty() {
+        return (reserve == 0) && (tops == -1L);
+    }
+
+    /**
+     * Check if a card can go on the Foundation.
+     *
+     * @param card The index of the card
+     * @return true if the card is the next one for its suit
+     */
+
+    boolean canMoveToFoundation(int card) {
+        return rankOf(card) == getFoundationHeight(suitOf(card));
+    }
+
+    /**
+     * Check if a card can go on a column of the Tableau.
+     *
+     * @param card The index of the card
+     * @param column The column
+     * @return true if the column is empty or its last card is the same suit and one rank higher
+     */
+
+    boolean canMoveToTableau(int card, int column) {
+
+        int top = getTop(column);
+        return (top == NO_CARD) || (CARD_ON_TOP[top] == card);
+    }
+
+    /**
+     * Check if the Reserve has an empty slot.
+     *
+     * @return true if a card can be moved to the Reserve
+     */
+
+    boolean canMoveToReserve() {
+        return Long.bitCount(reserve) < RESERVE_SIZE;
+    }
+
+    /**
+     * Create a core with a card added to the Foundation. The card is assumed to be the next one for its suit.
+     *
+     * @param card The index of the card
+     * @return The new core
+     */
+
+    BoardCore withFoundationCard(int card) {
+        return new BoardCore(foundation + (1 << (suitOf(card) * 4)), reserve, columns, tops);
+    }
+
+    /**
+     * Create a core with a card added to the Reserve.
+     *
+     * @param card The index of the card
+     * @return The new core
+     */
+
+    BoardCore withReserveCard(int card) {
+        return new BoardCore(foundation, reserve | (1L << card), columns, tops);
+    }
+
+    /**
+     * Create a core with a card added to the end of a column.
+     *
+     * @param card The index of the card
+     * @param column The column
+     * @return The new core
+     */
+
+    BoardCore withColumnCard(int card, int column) {
+
+        byte[][] newColumns = columns.clone();
+        newColumns[column] = pushCard(columns[column], card);
+        return new BoardCore(foundation, reserve, newColumns, withTop(tops, column, card));
+    }
+
+    /**
+     * Create a core with a card moved from one place to another. Only the columns that the move touches are copied. The
+     * caller is responsible for checking that the card is where it says and that the move is legal.
+     *
+     * @param card The index of the card
+     * @param from The index of the position the card is moving from (see CardPosition#getIndex())
+     * @param to The index of the position the card is moving to
+     * @return The new core
+     */
+
+    BoardCore withMove(int card, int from, int to) {
+
+        int newFoundation = foundation;
+        long newReserve = reserve;
+        long newTops = tops;
+        byte[][] newColumns = columns;
+
+        // Take the card off the from position
+
+        if (from < COLUMNS) {
+            newColumns = columns.clone();
+            byte[] column = columns[from];
+            newColumns[from] = (column.length == 1) ? EMPTY_COLUMN : Arrays.copyOf(column, column.length - 1);
+            newTops = withTop(newTops, from, (column.length == 1) ? NO_CARD : column[column.length - 2]);
+
+        } else
+            newReserve &= ~(1L << card);
+
+        // And put it in the new one
+
+        if (to < COLUMNS) {
+            if (newColumns == columns)
+                newColumns = columns.clone();
+            newColumns[to] = pushCard(columns[to], card);
+            newTops = withTop(newTops, to, card);
+
+        } else if (to == COLUMNS)
+            newReserve |= 1L << card;
+
+        else
+            newFoundation += 1 << (suitOf(card) * 4);
+
+        return new BoardCore(newFoundation, newReserve, newColumns, newTops);
+    }
+
+    /**
+     * Create a copy of a column with a card added to the end.
+     *
+     * @param column The column
+     * @param card The card to add
+     * @return The new column
+     */
+
+    private static byte[] pushCard(byte[] column, int card) {
+
+        byte[] newColumn = Arrays.copyOf(column, column.length + 1);
+        newColumn[column.length] = (byte) card;
+        return newColumn;
+    }
+
+    /**
+     * Set the last card of a column in a packed set of column tops.
+     *
+     * @param tops The packed tops
+     * @param column The column
+     * @param card The card or NO_CARD
+     * @return The new packed tops
+     */
+
+    private static long withTop(long tops, int column, int card) {
+
+        int shift = column * 8;
+        return (tops & ~(0xFFL << shift)) | ((long) (card & EMPTY_TOP) << shift);
+    }
+
+    /**
+     * Encode the board as a compact sequence of bytes that uniquely identifies it. The layout is the Foundation heights
+     * packed into two bytes, the Reserve cards followed by END_OF_AREA, then the cards of each column from the bottom
+     * up, each followed by END_OF_AREA.
+     *
+     * @return The encoded board
+     */
+
+    byte[] encode() {
+
+        int length = 3 + getReserveCount() + COLUMNS;
+        for (byte[] column : columns)
+            length += column.length;
+
+        byte[] bytes = new byte[length];
+        bytes[0] = (byte) (foundation >>> 8);
+        bytes[1] = (byte) foundation;
+        int offset = 2;
+
+        for (long cards = reserve; cards != 0; cards &= cards - 1)
+            bytes[offset++] = (byte) Long.numberOfTrailingZeros(cards);
+        bytes[offset++] = END_OF_AREA;
+
+        for (byte[] column : columns) {
+            System.arraycopy(column, 0, bytes, offset, column.length);
+            offset += column.length;
+            bytes[offset++] = END_OF_AREA;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Create a core from its encoding, see encode(). Any bytes after the last column are ignored, so an encoding padded
+     * out to a fixed length can be decoded as it is.
+     *
+     * @param bytes The encoded board
+     * @return The core
+     */
+
+    static BoardCore decode(byte[] bytes) {
+
+        int foundation = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+        int offset = 2;
+
+        long reserve = 0;
+        while (bytes[offset] != END_OF_AREA)
+            reserve |= 1L << bytes[offset++];
+        offset++;
+
+        byte[][] columns = new byte[COLUMNS][];
+        long tops = -1L;
+        for (int column = 0; column < COLUMNS; column++) {
+            int start = offset;
+            while (bytes[offset] != END_OF_AREA)
+                offset++;
+            columns[column] = (offset == start) ? EMPTY_COLUMN : Arrays.copyOfRange(bytes, start, offset);
+            if (offset > start)
+                tops = withTop(tops, column, bytes[offset - 1]);
+            offset++;
+        }
+
+        return new BoardCore(foundation, reserve, columns, tops);
+    }
+
+    /**
+     * Get the order of the columns in the canonical form of the board. The columns are interchangeable, so boards that
+     * only differ in the order of their columns are the same position. The canonical order sorts the columns by their
+     * cards from the bottom up, with the empty columns first.
+     *
+     * @return The column at each position of the canonical order
+     */
+
+    int[] getCanonicalColumns() {
+
+        Integer[] order = new Integer[COLUMNS];
+        for (int column = 0; column < COLUMNS; column++)
+            order[column] = column;
+        Arrays.sort(order, (a, b) -> Arrays.compare(columns[a], columns[b]));
+
+        int[] canonical = new int[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++)
+            canonical[i] = order[i];
+
+        return canonical;
+    }
+
+    /**
+     * Encode the canonical form of the board, which is the same for every board that only differs in the order of its
+     * columns. The layout is the same as encode() with the columns in the canonical order.
+     *
+     * @param canonicalColumns The canonical order of the columns (see getCanonicalColumns())
+     * @return The encoded board
+     */
+
+    byte[] encodeCanonical(int[] canonicalColumns) {
+
+        byte[] bytes = encode();
+        int offset = 3 + getReserveCount();
+        for (int column : canonicalColumns) {
+            System.arraycopy(columns[column], 0, bytes, offset, columns[column].length);
+            offset += columns[column].length;
+            bytes[offset++] = END_OF_AREA;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Create a signature that uniquely identifies the board. It is the encoded board held in a String, which stores it
+     * one byte per character.
+     *
+     * @return The signature
+     */
+
+    String getSignature() {
+        return new String(encode(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,125 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scores a whole board for the searches that pick which board to expand next, a higher score is a more promising board.
+ * The score is a weighted sum of a few features of the board, and each set of weights makes a search that favours a
+ * different way of playing.
+ */
+
+public class BoardEvaluator {
+
+    /** Weights that value progress and space about equally. */
+
+    public static final BoardEvaluator BALANCED = new BoardEvaluator("balanced", 4, 3, 1, 2, 1);
+
+    /** Weights that push cards on to the Foundation as fast as possible. */
+
+    public static final BoardEvaluator GREEDY = new BoardEvaluator("greedy", 8, 2, 1, 1, 0);
+
+    /** Weights that keep the board untangled and the solution short. */
+
+    public static final BoardEvaluator CAUTIOUS = new BoardEvaluator("cautious", 4, 4, 2, 4, 2);
+
+    /** The name of the set of weights. */
+
+    private final String name;
+
+    /** The weight of each card on the Foundation. */
+
+    private final int foundationWeight;
+
+    /** The weight of each empty Tableau column. */
+
+    private final int emptyColumnWeight;
+
+    /** The weight of each empty Reserve slot. */
+
+    private final int emptySlotWeight;
+
+    /** The penalty for each card that covers a lower card of its own suit. */
+
+    private final int blockerWeight;
+
+    /** The penalty for each move made so far. */
+
+    private final int lengthWeight;
+
+    /**
+     * Create a BoardEvaluator.
+     *
+     * @param name The name of the set of weights
+     * @param foundationWeight The weight of each card on the Foundation
+     * @param emptyColumnWeight The weight of each empty Tableau column
+     * @param emptySlotWeight The weight of each empty Reserve slot
+     * @param blockerWeight The penalty for each card that covers a lower card of its own suit
+     * @param lengthWeight The penalty for each move made so far
+     */
+
+    public BoardEvaluator(String name, int foundationWeight, int emptyColumnWeight, int emptySlotWeight, int blockerWeight, int lengthWeight) {
+
+        this.name = name;
+        this.foundationWeight = foundationWeight;
+        this.emptyColumnWeight = emptyColumnWeight;
+        this.emptySlotWeight = emptySlotWeight;
+        this.blockerWeight = blockerWeight;
+        this.lengthWeight = lengthWeight;
+    }
+
+    /**
+     * Get the name of the set of weights.
+     *
+     * @return The name
+     */
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Score a board.
+     *
+     * @param board The board to score
+     * @return The score, higher is better
+     */
+
+    public int evaluate(Board board) {
+
+        int emptyColumns = 0;
+        int blockers = 0;
+        for (int i = 0; i < CardPosition.TABLEAU.length; i++) {
+
+            List<Card> column = board.getColumn(i);
+            if (column.isEmpty()) {
+                emptyColumns++;
+                continue;
+            }
+
+            // A card blocks if a lower card of its suit is under it, since that one has to go to the Foundation first
+
+            int[] lowestRank = new int[Card.SUITS.length];
+            Arrays.fill(lowestRank, Integer.MAX_VALUE);
+            for (Card card : column) {
+                int suit = card.getSuit().ordinal();
+                int rank = card.getRank().ordinal();
+                if (lowestRank[suit] < rank)
+                    blockers++;
+                else
+                    lowestRank[suit] = rank;
+            }
+        }
+
+        int emptySlots = BoardCore.RESERVE_SIZE - board.getReserve().size();
+        return (foundationWeight * board.getFoundationCount()) + (emptyColumnWeight * emptyColumns) + (emptySlotWeight * emptySlots)
+                - (blockerWeight * blockers) - (lengthWeight * board.getSolutionLength());
+    }
+
+    /** @see Object#toString() */
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -124,6 +124,20 @@ public class Card implements Comparable<Card> {
 
     public static final Rank[] RANKS = {Rank.Ace, Rank.Two, Rank.Three, Rank.Four, Rank.Five, Rank.Six, Rank.Seven, Rank.Eight, Rank.Nine, Rank.Ten, Rank.Jack, Rank.Queen, Rank.King};
 
+    /** The number of cards in a deck. */
+
+    public static final int DECK_SIZE = 52;
+
+    /** One Card object for each card in the deck, in index order. */
+
+    private static final Card[] DECK = new Card[DECK_SIZE];
+
+    static {
+        for (Suit suit : SUITS)
+            for (Rank rank : RANKS)
+                DECK[(suit.ordinal() * RANKS.length) + rank.ordinal()] = new Card(suit, rank);
+    }
+
     /** The Suit of this card. */
 
     private final Suit suit;
@@ -154,6 +168,17 @@ public class Card implements Comparable<Card> {
         this(Suit.forShortForm(card.substring(card.length() - 1)), Rank.forShortForm(card.substring(0, card.length() - 1)));
     }
 
+    /**
+     * Get the Card for an index in the deck.
+     *
+     * @param index The index of the card (see getIndex())
+     * @return The shared Card object for that index
+     */
+
+    public static Card forIndex(int index) {
+        return DECK[index];
+    }
+
     /**
      * Get the suit of the Card.
      *
@@ -174,6 +199,17 @@ public class Card implements Comparable<Card> {
         return rank;
     }
 
+    /**
+     * Get the index of the Card in the deck. The index is the suit ordinal times 13 plus the rank ordinal, so it ranges
+     * from 0 to 51 and sorts the same way as the cards themselves.
+     *
+     * @return The index
+     */
+
+    public int getIndex() {
+        return (suit.ordinal() * RANKS.length) + rank.ordinal();
+    }
+
     /**
      * Cards are compared by suit and rank
      *
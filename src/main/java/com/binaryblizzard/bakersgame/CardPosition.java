@@ -27,6 +27,10 @@ public class CardPosition {
         new CardPosition(Area.TABLEAU, 7)
     };
 
+    /** The number of distinct positions: the 8 Tableau columns, the Reserve and the Foundation. */
+
+    public static final int COUNT = 10;
+
     /** The different areas on the board. */
 
     public enum Area {
@@ -103,6 +107,63 @@ public class CardPosition {
         return column;
     }
 
+    /**
+     * Get a small index that identifies this position. The Tableau columns are 0 to 7, the Reserve is 8 and the
+     * Foundation is 9.
+     *
+     * @return The index
+     */
+
+    public int getIndex() {
+
+        if (area == Area.TABLEAU)
+            return column;
+        else if (area == Area.RESERVE)
+            return 8;
+        else
+            return 9;
+    }
+
+    /**
+     * Get the position for an index.
+     *
+     * @param index The index (see getIndex())
+     * @return The shared position for that index
+     * @throws IllegalArgumentException If the index is out of range
+     */
+
+    public static CardPosition forIndex(int index) throws IllegalArgumentException {
+
+        if ((index >= 0) && (index < TABLEAU.length))
+            return TABLEAU[index];
+        else if (index == 8)
+            return RESERVE;
+        else if (index == 9)
+            return FOUNDATION;
+        else
+            throw new IllegalArgumentException("Invalid position index: " + index);
+    }
+
+    /**
+     * Get the position for its short form, the form toString() writes.
+     *
+     * @param shortForm The short form, e.g. F, R or T3
+     * @return The shared position
+     * @throws IllegalArgumentException If the short form is not valid
+     */
+
+    public static CardPosition parse(String shortForm) throws IllegalArgumentException {
+
+        if (shortForm.equals(Area.FOUNDATION.shortForm))
+            return FOUNDATION;
+        else if (shortForm.equals(Area.RESERVE.shortForm))
+            return RESERVE;
+        else if (shortForm.matches(Area.TABLEAU.shortForm + "[0-7]"))
+            return TABLEAU[shortForm.charAt(1) - '0'];
+        else
+            throw new IllegalArgumentException("Invalid position: " + shortForm);
+    }
+
     /** @see java.lang.Object#toString() */
 
     @Override
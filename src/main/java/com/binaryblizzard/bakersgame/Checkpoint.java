@@ -0,0 +1,321 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A snapshot of the state of a depth first search that it can be resumed from after the JVM restarts. The search is a
+ * path of moves from the initial board, the moves still to be tried at each board along the path, the boards seen
+ * before and a few counters. Moves are stored as their two byte codes (see Move#getCode()).
+ * <p>
+ * The boards seen before can run to millions, so they are not part of the snapshot. They go in a log file next to it
+ * that each checkpoint only appends the new boards to, and the snapshot records how much of the log is valid. When the
+ * search clears its boards the log starts again in a second file, so the last snapshot and its log are never
+ * overwritten until the next snapshot is safely in place.
+ */
+
+public class Checkpoint {
+
+    /** The value the snapshot file starts with. */
+
+    private static final int MAGIC = 0x42474350;
+
+    /** The version of the file format. */
+
+    private static final int VERSION = 1;
+
+    /** The moves from the initial board to the current one. */
+
+    private final List<Move> path;
+
+    /** The moves still to be tried at each board along the path, from the initial board to the current one. */
+
+    private final List<List<Move>> pendingMoves;
+
+    /** The shortest solution known when the snapshot was taken, or null if there is none. */
+
+    private final List<Move> bestSolution;
+
+    /** The number of boards the search had expanded. */
+
+    private final long nodes;
+
+    /** The number of descents abandoned by the restart policy. */
+
+    private final int cutoffs;
+
+    /** True if the descent started with no boards seen before, so running out of boards covers the whole tree. */
+
+    private final boolean coveringTree;
+
+    /** Which of the two log files holds the boards seen before. */
+
+    private final int logFile;
+
+    /** The number of bytes of the log that hold the boards seen before. */
+
+    private final long logLength;
+
+    /** The boards seen before, only set when the checkpoint was read back. */
+
+    private final List<String> previousBoards;
+
+    /**
+     * Create a Checkpoint.
+     *
+     * @param path The moves from the initial board to the current one
+     * @param pendingMoves The moves still to be tried at each board along the path
+     * @param bestSolution The shortest solution known or null
+     * @param nodes The number of boards the search has expanded
+     * @param cutoffs The number of descents abandoned by the restart policy
+     * @param coveringTree True if the descent started with no boards seen before
+     * @param logFile Which of the two log files holds the boards seen before
+     * @param logLength The number of bytes of the log that hold the boards seen before
+     * @param previousBoards The boards seen before, null when writing
+     */
+
+    public Checkpoint(List<Move> path, List<List<Move>> pendingMoves, List<Move> bestSolution, long nodes, int cutoffs, boolean coveringTree, int logFile, long logLength, List<String> previousBoards) {
+
+        this.path = path;
+        this.pendingMoves = pendingMoves;
+        this.bestSolution = bestSolution;
+        this.nodes = nodes;
+        this.cutoffs = cutoffs;
+        this.coveringTree = coveringTree;
+        this.logFile = logFile;
+        this.logLength = logLength;
+        this.previousBoards = previousBoards;
+    }
+
+    /**
+     * Get the path of moves from the initial board to the current one.
+     *
+     * @return The moves
+     */
+
+    public List<Move> getPath() {
+        return path;
+    }
+
+    /**
+     * Get the moves still to be tried at each board along the path.
+     *
+     * @return One list of moves for the initial board and one for the board after each move of the path
+     */
+
+    public List<List<Move>> getPendingMoves() {
+        return pendingMoves;
+    }
+
+    /**
+     * Get the shortest solution known when the snapshot was taken.
+     *
+     * @return The solution or null if there was none
+     */
+
+    public List<Move> getBestSolution() {
+        return bestSolution;
+    }
+
+    /**
+     * Get the number of boards the search had expanded.
+     *
+     * @return The number of boards
+     */
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Get the number of descents abandoned by the restart policy.
+     *
+     * @return The number of descents
+     */
+
+    public int getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Check if the descent started with no boards seen before, so running out of boards covers the whole tree. A
+     * descent that kept the boards of abandoned descents may have boards marked as seen that it never finished.
+     *
+     * @return true if the descent covers the whole tree
+     */
+
+    public boolean isCoveringTree() {
+        return coveringTree;
+    }
+
+    /**
+     * Get which of the two log files holds the boards seen before.
+     *
+     * @return 0 or 1
+     */
+
+    public int getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * Get the number of bytes of the log that hold the boards seen before.
+     *
+     * @return The number of bytes
+     */
+
+    public long getLogLength() {
+        return logLength;
+    }
+
+    /**
+     * Get the boards seen before.
+     *
+     * @return The signatures of the boards
+     */
+
+    public List<String> getPreviousBoards() {
+        return previousBoards;
+    }
+
+    /**
+     * Get the path of one of the logs that go with a snapshot file.
+     *
+     * @param snapshotPath The path of the snapshot
+     * @param logFile Which of the two logs
+     * @return The path of the log
+     */
+
+    public static Path getLogPath(Path snapshotPath, int logFile) {
+        return snapshotPath.resolveSibling(snapshotPath.getFileName() + ".visited" + logFile);
+    }
+
+    /**
+     * Encode the snapshot.
+     *
+     * @return A buffer ready to be written
+     */
+
+    ByteBuffer encode() {
+
+        int moves = path.size() + ((bestSolution == null) ? 0 : bestSolution.size());
+        for (List<Move> frame : pendingMoves)
+            moves += frame.size();
+
+        ByteBuffer buffer = ByteBuffer.allocate(40 + (pendingMoves.size() * 2) + (moves * 2));
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(nodes).putInt(cutoffs).put((byte) (coveringTree ? 1 : 0)).put((byte) logFile).putLong(logLength);
+
+        buffer.putShort((short) path.size());
+        for (Move move : path)
+            buffer.putShort((short) move.getCode());
+
+        for (List<Move> frame : pendingMoves) {
+            buffer.putShort((short) frame.size());
+            for (Move move : frame)
+                buffer.putShort((short) move.getCode());
+        }
+
+        buffer.putShort((short) ((bestSolution == null) ? -1 : bestSolution.size()));
+        if (bestSolution != null)
+            for (Move move : bestSolution)
+                buffer.putShort((short) move.getCode());
+
+        return buffer.flip();
+    }
+
+    /**
+     * Encode boards for the log. Each board is its length in one byte followed by the encoded board.
+     *
+     * @param boards The signatures of the boards
+     * @return A buffer ready to be written
+     */
+
+    static ByteBuffer encodeBoards(Collection<String> boards) {
+
+        int length = 0;
+        for (String board : boards)
+            length += 1 + board.length();
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (String board : boards) {
+            buffer.put((byte) board.length());
+            buffer.put(board.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        return buffer.flip();
+    }
+
+    /**
+     * Read a checkpoint and the boards in its log.
+     *
+     * @param snapshotPath The path of the snapshot
+     * @return The checkpoint
+     * @throws IOException If the files can't be read or are not a valid checkpoint
+     */
+
+    public static Checkpoint read(Path snapshotPath) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+        if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION))
+            throw new IOException("Not a checkpoint: " + snapshotPath);
+
+        long nodes = buffer.getLong();
+        int cutoffs = buffer.getInt();
+        boolean coveringTree = buffer.get() != 0;
+        int logFile = buffer.get();
+        long logLength = buffer.getLong();
+
+        List<Move> path = readMoves(buffer, buffer.getShort());
+        List<List<Move>> pendingMoves = new ArrayList<>(path.size() + 1);
+        for (int i = 0; i <= path.size(); i++)
+            pendingMoves.add(readMoves(buffer, buffer.getShort()));
+
+        short solutionLength = buffer.getShort();
+        List<Move> bestSolution = (solutionLength < 0) ? null : readMoves(buffer, solutionLength);
+
+        // Read the valid part of the log
+
+        List<String> previousBoards = new ArrayList<>();
+        try (FileChannel log = FileChannel.open(getLogPath(snapshotPath, logFile), StandardOpenOption.READ)) {
+
+            ByteBuffer boards = ByteBuffer.allocate((int) logLength);
+            while (boards.hasRemaining())
+                if (log.read(boards) < 0)
+                    throw new IOException("Checkpoint log is shorter than " + logLength + " bytes");
+
+            boards.flip();
+            while (boards.hasRemaining()) {
+                byte[] board = new byte[boards.get() & 0xFF];
+                boards.get(board);
+                previousBoards.add(new String(board, StandardCharsets.ISO_8859_1));
+            }
+        }
+
+        return new Checkpoint(path, pendingMoves, bestSolution, nodes, cutoffs, coveringTree, logFile, logLength, previousBoards);
+    }
+
+    /**
+     * Read a list of move codes.
+     *
+     * @param buffer The buffer to read from
+     * @param count The number of moves
+     * @return The moves
+     */
+
+    private static List<Move> readMoves(ByteBuffer buffer, int count) {
+
+        List<Move> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            moves.add(Move.forCode(buffer.getShort() & 0xFFFF));
+
+        return moves;
+    }
+}
@@ -0,0 +1,273 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+/**
+ * Writes the checkpoints of a search in the background with asynchronous file channels, so the search only pauses for
+ * as long as it takes to encode its state into buffers. A write first appends the new boards to the log, then writes
+ * the snapshot to a temporary file and moves it over the old one, so a crash at any point leaves the last complete
+ * checkpoint behind. A timer marks when the next checkpoint is due and only one write is in flight at a time.
+ */
+
+public class CheckpointWriter {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(CheckpointWriter.class.getName());
+
+    /** The timer that marks checkpoints as due, shared by all writers. */
+
+    private static final Timer TIMER = new Timer("CheckpointWriter", true);
+
+    /** The path of the snapshot. */
+
+    private final Path snapshotPath;
+
+    /** The task that marks a checkpoint as due. */
+
+    private final TimerTask dueTask;
+
+    /** Which of the two log files is in use. */
+
+    private int logFile;
+
+    /** The number of bytes written to the log in use, including the write in flight. */
+
+    private long logLength;
+
+    /** The open log channel, null until the first write. */
+
+    private AsynchronousFileChannel log = null;
+
+    /** Set by the timer when a checkpoint is due. */
+
+    private volatile boolean due = false;
+
+    /** Set while a write is in flight. */
+
+    private volatile boolean writing = false;
+
+    /** Set if a write failed, the log may then be missing boards so no more checkpoints are written. */
+
+    private volatile boolean failed = false;
+
+    /**
+     * Create a CheckpointWriter.
+     *
+     * @param snapshotPath The path of the snapshot
+     * @param interval The time between checkpoints in milliseconds
+     * @param resumedFrom The checkpoint the search resumed from, its log is carried on with, or null to start afresh
+     */
+
+    public CheckpointWriter(Path snapshotPath, long interval, Checkpoint resumedFrom) {
+
+        this.snapshotPath = snapshotPath;
+        logFile = (resumedFrom == null) ? 1 : resumedFrom.getLogFile();
+        logLength = (resumedFrom == null) ? -1 : resumedFrom.getLogLength();
+
+        dueTask = new TimerTask() {
+            @Override
+            public void run() {
+                due = true;
+            }
+        };
+        TIMER.schedule(dueTask, interval, interval);
+    }
+
+    /**
+     * Check if a checkpoint should be written. This only reads volatile flags.
+     *
+     * @return true if a checkpoint is due and the last one has been written
+     */
+
+    public boolean isDue() {
+        return due && ! writing && ! failed;
+    }
+
+    /**
+     * Start writing a checkpoint. The state is copied into buffers before this returns, so the search can carry on
+     * changing it straight away. If a write is still in flight this waits for it first.
+     *
+     * @param path The moves from the initial board to the current one
+     * @param pendingMoves The moves still to be tried at each board along the path
+     * @param bestSolution The shortest solution known or null
+     * @param nodes The number of boards the search has expanded
+     * @param cutoffs The number of descents abandoned by the restart policy
+     * @param coveringTree True if the descent started with no boards seen before
+     * @param newBoards The boards seen since the last checkpoint
+     * @param restartLog true if the search has cleared its boards since the last checkpoint, so newBoards is all of them
+     * @throws IOException If the log can't be opened
+     */
+
+    public void write(List<Move> path, List<List<Move>> pendingMoves, List<Move> bestSolution, long nodes, int cutoffs, boolean coveringTree, Collection<String> newBoards, boolean restartLog) throws IOException {
+
+        waitForWrite();
+        if (failed)
+            return;
+
+        due = false;
+        writing = true;
+
+        // Switch to the other log file when the boards start again so the one the last snapshot uses is left alone
+
+        if (restartLog || (logLength < 0)) {
+            if (log != null)
+                log.close();
+            logFile = 1 - logFile;
+            logLength = 0;
+            log = AsynchronousFileChannel.open(Checkpoint.getLogPath(snapshotPath, logFile), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        } else if (log == null)
+            log = AsynchronousFileChannel.open(Checkpoint.getLogPath(snapshotPath, logFile), StandardOpenOption.WRITE);
+
+        ByteBuffer boards = Checkpoint.encodeBoards(newBoards);
+        long position = logLength;
+        logLength += boards.remaining();
+        ByteBuffer snapshot = new Checkpoint(path, pendingMoves, bestSolution, nodes, cutoffs, coveringTree, logFile, logLength, null).encode();
+
+        AsynchronousFileChannel logChannel = log;
+        writeFully(logChannel, boards, position, () -> {
+            logChannel.force(false);
+            writeSnapshot(snapshot);
+        });
+    }
+
+    /**
+     * Write the snapshot to a temporary file and move it into place.
+     *
+     * @param snapshot The encoded snapshot
+     * @throws IOException If the file can't be opened
+     */
+
+    private void writeSnapshot(ByteBuffer snapshot) throws IOException {
+
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        AsynchronousFileChannel channel = AsynchronousFileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeFully(channel, snapshot, 0, () -> {
+            channel.force(false);
+            channel.close();
+            Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writing = false;
+        });
+    }
+
+    /** A step to run when a write completes. */
+
+    private interface Continuation {
+
+        /**
+         * Run the step.
+         *
+         * @throws IOException If it fails
+         */
+
+        void run() throws IOException;
+    }
+
+    /**
+     * Write a whole buffer to a channel, issuing more writes until it is all written, then run the next step.
+     *
+     * @param channel The channel to write to
+     * @param buffer The buffer to write
+     * @param position The position in the file to write it at
+     * @param next The step to run once it is written
+     */
+
+    private void writeFully(AsynchronousFileChannel channel, ByteBuffer buffer, long position, Continuation next) {
+
+        if (! buffer.hasRemaining()) {
+            complete(next);
+            return;
+        }
+
+        channel.write(buffer, position, null, new CompletionHandler<Integer, Void>() {
+
+            @Override
+            public void completed(Integer written, Void attachment) {
+
+                if (buffer.hasRemaining())
+                    channel.write(buffer, position + buffer.position(), null, this);
+                else
+                    complete(next);
+            }
+
+            @Override
+            public void failed(Throwable ex, Void attachment) {
+                fail(ex);
+            }
+        });
+    }
+
+    /**
+     * Run the step after a write, logging a failure.
+     *
+     * @param next The step to run
+     */
+
+    private void complete(Continuation next) {
+
+        try {
+            next.run();
+
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Give up on checkpoints after a write failed.
+     *
+     * @param ex The cause of the failure
+     */
+
+    private void fail(Throwable ex) {
+
+        LOG.severe("Failed to write checkpoint, no more will be written: " + ex);
+        failed = true;
+        writing = false;
+    }
+
+    /**
+     * Stop taking checkpoints and wait for the one in flight to be written.
+     */
+
+    public void close() {
+
+        dueTask.cancel();
+        waitForWrite();
+        try {
+            if (log != null)
+                log.close();
+
+        } catch (IOException ex) {
+            LOG.severe("Failed to close checkpoint log: " + ex);
+        }
+    }
+
+    /**
+     * Wait for the write in flight to finish.
+     */
+
+    private void waitForWrite() {
+
+        try {
+            while (writing)
+                Thread.sleep(10);
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
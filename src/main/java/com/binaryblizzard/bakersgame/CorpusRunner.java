@@ -0,0 +1,266 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the depth first search on every deal of a corpus up to its first solution, a few deals at a time on a pool of
+ * threads, and reports how the time and the boards expanded are spread across the deals. One deal says little about
+ * the solver, since most deals solve at once and a few take orders of magnitude longer, so the report gives the
+ * percentiles and a histogram of the times rather than just the mean. The corpus is a deal file or a range of deal
+ * numbers made on the fly (see DealGenerator), and the solutions can be written to a solution file in the same order.
+ */
+
+public class CorpusRunner {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(CorpusRunner.class.getName());
+
+    /** The time to give each deal if no budget is given, in milliseconds. */
+
+    private static final long DEFAULT_TIME_BUDGET = 10_000;
+
+    /** The number of deals waiting for each thread, so a thread never waits for the next deal to be read. */
+
+    private static final int DEALS_PER_THREAD = 4;
+
+    /** Gives the deals of the corpus in order. */
+
+    private interface DealSource {
+
+        /**
+         * Get the next deal.
+         *
+         * @return The deal
+         * @throws IOException If the deal can't be read
+         */
+
+        Board next() throws IOException;
+    }
+
+    /** What the search did with one deal. */
+
+    private static final class Result {
+
+        /** The time the search took in nanoseconds. */
+
+        private final long time;
+
+        /** The number of boards expanded. */
+
+        private final long nodes;
+
+        /** The first solution, null if there is none. */
+
+        private final List<Move> solution;
+
+        /**
+         * Create a Result.
+         *
+         * @param time The time the search took in nanoseconds
+         * @param nodes The number of boards expanded
+         * @param solution The first solution, null if there is none
+         */
+
+        private Result(long time, long nodes, List<Move> solution) {
+
+            this.time = time;
+            this.nodes = nodes;
+            this.solution = solution;
+        }
+    }
+
+    /** The time to give each deal in milliseconds, 0 for no limit. */
+
+    private final long timeBudget;
+
+    /** The number of boards to give each deal, 0 for no limit. */
+
+    private final long nodeBudget;
+
+    /** The seed of every search, so a run can be repeated. */
+
+    private final long seed;
+
+    /**
+     * Create a CorpusRunner.
+     *
+     * @param timeBudget The time to give each deal in milliseconds, 0 for no limit
+     * @param nodeBudget The number of boards to give each deal, 0 for no limit
+     * @param seed The seed of every search
+     */
+
+    public CorpusRunner(long timeBudget, long nodeBudget, long seed) {
+
+        this.timeBudget = timeBudget;
+        this.nodeBudget = nodeBudget;
+        this.seed = seed;
+    }
+
+    /**
+     * Search one deal up to its first solution.
+     *
+     * @param deal The deal
+     * @return What the search did
+     */
+
+    private Result solve(Board deal) {
+
+        long start = System.nanoTime();
+        BestSolution bestSolution = new BestSolution(1, timeBudget, nodeBudget);
+        DepthFirstSearch search = new DepthFirstSearch(deal, new SearchContext(seed, new MoveHistory()), bestSolution);
+        search.run();
+        bestSolution.finish();
+
+        return new Result(System.nanoTime() - start, search.getNodes(), bestSolution.getSolution());
+    }
+
+    /**
+     * Search every deal of a corpus and report the results.
+     *
+     * @param deals The deals
+     * @param count The number of deals
+     * @param threads The number of deals to search at once
+     * @param solutionPath The file to write the solutions to, null to not write them
+     * @throws IOException If a deal can't be read or a solution can't be written
+     * @throws InterruptedException If the run is interrupted
+     */
+
+    private void run(DealSource deals, long count, int threads, Path solutionPath) throws IOException, InterruptedException {
+
+        if (count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many deals: " + count);
+
+        long[] times = new long[(int) count];
+        long[] nodes = new long[(int) count];
+        int solved = 0;
+        long solutionMoves = 0;
+        long start = System.nanoTime();
+
+        // Read the deals in order and take the results in order, so the solutions are written in the order of the deals
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        try (SolutionFileWriter writer = (solutionPath == null) ? null : new SolutionFileWriter(solutionPath)) {
+
+            long next = 0;
+            for (int i = 0; i < count; i++) {
+
+                while ((next < count) && (pending.size() < threads * DEALS_PER_THREAD)) {
+                    Board deal = deals.next();
+                    next++;
+                    pending.add(executor.submit(() -> solve(deal)));
+                }
+
+                Result result = pending.remove().get();
+                times[i] = result.time;
+                nodes[i] = result.nodes;
+                if (result.solution != null) {
+                    solved++;
+                    solutionMoves += result.solution.size();
+                }
+                if (writer != null)
+                    writer.write(result.solution);
+            }
+
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("A search failed", ex.getCause());
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LOG.info(String.format("Solved %d of %d deals in %d ms with %d threads, %.1f moves on average", solved, count,
+                (System.nanoTime() - start) / 1_000_000, threads, (solved == 0) ? 0.0 : (double) solutionMoves / solved));
+        LOG.info("Time per deal in ms: " + Percentiles.describe(times, 1_000_000));
+        LOG.info("Boards per deal: " + Percentiles.describe(nodes, 1));
+
+        // The histogram has a bucket for each power of 10 ms
+
+        int[] buckets = new int[8];
+        for (long time : times) {
+            double milliseconds = time / 1_000_000.0;
+            buckets[(milliseconds < 1) ? 0 : Math.min(buckets.length - 1, (int) Math.log10(milliseconds) + 1)]++;
+        }
+        StringBuilder histogram = new StringBuilder("Deals by time:");
+        for (int bucket = 0; bucket < buckets.length; bucket++)
+            if (buckets[bucket] > 0)
+                histogram.append(bucket == 0 ? " <1 ms " : " <" + (long) Math.pow(10, bucket) + " ms ").append(buckets[bucket]);
+        LOG.info(histogram.toString());
+    }
+
+    /**
+     * Run a corpus.
+     *
+     * @param args The options followed by a deal file or --deals and a range of deal numbers:
+     *             <pre>[--threads &lt;count&gt;] [--time &lt;seconds&gt;] [--nodes &lt;count&gt;] [--seed &lt;seed&gt;] [--output &lt;solutionfile&gt;] &lt;dealfile&gt;|--deals &lt;first&gt; &lt;count&gt;</pre>
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            int threads = Runtime.getRuntime().availableProcessors();
+            long timeBudget = DEFAULT_TIME_BUDGET;
+            long nodeBudget = 0;
+            long seed = 1;
+            Path solutionPath = null;
+            Path dealPath = null;
+            long firstDeal = 0;
+            long count = -1;
+            for (int i = 0; i < args.length; i++)
+                if (args[i].equals("--threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--time"))
+                    timeBudget = Long.parseLong(args[++i]) * 1000;
+                else if (args[i].equals("--nodes"))
+                    nodeBudget = Long.parseLong(args[++i]);
+                else if (args[i].equals("--seed"))
+                    seed = Long.parseLong(args[++i]);
+                else if (args[i].equals("--output"))
+                    solutionPath = Paths.get(args[++i]);
+                else if (args[i].equals("--deals")) {
+                    firstDeal = Long.parseLong(args[++i]);
+                    count = Long.parseLong(args[++i]);
+                } else
+                    dealPath = Paths.get(args[i]);
+
+            if ((dealPath == null) == (count < 0)) {
+                System.err.println("usage: CorpusRunner [--threads <count>] [--time <seconds>] [--nodes <count>] [--seed <seed>] [--output <solutionfile>] <dealfile>|--deals <first> <count>");
+                System.exit(2);
+            }
+
+            // The searches log every solution and their statistics, only the results are wanted here
+
+            Logger.getLogger(DepthFirstSearch.class.getName()).setLevel(Level.WARNING);
+            Logger.getLogger(BestSolution.class.getName()).setLevel(Level.WARNING);
+
+            CorpusRunner runner = new CorpusRunner(timeBudget, nodeBudget, seed);
+            if (dealPath != null)
+                try (DealFile deals = new DealFile(dealPath)) {
+                    runner.run(deals::next, deals.getCount(), threads, solutionPath);
+                }
+            else
+                runner.run(DealGenerator.deals(firstDeal, count).iterator()::next, count, threads, solutionPath);
+
+            System.exit(0);
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
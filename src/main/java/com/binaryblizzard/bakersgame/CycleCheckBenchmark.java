@@ -0,0 +1,108 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A benchmark that compares the ways the depth first search avoids searching a board twice: keeping every board seen,
+ * keeping only the boards on the path, and keeping the path with caches of recent boards of different sizes. For each
+ * board and mode it runs the search with a number of seeds until the first solution and reports how many were solved,
+ * the mean time and boards to the first solution and the boards expanded per second over all the runs. Keeping only the
+ * path saves the work of the set of boards seen but searches some boards again, so both rates matter.
+ */
+
+public class CycleCheckBenchmark {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(CycleCheckBenchmark.class.getName());
+
+    /** The number of seeds to run each mode with. */
+
+    private static final int SEEDS = 10;
+
+    /** The time to give each run before counting it as unsolved, in milliseconds. */
+
+    private static final long TIME_BUDGET = 10_000;
+
+    /** The modes to compare, "all" for every board seen, "path" for just the path and "path:n" with n recent boards. */
+
+    private static final String[] MODES = {"all", "path", "path:4096", "path:65536", "path:1048576"};
+
+    /**
+     * Run the search in one mode with one seed until it finds a solution.
+     *
+     * @param initialBoard The board to solve
+     * @param mode The mode
+     * @param seed The seed
+     * @return The search, which has the number of boards it expanded
+     */
+
+    private static DepthFirstSearch runSearch(Board initialBoard, String mode, long seed) {
+
+        SearchContext context = new SearchContext(seed, new MoveHistory());
+        if (mode.startsWith("path")) {
+            context.setPathOnly(true);
+            if (mode.startsWith("path:"))
+                context.setRecentBoards(Integer.parseInt(mode.substring(5)));
+        }
+
+        DepthFirstSearch search = new DepthFirstSearch(initialBoard, context, new BestSolution(1, TIME_BUDGET));
+        search.run();
+        return search;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The board files to run the benchmark on
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            // The searches log every solution and their statistics, only the results are wanted here
+
+            Logger.getLogger(DepthFirstSearch.class.getName()).setLevel(Level.WARNING);
+            Logger.getLogger(BestSolution.class.getName()).setLevel(Level.WARNING);
+
+            for (String boardFile : args) {
+
+                Board initialBoard = new Board(boardFile);
+                for (String mode : MODES) {
+
+                    int solved = 0;
+                    long solvedTime = 0;
+                    long solvedNodes = 0;
+                    long totalTime = 0;
+                    long totalNodes = 0;
+                    for (long seed = 1; seed <= SEEDS; seed++) {
+
+                        long start = System.nanoTime();
+                        DepthFirstSearch search = runSearch(initialBoard, mode, seed);
+                        long time = System.nanoTime() - start;
+                        totalTime += time;
+                        totalNodes += search.getNodes();
+                        if (search.getFirstSolutionNodes() < 0)
+                            continue;
+
+                        solved++;
+                        solvedTime += time;
+                        solvedNodes += search.getFirstSolutionNodes();
+                    }
+
+                    LOG.info(String.format("%s %-14s solved %2d/%d, mean %7d ms and %10d boards to a solution, %8.0f boards/s",
+                            boardFile, mode, solved, SEEDS, (solved == 0) ? 0 : solvedTime / solved / 1_000_000,
+                            (solved == 0) ? 0 : solvedNodes / solved, totalNodes * 1e9 / totalTime));
+                }
+            }
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.binaryblizzard.bakersgame;
+
+/**
+ * Spots boards that can't be won without searching them. It only ever says a board is dead when that can be proved, so
+ * a search can drop the boards it flags straight away. A card that can go to the Foundation can always go there safely
+ * in Baker's Game, since the only card that could be built on it is already on the Foundation, so those moves are made
+ * before the checks.
+ * <p>
+ * The first check covers boards with a full Reserve and no empty column. The only moves then are to the Foundation and
+ * on to the next card of the same suit, and a card that is on the next card of its suit can't move again. If no
+ * sequence of those moves can uncover a card for the Foundation, free a Reserve slot or empty a column, the board is
+ * stuck for good.
+ * <p>
+ * The other two look at the moment a card in the Tableau first moves. Before then every card on top of it has to be
+ * moved out of its column, and a card that has been moved is either in the Reserve, at the bottom of a column or on the
+ * next card of its suit. A card that can't have gone to the Foundation by then and whose next card is still buried, or
+ * which is a King, has to take up one of the four Reserve slots or one of the bottoms of the other seven columns. If it
+ * is already in the Reserve it needs one too, and every other column that holds one of these cards uses up a place of
+ * its own, since either the card stays where it is and the column can't be emptied or it moves and takes a place. When
+ * there are more of these cards on top of the card than places left, it can never move.
+ * <ul>
+ * <li>Any card in the Tableau has to move to win. Until it does nothing under it goes to the Foundation, nor the cards
+ * of the same suit above those.</li>
+ * <li>Any win has to start by moving the next card of one of the suits to the Foundation, so until one of them moves
+ * nothing goes to the Foundation at all.</li>
+ * </ul>
+ * Cards are handled as bitmasks of their indexes, so the checks cost a few operations for each card on the board.
+ */
+
+class DeadlockDetector {
+
+    /** The bits of the Kings. */
+
+    private static final long KINGS;
+
+    /** The bits of the cards of each suit. */
+
+    private static final long[] SUIT_CARDS = new long[Card.SUITS.length];
+
+    /** The number of places a card that has been moved out of a column could go. */
+
+    private static final int PLACES = BoardCore.RESERVE_SIZE + BoardCore.COLUMNS - 1;
+
+    static {
+
+        long kings = 0;
+        for (int suit = 0; suit < Card.SUITS.length; suit++) {
+            SUIT_CARDS[suit] = ((1L << Card.RANKS.length) - 1) << (suit * Card.RANKS.length);
+            kings |= 1L << ((suit * Card.RANKS.length) + Card.RANKS.length - 1);
+        }
+
+        KINGS = kings;
+    }
+
+    /**
+     * Check if a board can be proved to be dead.
+     *
+     * @param core The cards of the board
+     * @return true if the board can't be won, false if it might be
+     */
+
+    static boolean isDead(BoardCore core) {
+
+        core = playFoundationMoves(core);
+        if (core.isEmpty())
+            return false;
+
+        long[] columns = new long[BoardCore.COLUMNS];
+        for (int column = 0; column < BoardCore.COLUMNS; column++)
+            for (int index = 0; index < core.getColumnSize(column); index++)
+                columns[column] |= 1L << core.getColumnCard(column, index);
+
+        return isStuckWithoutRoom(core, columns) || hasBuriedCard(core, columns) || isFoundationBlocked(core, columns);
+    }
+
+    /**
+     * Move every card that can go to the Foundation there.
+     *
+     * @param core The cards of the board
+     * @return The cards after the moves
+     */
+
+    private static BoardCore playFoundationMoves(BoardCore core) {
+
+        boolean moved = true;
+        while (moved) {
+
+            moved = false;
+            for (long cards = core.getReserve(); cards != 0; cards &= cards - 1) {
+                int card = Long.numberOfTrailingZeros(cards);
+                if (core.canMoveToFoundation(card)) {
+                    core = core.withMove(card, CardPosition.RESERVE.getIndex(), CardPosition.FOUNDATION.getIndex());
+                    moved = true;
+                }
+            }
+
+            for (int column = 0; column < BoardCore.COLUMNS; column++)
+                for (int card = core.getTop(column); (card != BoardCore.NO_CARD) && core.canMoveToFoundation(card); card = core.getTop(column)) {
+                    core = core.withMove(card, column, CardPosition.FOUNDATION.getIndex());
+                    moved = true;
+                }
+        }
+
+        return core;
+    }
+
+    /**
+     * Check if a board with no room left can never get any.
+     *
+     * @param core The cards of the board
+     * @param columns The bits of the cards in each column
+     * @return true if it can't
+     */
+
+    private static boolean isStuckWithoutRoom(BoardCore core, long[] columns) {
+
+        if (core.canMoveToReserve())
+            return false;
+
+        for (int column = 0; column < BoardCore.COLUMNS; column++)
+            if (columns[column] == 0)
+                return false;
+
+        // Work down each column while the card at the bottom of what is uncovered can go on the next card of its suit.
+        // Once a card has been on top of a column it stays a place to put the card below it in its suit, so this
+        // uncovers at least everything that any sequence of moves could
+
+        int[] uncovered = new int[BoardCore.COLUMNS];
+        long tops = 0;
+        for (int column = 0; column < BoardCore.COLUMNS; column++) {
+            uncovered[column] = core.getColumnSize(column) - 1;
+            tops |= 1L << core.getTop(column);
+        }
+
+        boolean changed = true;
+        while (changed) {
+
+            changed = false;
+            for (int column = 0; column < BoardCore.COLUMNS; column++) {
+
+                int card = core.getColumnCard(column, uncovered[column]);
+                if (((KINGS & (1L << card)) == 0) && ((tops & (1L << (card + 1))) != 0)) {
+                    if (uncovered[column] == 0)
+                        return false;
+                    tops |= 1L << core.getColumnCard(column, --uncovered[column]);
+                    changed = true;
+                }
+            }
+        }
+
+        // A Reserve card that can go on the Tableau frees a slot, and a card for the Foundation is progress
+
+        for (long cards = core.getReserve(); cards != 0; cards &= cards - 1) {
+            int card = Long.numberOfTrailingZeros(cards);
+            if (((KINGS & (1L << card)) == 0) && ((tops & (1L << (card + 1))) != 0))
+                return false;
+        }
+
+        for (long cards = tops; cards != 0; cards &= cards - 1)
+            if (core.canMoveToFoundation(Long.numberOfTrailingZeros(cards)))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Check if there is a card in the Tableau that can never be moved.
+     *
+     * @param core The cards of the board
+     * @param columns The bits of the cards in each column
+     * @return true if there is one
+     */
+
+    private static boolean hasBuriedCard(BoardCore core, long[] columns) {
+
+        for (int column = 0; column < BoardCore.COLUMNS; column++) {
+
+            // Work up the column keeping track of the cards under the card and the cards that can't go to the Foundation
+
+            long under = 0;
+            long blocked = 0;
+            for (int index = 0; index < core.getColumnSize(column) - 1; index++) {
+
+                int card = core.getColumnCard(column, index);
+                blocked |= SUIT_CARDS[BoardCore.suitOf(card)] & -(1L << card);
+                under |= 1L << card;
+                if (! canMove(core, columns, column, columns[column] & ~under, blocked & (KINGS | (under >>> 1))))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if none of the cards that are next for their suit can ever be moved to the Foundation.
+     *
+     * @param core The cards of the board
+     * @param columns The bits of the cards in each column
+     * @return true if they can't
+     */
+
+    private static boolean isFoundationBlocked(BoardCore core, long[] columns) {
+
+        for (int suit = 0; suit < Card.SUITS.length; suit++) {
+
+            int height = core.getFoundationHeight(suit);
+            if (height == Card.RANKS.length)
+                continue;
+
+            // Find the card, if it isn't in the Tableau or is on top of a column it can go now
+
+            int card = (suit * Card.RANKS.length) + height;
+            int column = 0;
+            while ((column < BoardCore.COLUMNS) && ((columns[column] & (1L << card)) == 0))
+                column++;
+            if ((column == BoardCore.COLUMNS) || (core.getTop(column) == card))
+                return false;
+
+            long under = 0;
+            for (int index = 0; core.getColumnCard(column, index) != card; index++)
+                under |= 1L << core.getColumnCard(column, index);
+            under |= 1L << card;
+
+            if (canMove(core, columns, column, columns[column] & ~under, KINGS | (under >>> 1)))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if there are enough places for the cards on top of a card that can't go on the next card of their suit.
+     *
+     * @param core The cards of the board
+     * @param columns The bits of the cards in each column
+     * @param column The column of the card
+     * @param above The bits of the cards on top of the card
+     * @param stuck The bits of the cards that need a place of their own
+     * @return false if the card can never be moved
+     */
+
+    private static boolean canMove(BoardCore core, long[] columns, int column, long above, long stuck) {
+
+        int needed = Long.bitCount(stuck & above) + Long.bitCount(stuck & core.getReserve());
+        if (needed == 0)
+            return true;
+
+        int places = PLACES;
+        for (int other = 0; other < BoardCore.COLUMNS; other++)
+            if ((other != column) && ((columns[other] & stuck) != 0))
+                places--;
+
+        return needed <= places;
+    }
+}
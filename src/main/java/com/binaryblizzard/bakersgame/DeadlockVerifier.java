@@ -0,0 +1,184 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.Stack;
+import java.util.logging.Logger;
+
+/**
+ * Checks the DeadlockDetector against exhaustive search. It makes up small positions with most of the cards already on
+ * the Foundation, searches each one to the end and compares the answer with the detector. A position the detector
+ * calls dead that the search wins means the detector is wrong, and so does any board it calls dead along the way to a
+ * win, so the run fails. It also reports how many of the dead positions the detector caught.
+ */
+
+public class DeadlockVerifier {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(DeadlockVerifier.class.getName());
+
+    /** The number of positions to check if none is given. */
+
+    private static final int DEFAULT_POSITIONS = 20_000;
+
+    /** The fewest cards to leave off the Foundation. */
+
+    private static final int MIN_CARDS = 16;
+
+    /** The most cards to leave off the Foundation. */
+
+    private static final int MAX_CARDS = 36;
+
+    /** The most boards to search in a position before giving up on it. */
+
+    private static final int MAX_NODES = 200_000;
+
+    /** The number of boards checked on the way to wins. */
+
+    private static long pathBoards = 0;
+
+    /** The number of boards on the way to wins that the detector called dead. */
+
+    private static long pathWrong = 0;
+
+    /**
+     * Make up a position.
+     *
+     * @param random The random number generator
+     * @return The cards of the position
+     */
+
+    private static BoardCore makePosition(SplittableRandom random) {
+
+        // Put the low cards of each suit on the Foundation until the right number are left
+
+        int cards = MIN_CARDS + random.nextInt(MAX_CARDS - MIN_CARDS + 1);
+        int[] heights = new int[Card.SUITS.length];
+        for (int left = Card.DECK_SIZE; left > cards; ) {
+            int suit = random.nextInt(Card.SUITS.length);
+            if (heights[suit] < Card.RANKS.length) {
+                heights[suit]++;
+                left--;
+            }
+        }
+
+        BoardCore core = BoardCore.EMPTY;
+        List<Integer> rest = new ArrayList<>();
+        for (int suit = 0; suit < Card.SUITS.length; suit++)
+            for (int rank = 0; rank < Card.RANKS.length; rank++)
+                if (rank < heights[suit])
+                    core = core.withFoundationCard((suit * Card.RANKS.length) + rank);
+                else
+                    rest.add((suit * Card.RANKS.length) + rank);
+
+        // Deal the rest out with a crowded Reserve and a card at the bottom of every column so that there is little room
+
+        Collections.shuffle(rest, new Random(random.nextLong()));
+        int reserve = 2 + random.nextInt(BoardCore.RESERVE_SIZE - 1);
+        for (int i = 0; i < rest.size(); i++)
+            if (i < reserve)
+                core = core.withReserveCard(rest.get(i));
+            else if (i < reserve + BoardCore.COLUMNS)
+                core = core.withColumnCard(rest.get(i), i - reserve);
+            else
+                core = core.withColumnCard(rest.get(i), random.nextInt(BoardCore.COLUMNS));
+
+        return core;
+    }
+
+    /**
+     * Search a position to the end. The boards are checked by the detector as they are created but the search does not
+     * skip the ones it calls dead, and every board on the way to a win is checked.
+     *
+     * @param core The cards of the position
+     * @return 1 if it can be won, 0 if it can't, -1 if the search gave up
+     */
+
+    private static int search(BoardCore core) {
+
+        Board currentBoard = new Board(core, new SearchContext(1, new MoveHistory()));
+        if (currentBoard.gameIsWon())
+            return 1;
+
+        Stack<Board> gameStates = new Stack<>();
+        Set<String> previousBoards = new HashSet<>();
+        previousBoards.add(currentBoard.getSignature());
+        for (int nodes = 0; nodes < MAX_NODES; nodes++) {
+
+            while (currentBoard.boardHasFailed()) {
+                if (gameStates.isEmpty())
+                    return 0;
+                currentBoard = gameStates.pop();
+            }
+
+            Board nextBoard = currentBoard.applyNextMove();
+            if (nextBoard.gameIsWon()) {
+                gameStates.push(currentBoard);
+                for (Board board : gameStates) {
+                    pathBoards++;
+                    if (board.isDead()) {
+                        pathWrong++;
+                        LOG.severe("Detector called a board dead on the way to a win: " + board);
+                    }
+                }
+                return 1;
+            }
+
+            if (previousBoards.add(nextBoard.getSignature())) {
+                gameStates.push(currentBoard);
+                currentBoard = nextBoard;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Run the check.
+     *
+     * @param args The number of positions to check and the seed, both optional
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        int positions = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_POSITIONS;
+        SplittableRandom random = new SplittableRandom((args.length > 1) ? Long.parseLong(args[1]) : 1);
+
+        int won = 0;
+        int dead = 0;
+        int caught = 0;
+        int undecided = 0;
+        int wrong = 0;
+        for (int i = 0; i < positions; i++) {
+
+            BoardCore core = makePosition(random);
+            boolean flagged = DeadlockDetector.isDead(core);
+            int result = search(core);
+            if (result < 0)
+                undecided++;
+            else if (result == 0) {
+                dead++;
+                if (flagged)
+                    caught++;
+            } else {
+                won++;
+                if (flagged) {
+                    wrong++;
+                    LOG.severe("Detector called a position dead that can be won: " + new Board(core, new SearchContext()));
+                }
+            }
+        }
+
+        LOG.info(String.format("%d positions: %d won, %d dead, %d undecided. The detector caught %d of the dead ones (%.1f%%) and was wrong %d times",
+                positions, won, dead, undecided, caught, (dead == 0) ? 0.0 : 100.0 * caught / dead, wrong));
+        LOG.info("It was wrong about " + pathWrong + " of the " + pathBoards + " boards on the way to the wins");
+        System.exit(((wrong == 0) && (pathWrong == 0)) ? 0 : 1);
+    }
+}
@@ -0,0 +1,235 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ * A file of deals in a compact binary form, for corpora of millions of deals where a JSON file for each one would be
+ * far too slow to read. The file is a header of a magic number, a version and the size of a deal, then the deals one
+ * after another at a fixed size of DEAL_BYTES, so a deal can be found from its number without reading the ones before it.
+ * <p>
+ * A deal is packed from its encoding (see BoardCore.encode()): the two bytes of Foundation heights as they are, then the
+ * Reserve cards and the columns from the bottom up, each card in 6 bits and each area ended by END_OF_AREA in 6 bits, and
+ * the rest of the record filled with END_OF_AREA. A whole deal is 52 cards and 9 ends, 366 bits, so it always fits.
+ * <p>
+ * The file is mapped into memory a segment at a time, the segments are only read by the operating system when they are
+ * touched, so a corpus can be read in order or at random without holding it in the heap. DealFileWriter writes these.
+ */
+
+public class DealFile implements Closeable {
+
+    /** The magic number at the start of a deal file. */
+
+    static final int MAGIC = 0x42474446;
+
+    /** The version of the format. */
+
+    static final int VERSION = 1;
+
+    /** The size of the header. */
+
+    static final int HEADER_SIZE = 12;
+
+    /** The size of a packed deal. */
+
+    public static final int DEAL_BYTES = 48;
+
+    /** The number of bits for a card or the end of an area. */
+
+    private static final int SYMBOL_BITS = 6;
+
+    /** The symbol that ends an area. */
+
+    private static final int END_SYMBOL = (1 << SYMBOL_BITS) - 1;
+
+    /** The number of symbols after the Foundation heights. */
+
+    private static final int SYMBOLS = (DEAL_BYTES - 2) * 8 / SYMBOL_BITS;
+
+    /** The number of deals in each mapped segment. */
+
+    private static final int SEGMENT_DEALS = 1 << 22;
+
+    /** The file channel. */
+
+    private final FileChannel channel;
+
+    /** The number of deals in the file. */
+
+    private final long count;
+
+    /** The segments mapped so far, by number. */
+
+    private final MappedByteBuffer[] segments;
+
+    /** The number of the next deal next() returns. */
+
+    private long next = 0;
+
+    /**
+     * Open a deal file.
+     *
+     * @param path The file
+     * @throws IOException If the file can't be read or is not a deal file
+     */
+
+    public DealFile(Path path) throws IOException {
+
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining())
+                if (channel.read(header) < 0)
+                    throw new IOException(path + " is not a deal file");
+            header.flip();
+            if ((header.getInt() != MAGIC) || (header.getInt() != VERSION) || (header.getInt() != DEAL_BYTES))
+                throw new IOException(path + " is not a deal file of version " + VERSION);
+
+            long size = channel.size() - HEADER_SIZE;
+            if (size % DEAL_BYTES != 0)
+                throw new IOException(path + " ends part way through a deal");
+            count = size / DEAL_BYTES;
+            segments = new MappedByteBuffer[(int) ((count + SEGMENT_DEALS - 1) / SEGMENT_DEALS)];
+
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Get the number of deals in the file.
+     *
+     * @return The number of deals
+     */
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Read a deal.
+     *
+     * @param index The number of the deal, from 0
+     * @return The deal
+     * @throws IOException If the segment with the deal can't be mapped
+     * @throws IndexOutOfBoundsException If there is no such deal
+     */
+
+    public Board read(long index) throws IOException, IndexOutOfBoundsException {
+
+        if ((index < 0) || (index >= count))
+            throw new IndexOutOfBoundsException("No deal " + index + " in a file of " + count);
+
+        int segment = (int) (index / SEGMENT_DEALS);
+        if (segments[segment] == null) {
+            long first = (long) segment * SEGMENT_DEALS;
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * DEAL_BYTES, Math.min(SEGMENT_DEALS, count - first) * DEAL_BYTES);
+        }
+
+        return new Board(unpack(segments[segment], (int) (index % SEGMENT_DEALS) * DEAL_BYTES), new SearchContext());
+    }
+
+    /**
+     * Check if there are deals left to read in order.
+     *
+     * @return true if next() has another deal
+     */
+
+    public boolean hasNext() {
+        return next < count;
+    }
+
+    /**
+     * Read the next deal in order.
+     *
+     * @return The deal
+     * @throws IOException If the segment with the deal can't be mapped
+     * @throws NoSuchElementException If every deal has been read
+     */
+
+    public Board next() throws IOException, NoSuchElementException {
+
+        if (next >= count)
+            throw new NoSuchElementException("Read all " + count + " deals");
+
+        return read(next++);
+    }
+
+    /** @see Closeable#close() */
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Pack the cards of a board.
+     *
+     * @param core The cards
+     * @param buffer The buffer to put the DEAL_BYTES of the packed deal in at its position
+     */
+
+    static void pack(BoardCore core, ByteBuffer buffer) {
+
+        byte[] encoding = core.encode();
+        buffer.put(encoding[0]).put(encoding[1]);
+
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < SYMBOLS; i++) {
+
+            int symbol = (i + 2 < encoding.length) ? encoding[i + 2] : END_SYMBOL;
+            bits = (bits << SYMBOL_BITS) | ((symbol == BoardCore.END_OF_AREA) ? END_SYMBOL : symbol);
+            bitCount += SYMBOL_BITS;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                buffer.put((byte) (bits >>> bitCount));
+            }
+        }
+
+        // The last few bits of the record are padding
+
+        if (bitCount > 0)
+            buffer.put((byte) (bits << (8 - bitCount)));
+    }
+
+    /**
+     * Unpack the cards of a board.
+     *
+     * @param buffer The buffer with the packed deal
+     * @param offset The offset of the packed deal in the buffer
+     * @return The cards
+     */
+
+    static BoardCore unpack(ByteBuffer buffer, int offset) {
+
+        byte[] encoding = new byte[2 + SYMBOLS];
+        encoding[0] = buffer.get(offset);
+        encoding[1] = buffer.get(offset + 1);
+
+        long bits = 0;
+        int bitCount = 0;
+        int position = offset + 2;
+        for (int i = 0; i < SYMBOLS; i++) {
+
+            while (bitCount < SYMBOL_BITS) {
+                bits = (bits << 8) | (buffer.get(position++) & 0xFF);
+                bitCount += 8;
+            }
+
+            bitCount -= SYMBOL_BITS;
+            int symbol = (int) (bits >>> bitCount) & END_SYMBOL;
+            encoding[i + 2] = (symbol == END_SYMBOL) ? BoardCore.END_OF_AREA : (byte) symbol;
+        }
+
+        return BoardCore.decode(encoding);
+    }
+}
@@ -0,0 +1,108 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a file of deals in the compact binary form read by DealFile. The deals are packed into a direct buffer and
+ * written to the channel when it fills up, so writing a deal costs no more than packing it.
+ */
+
+public class DealFileWriter implements Closeable {
+
+    /** The number of deals buffered before they are written. */
+
+    private static final int BUFFER_DEALS = 4096;
+
+    /** The file channel. */
+
+    private final FileChannel channel;
+
+    /** The deals waiting to be written. */
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_DEALS * DealFile.DEAL_BYTES);
+
+    /** The number of deals written. */
+
+    private long count = 0;
+
+    /**
+     * Create a DealFileWriter, replacing the file if it exists.
+     *
+     * @param path The file
+     * @throws IOException If the file can't be written
+     */
+
+    public DealFileWriter(Path path) throws IOException {
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer.putInt(DealFile.MAGIC).putInt(DealFile.VERSION).putInt(DealFile.DEAL_BYTES);
+    }
+
+    /**
+     * Write a deal.
+     *
+     * @param board The deal, any board can be written but the moves that reached it are not kept
+     * @throws IOException If the file can't be written
+     */
+
+    public void write(Board board) throws IOException {
+        write(board.getCore());
+    }
+
+    /**
+     * Write the cards of a deal.
+     *
+     * @param core The cards
+     * @throws IOException If the file can't be written
+     */
+
+    void write(BoardCore core) throws IOException {
+
+        if (buffer.remaining() < DealFile.DEAL_BYTES)
+            flush();
+
+        DealFile.pack(core, buffer);
+        count++;
+    }
+
+    /**
+     * Get the number of deals written.
+     *
+     * @return The number of deals
+     */
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Write the buffered deals to the file.
+     *
+     * @throws IOException If the file can't be written
+     */
+
+    private void flush() throws IOException {
+
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /** @see Closeable#close() */
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Makes deals from their numbers the way Microsoft FreeCell numbers them, which Bakers Game shares the layout of, so a
+ * corpus can be made again from just a range of numbers and compared with other solvers on the same deals. The number
+ * seeds a linear congruential generator that shuffles the deck, and the cards are dealt a row at a time across the eight
+ * columns, the first row at the bottom. Deals are made independently of each other, so a range is made in parallel
+ * a block at a time and written in order.
+ */
+
+public class DealGenerator {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(DealGenerator.class.getName());
+
+    /** The first deal number. */
+
+    public static final long FIRST_DEAL = 1;
+
+    /** The last deal number, the generator only has 31 bits of state. */
+
+    public static final long LAST_DEAL = Integer.MAX_VALUE;
+
+    /** The number of deals made at once before they are written. */
+
+    private static final int BLOCK_DEALS = 1 << 16;
+
+    /** The ranks in the order of the deck the shuffle starts from. */
+
+    private static final Card.Rank[] RANKS = Card.RANKS;
+
+    /** The suits in the order of the deck the shuffle starts from, each rank has Clubs, Diamonds, Hearts then Spades. */
+
+    private static final Card.Suit[] SUITS = {Card.Suit.Clubs, Card.Suit.Diamonds, Card.Suit.Hearts, Card.Suit.Spades};
+
+    /** Not created. */
+
+    private DealGenerator() {
+    }
+
+    /**
+     * Make a deal.
+     *
+     * @param number The number of the deal, from FIRST_DEAL to LAST_DEAL
+     * @return The deal
+     * @throws IllegalArgumentException If there is no deal with the number
+     */
+
+    public static Board deal(long number) throws IllegalArgumentException {
+        return new Board(dealCore(number), new SearchContext());
+    }
+
+    /**
+     * Make a range of deals in order, as they are needed.
+     *
+     * @param first The number of the first deal
+     * @param count The number of deals
+     * @return The deals
+     * @throws IllegalArgumentException If a deal in the range has no number
+     */
+
+    public static Stream<Board> deals(long first, long count) throws IllegalArgumentException {
+
+        checkRange(first, count);
+        return LongStream.range(first, first + count).mapToObj(DealGenerator::deal);
+    }
+
+    /**
+     * Make the cards of a deal.
+     *
+     * @param number The number of the deal, from FIRST_DEAL to LAST_DEAL
+     * @return The cards
+     * @throws IllegalArgumentException If there is no deal with the number
+     */
+
+    static BoardCore dealCore(long number) throws IllegalArgumentException {
+
+        if ((number < FIRST_DEAL) || (number > LAST_DEAL))
+            throw new IllegalArgumentException("No deal " + number + ", deals are numbered from " + FIRST_DEAL + " to " + LAST_DEAL);
+
+        // The deck starts with the Kings and ends with the Aces, and each card is swapped with a random one after it
+
+        int[] deck = new int[Card.DECK_SIZE];
+        for (int i = 0; i < Card.DECK_SIZE; i++)
+            deck[i] = Card.DECK_SIZE - 1 - i;
+
+        long state = number;
+        for (int i = 0; i < Card.DECK_SIZE - 1; i++) {
+            state = (state * 214013 + 2531011) & 0x7FFFFFFF;
+            int j = Card.DECK_SIZE - 1 - (int) ((state >>> 16) % (Card.DECK_SIZE - i));
+            int card = deck[i];
+            deck[i] = deck[j];
+            deck[j] = card;
+        }
+
+        BoardCore cards = BoardCore.EMPTY;
+        for (int i = 0; i < Card.DECK_SIZE; i++) {
+            Card card = new Card(SUITS[deck[i] % SUITS.length], RANKS[deck[i] / SUITS.length]);
+            cards = cards.withColumnCard(card.getIndex(), i % BoardCore.COLUMNS);
+        }
+
+        return cards;
+    }
+
+    /**
+     * Check that every deal in a range has a number.
+     *
+     * @param first The number of the first deal
+     * @param count The number of deals
+     * @throws IllegalArgumentException If a deal in the range has no number
+     */
+
+    private static void checkRange(long first, long count) throws IllegalArgumentException {
+
+        if ((count < 0) || (first < FIRST_DEAL) || (first + count - 1 > LAST_DEAL))
+            throw new IllegalArgumentException("Deals are numbered from " + FIRST_DEAL + " to " + LAST_DEAL);
+    }
+
+    /**
+     * Make a range of deals.
+     *
+     * @param args Optionally --json to write a board file for each deal to a directory rather than a deal file, the
+     *             first deal number, the number of deals and the file or directory to write them to:
+     *             <pre>[--json] &lt;first&gt; &lt;count&gt; &lt;dealfile&gt;|&lt;directory&gt;</pre>
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            boolean json = (args.length > 0) && args[0].equals("--json");
+            int first = json ? 1 : 0;
+            if (args.length - first != 3) {
+                System.err.println("usage: DealGenerator [--json] <first> <count> <dealfile>|<directory>");
+                System.exit(2);
+            }
+
+            long firstDeal = Long.parseLong(args[first]);
+            long count = Long.parseLong(args[first + 1]);
+            Path path = Paths.get(args[first + 2]);
+            checkRange(firstDeal, count);
+
+            long start = System.currentTimeMillis();
+            if (json) {
+
+                Files.createDirectories(path);
+                LongStream.range(firstDeal, firstDeal + count).parallel().forEach(number -> {
+                    try {
+                        deal(number).writeJson(path.resolve("deal-" + number + ".json").toString());
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+
+            } else
+                try (DealFileWriter writer = new DealFileWriter(path)) {
+                    for (long block = firstDeal; block < firstDeal + count; block += BLOCK_DEALS) {
+                        BoardCore[] cores = LongStream.range(block, Math.min(block + BLOCK_DEALS, firstDeal + count)).parallel()
+                                .mapToObj(DealGenerator::dealCore).toArray(BoardCore[]::new);
+                        for (BoardCore core : cores)
+                            writer.write(core);
+                    }
+                }
+
+            LOG.info("Made " + count + " deals from " + firstDeal + " in " + (System.currentTimeMillis() - start) + " ms");
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
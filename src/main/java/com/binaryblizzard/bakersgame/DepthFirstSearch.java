@@ -0,0 +1,627 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.logging.Logger;
+
+/**
+ * A randomized depth first search for solutions. Each time it finds a solution it publishes it and restarts from the
+ * initial board with a fresh ordering, pruning any board that can't lead to a solution shorter than the best one known.
+ * A RestartPolicy can also cut a descent short and start again before it finds anything. Several of these can run at
+ * once on different threads, each with its own seed, sharing one BestSolution.
+ */
+
+public class DepthFirstSearch implements Search {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(DepthFirstSearch.class.getName());
+
+    /** The number of boards to expand between reports to the BestSolution. */
+
+    private static final int CHECK_INTERVAL = 4096;
+
+    /** The board that the search starts from, it has its own pending moves for this search. */
+
+    private final Board initialBoard;
+
+    /** The search context. */
+
+    private final SearchContext context;
+
+    /** Where solutions are published. */
+
+    private final BestSolution bestSolution;
+
+    /** The number of boards expanded. */
+
+    private long nodes = 0;
+
+    /** The number of boards expanded that have been reported to the BestSolution, see reportNodes(). */
+
+    private long reportedNodes = 0;
+
+    /** The number of boards skipped because they were seen before. */
+
+    private long skipped = 0;
+
+    /** The number of boards skipped because the known solution reaches them in fewer moves. */
+
+    private long knownShorter = 0;
+
+    /** The number of boards pruned because they can't lead to a shorter solution. */
+
+    private long pruned = 0;
+
+    /** The number of boards skipped because they were proved to be dead. */
+
+    private long deadlocked = 0;
+
+    /** The number of times the search started again after covering the whole tree. */
+
+    private long restarts = 0;
+
+    /** The number of descents abandoned by the restart policy. */
+
+    private int cutoffs = 0;
+
+    /** The number of boards expanded before the first solution, -1 until there is one. */
+
+    private long firstSolutionNodes = -1;
+
+    /** The boards on the path from the initial board to the current one. */
+
+    private final Stack<Board> gameStates = new Stack<>();
+
+    /** The signatures of the boards seen before, or of the boards on the path when only the path is kept. */
+
+    private final Set<String> previousBoards;
+
+    /** True if only the boards on the path are kept rather than every board seen. */
+
+    private final boolean pathOnly;
+
+    /** The boards finished with most recently when only the path is kept, null if they are not cached. */
+
+    private final RecentBoardCache recentBoards;
+
+    /** The most boards on the path at once. */
+
+    private int deepestPath = 0;
+
+    /** The board being expanded. */
+
+    private Board currentBoard;
+
+    /** The most cards this descent has got on to the Foundation. */
+
+    private int deepestFoundation = 0;
+
+    /** True if the current descent started with no boards seen before, so running out of boards covers the whole tree. */
+
+    private boolean coveringTree;
+
+    /** The number of boards the current descent may expand before it is abandoned. */
+
+    private long cutoff;
+
+    /** The number of boards the current descent has expanded. */
+
+    private long descentNodes = 0;
+
+    /** Writes checkpoints of the search, null if none are taken. */
+
+    private CheckpointWriter checkpointWriter = null;
+
+    /** The checkpoint to resume from, null to start from the initial board. */
+
+    private Checkpoint resumeFrom = null;
+
+    /** The boards seen since the last checkpoint. */
+
+    private List<String> newBoards = new ArrayList<>();
+
+    /** True if the boards seen before were cleared since the last checkpoint. */
+
+    private boolean boardsCleared = false;
+
+    /** Looks boards up in the position store and records what the search learns, null if there is no store. */
+
+    private PositionRecorder recorder = null;
+
+    /** The number of boards skipped because the position store has them as dead. */
+
+    private long storeDead = 0;
+
+    /** The number of solutions taken from the position store. */
+
+    private long storeSolutions = 0;
+
+    /** The number of moves the known solution takes to reach each board along it, by signature. */
+
+    private final Map<String, Integer> knownDepths = new HashMap<>();
+
+    /** Solves the endgames exactly, null if they are searched like the rest of the tree. */
+
+    private EndgameSolver endgameSolver = null;
+
+    /**
+     * Create a DepthFirstSearch.
+     *
+     * @param initialBoard The board to start from
+     * @param context The search context with the seed and move history for this search
+     * @param bestSolution Where to publish solutions
+     */
+
+    public DepthFirstSearch(Board initialBoard, SearchContext context, BestSolution bestSolution) {
+
+        this.initialBoard = new Board(initialBoard, context);
+        this.context = context;
+        this.bestSolution = bestSolution;
+
+        // Make room for the boards expected without going over the default load factor. The path never needs much
+
+        pathOnly = context.isPathOnly();
+        recentBoards = (pathOnly && (context.getRecentBoards() > 0)) ? new RecentBoardCache(context.getRecentBoards()) : null;
+        previousBoards = (! pathOnly && (context.getExpectedBoards() > 0)) ? new HashSet<>((int) (context.getExpectedBoards() * 4L / 3) + 1) : new HashSet<>();
+    }
+
+    /**
+     * Take checkpoints of the search and optionally resume from one.
+     *
+     * @param checkpointWriter The writer for the checkpoints
+     * @param resumeFrom The checkpoint to resume from or null to start from the initial board
+     */
+
+    public void setCheckpoint(CheckpointWriter checkpointWriter, Checkpoint resumeFrom) {
+
+        this.checkpointWriter = checkpointWriter;
+        this.resumeFrom = resumeFrom;
+    }
+
+    /**
+     * Run the search until the run is finished.
+     */
+
+    @Override
+    public void run() {
+
+        MoveHistory moveHistory = context.getMoveHistory();
+        RestartPolicy restartPolicy = context.getRestartPolicy();
+        cutoff = restartPolicy.getCutoff(0);
+        if (context.getPositionStore() != null)
+            recorder = new PositionRecorder(context.getPositionStore());
+        if (context.getEndgameCards() > 0)
+            endgameSolver = new EndgameSolver(context.getEndgameCards(), context.getPatternDatabase());
+        if (context.getKnownSolution() != null) {
+            Board board = initialBoard;
+            for (Move move : context.getKnownSolution()) {
+                board = board.applyMove(move);
+                knownDepths.putIfAbsent(board.getSignature(), board.getSolutionLength());
+            }
+        }
+        restart(false);
+        if (resumeFrom != null)
+            resume();
+
+        // This is the main loop where we apply the next move to a board and check for a solution.
+
+        while (true) {
+
+            if (bestSolution.isFinished())
+                break;
+            if (++nodes - reportedNodes == CHECK_INTERVAL) {
+                reportNodes();
+                if ((checkpointWriter != null) && checkpointWriter.isDue())
+                    writeCheckpoint();
+            }
+
+            // Abandon a descent that has used up its share of boards and try again with a new ordering
+
+            if (++descentNodes > cutoff) {
+                cutoff = restartPolicy.getCutoff(++cutoffs);
+                restart(context.isKeepingVisited());
+            }
+
+            // If there are no more moves with the current board, we have to pop the previous board from the stack. If we run out of boards we are done
+
+            while (currentBoard.boardHasFailed()) {
+
+                if (recorder != null)
+                    recorder.pop(currentBoard);
+
+                if (gameStates.isEmpty()) {
+
+                    // We've searched the whole tree. The boards skipped as seen before may still hide shorter solutions
+                    // so when there is a time or node budget start another probe with a new ordering, otherwise we are done.
+                    // If an abandoned descent left boards marked as seen that it never finished, the tree was not
+                    // all covered so try again from scratch
+
+                    if (coveringTree && ! bestSolution.hasBudget()) {
+                        LOG.info("The " + getName() + " covered the whole tree");
+                        reportNodes();
+                        bestSolution.finish();
+                        if (checkpointWriter != null)
+                            checkpointWriter.close();
+                        logStats();
+                        return;
+                    }
+
+                    restart(false);
+                    restarts++;
+
+                } else {
+
+                    // Just pop the previous board
+
+                    leave(currentBoard);
+                    currentBoard = gameStates.pop();
+                }
+            }
+
+            // Try the next move with the current board
+
+            Board nextBoard = currentBoard.applyNextMove();
+
+            // See if we have a solution
+
+            if (nextBoard.gameIsWon()) {
+                if (solutionFound(nextBoard))
+                    break;
+                continue;
+            }
+
+            // Skip boards that can't be won, they count as dead for the position store
+
+            if (nextBoard.isDead()) {
+                deadlocked++;
+                continue;
+            }
+
+            // Every card that is not on the Foundation needs at least one more move, so skip boards that can't beat the best solution
+
+            if (context.isPruning() && (nextBoard.getSolutionLength() + Card.DECK_SIZE - nextBoard.getFoundationCount() >= bestSolution.getBestLength())) {
+                pruned++;
+                if (recorder != null)
+                    recorder.taint();
+                continue;
+            }
+
+            // Finish endgames exactly rather than search them. When pruning, a board that can't beat the best solution
+            // that way can't beat it at all
+
+            if ((endgameSolver != null) && endgameSolver.isEndgame(nextBoard)) {
+
+                int distance = endgameSolver.solve(nextBoard);
+                if (distance == EndgameSolver.DEAD) {
+                    deadlocked++;
+                    continue;
+                }
+
+                if (distance != EndgameSolver.UNKNOWN) {
+
+                    if (context.isPruning() && (nextBoard.getSolutionLength() + distance >= bestSolution.getBestLength())) {
+                        pruned++;
+                        if (recorder != null)
+                            recorder.taint();
+                        continue;
+                    }
+
+                    Board wonBoard = endgameSolver.finish(nextBoard);
+                    if (wonBoard != null) {
+                        if (solutionFound(wonBoard))
+                            break;
+                        continue;
+                    }
+                }
+            }
+
+            // Skip boards the position store knows are dead and take the solutions it knows when they beat the best one
+
+            if (recorder != null) {
+
+                int distance = recorder.lookUp(nextBoard);
+                if (distance == PositionStore.DEAD) {
+                    storeDead++;
+                    continue;
+                }
+
+                if ((distance != PositionStore.UNKNOWN) && (nextBoard.getSolutionLength() + distance < bestSolution.getBestLength())) {
+                    Board wonBoard = recorder.followSolution(nextBoard, distance);
+                    if (wonBoard != null) {
+                        storeSolutions++;
+                        if (solutionFound(wonBoard))
+                            break;
+                        continue;
+                    }
+                }
+            }
+
+            // Skip boards the known solution gets to in fewer moves, the best way on from them starts that way
+
+            String signature = nextBoard.getSignature();
+            Integer knownDepth = knownDepths.get(signature);
+            if ((knownDepth != null) && (nextBoard.getSolutionLength() > knownDepth)) {
+                knownShorter++;
+                if (recorder != null)
+                    recorder.taint();
+                continue;
+            }
+
+            // Have we seen next board before?
+
+            if (visit(signature)) {
+
+                // No so save the previous board on the stack and move forward with this one
+
+                gameStates.push(currentBoard);
+                currentBoard = nextBoard;
+                if (recorder != null)
+                    recorder.push(currentBoard, false);
+
+                // Reward the moves that got more cards on to the Foundation than this search has managed so far
+
+                if (currentBoard.getFoundationCount() > deepestFoundation) {
+                    deepestFoundation = currentBoard.getFoundationCount();
+                    moveHistory.reward(currentBoard.getSolution(), MoveHistory.PROGRESS_REWARD);
+                }
+
+            } else {
+
+                // Yes so just skip it and continue with the current one
+
+                skipped++;
+                if (recorder != null)
+                    recorder.seenBefore(signature);
+            }
+        }
+
+        // Leave a checkpoint that carries on from where the run stopped
+
+        reportNodes();
+        if (checkpointWriter != null) {
+            writeCheckpoint();
+            checkpointWriter.close();
+        }
+
+        logStats();
+    }
+
+    /**
+     * Publish a solution and start again from the initial board to look for more.
+     *
+     * @param wonBoard The board the solution wins the game with
+     * @return true if the run is finished
+     */
+
+    private boolean solutionFound(Board wonBoard) {
+
+        if (firstSolutionNodes < 0)
+            firstSolutionNodes = nodes;
+
+        if (bestSolution.offer(wonBoard, getName()))
+            context.getMoveHistory().reward(wonBoard.getSolution(), MoveHistory.BEST_SOLUTION_REWARD);
+        else
+            context.getMoveHistory().reward(wonBoard.getSolution(), MoveHistory.SOLUTION_REWARD);
+
+        // Every board on the path is solved by the rest of the solution
+
+        if (recorder != null) {
+            List<Board> path = new ArrayList<>(gameStates);
+            path.add(currentBoard);
+            recorder.recordSolution(path, wonBoard.getSolution());
+        }
+
+        if (bestSolution.isFinished())
+            return true;
+
+        // Reset to the first board and keep looking for more
+
+        restart(false);
+        return false;
+    }
+
+    /**
+     * Report the boards expanded since the last report to the BestSolution. The boards of the run a checkpoint was taken
+     * from are not reported again.
+     */
+
+    private void reportNodes() {
+
+        bestSolution.countNodes(nodes - reportedNodes);
+        reportedNodes = nodes;
+    }
+
+    /**
+     * Mark a board as seen.
+     *
+     * @param signature The signature of the board
+     * @return true if the board had not been seen before
+     */
+
+    private boolean visit(String signature) {
+
+        if ((recentBoards != null) && recentBoards.contains(signature))
+            return false;
+
+        if (! previousBoards.add(signature))
+            return false;
+
+        // Only the path is kept so there is nothing for the checkpoint to log
+
+        if (pathOnly)
+            deepestPath = Math.max(deepestPath, previousBoards.size());
+        else if (checkpointWriter != null)
+            newBoards.add(signature);
+
+        return true;
+    }
+
+    /**
+     * Take a board off the path once every move from it has been tried. When only the path is kept it is forgotten,
+     * apart from a place in the cache of recent boards.
+     *
+     * @param board The board
+     */
+
+    private void leave(Board board) {
+
+        if (! pathOnly)
+            return;
+
+        previousBoards.remove(board.getSignature());
+        if (recentBoards != null)
+            recentBoards.add(board.getSignature());
+    }
+
+    /**
+     * Start writing a checkpoint of the search.
+     */
+
+    private void writeCheckpoint() {
+
+        List<List<Move>> pendingMoves = new ArrayList<>(gameStates.size() + 1);
+        for (Board board : gameStates)
+            pendingMoves.add(board.getPendingMoves());
+        pendingMoves.add(currentBoard.getPendingMoves());
+
+        try {
+            checkpointWriter.write(currentBoard.getSolution(), pendingMoves, bestSolution.getSolution(), nodes, cutoffs, coveringTree, newBoards, boardsCleared);
+            newBoards = new ArrayList<>();
+            boardsCleared = false;
+
+        } catch (IOException ex) {
+            LOG.severe("Failed to write checkpoint, no more will be written: " + ex);
+            checkpointWriter = null;
+        }
+    }
+
+    /**
+     * Put the search back in the state recorded by a checkpoint.
+     */
+
+    private void resume() {
+
+        // Replay the path, giving each board the moves it had left. Nothing can be proved dead about the boards on the path
+        // since the moves already tried from them are not known
+
+        List<Move> path = resumeFrom.getPath();
+        List<List<Move>> pendingMoves = resumeFrom.getPendingMoves();
+        initialBoard.setPendingMoves(pendingMoves.get(0));
+        if (recorder != null)
+            recorder.taint();
+
+        for (int i = 0; i < path.size(); i++) {
+            gameStates.push(currentBoard);
+            currentBoard = currentBoard.applyMove(path.get(i));
+            currentBoard.setPendingMoves(pendingMoves.get(i + 1));
+            if (recorder != null)
+                recorder.push(currentBoard, true);
+            if (pathOnly)
+                previousBoards.add(currentBoard.getSignature());
+        }
+
+        if (! pathOnly)
+            previousBoards.addAll(resumeFrom.getPreviousBoards());
+        deepestFoundation = currentBoard.getFoundationCount();
+        nodes = resumeFrom.getNodes();
+        reportedNodes = nodes;
+        cutoffs = resumeFrom.getCutoffs();
+        cutoff = context.getRestartPolicy().getCutoff(cutoffs);
+        coveringTree = resumeFrom.isCoveringTree();
+
+        // Seed the best solution again so the bound carries on from where it was, without counting it as a new one
+
+        if (resumeFrom.getBestSolution() != null) {
+            Board board = initialBoard;
+            for (Move move : resumeFrom.getBestSolution())
+                board = board.applyMove(move);
+            bestSolution.seed(board, "checkpoint of the " + getName());
+        }
+
+        // The log already has the boards seen so far
+
+        newBoards = new ArrayList<>();
+        boardsCleared = false;
+        LOG.info("The " + getName() + " resumed at depth " + path.size() + " with " + previousBoards.size() + " boards seen before");
+        resumeFrom = null;
+    }
+
+    /**
+     * Start a new descent from the initial board. The random number generator has moved on so the moves of equal weight
+     * come out in a new order.
+     *
+     * @param keepVisited true to keep the boards seen before so the new descent does not expand them again
+     */
+
+    private void restart(boolean keepVisited) {
+
+        gameStates.clear();
+        if (! keepVisited || pathOnly)
+            previousBoards.clear();
+        if (! keepVisited) {
+            if (recentBoards != null)
+                recentBoards.clear();
+            newBoards.clear();
+            boardsCleared = true;
+        }
+
+        coveringTree = ! keepVisited;
+        deepestFoundation = 0;
+        descentNodes = 0;
+        currentBoard = initialBoard;
+        currentBoard.computePendingMoves();
+        visit(currentBoard.getSignature());
+        if (recorder != null)
+            recorder.reset(currentBoard);
+    }
+
+    /** @see Search#getName() */
+
+    @Override
+    public String getName() {
+        return "depth first search with seed " + context.getSeed();
+    }
+
+    /**
+     * Log the statistics for this search.
+     */
+
+    private void logStats() {
+        LOG.info("The " + getName() + " expanded " + nodes + " boards, skipped " + skipped + " seen before, pruned " + pruned + ", skipped " + deadlocked + " dead, abandoned " + cutoffs + " descents and restarted " + restarts + " times after covering the whole tree");
+        if (pathOnly)
+            LOG.info("The " + getName() + " kept at most " + deepestPath + " boards on its path" + ((recentBoards == null) ? "" : " and skipped " + recentBoards.getHits() + " found in its cache of " + recentBoards.getSlots() + " recent boards"));
+        if (! knownDepths.isEmpty())
+            LOG.info("The " + getName() + " skipped " + knownShorter + " boards the known solution reaches in fewer moves");
+        if (endgameSolver != null)
+            LOG.info("The " + getName() + " " + endgameSolver.getStats());
+        if (recorder != null)
+            LOG.info("The " + getName() + " skipped " + storeDead + " boards the position store has as dead, took " + storeSolutions + " solutions from it and added " + recorder.getDeadRecorded() + " dead positions to it");
+    }
+
+    /**
+     * Get the number of boards expanded.
+     *
+     * @return The number of boards
+     */
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Get the number of boards expanded before the first solution was found.
+     *
+     * @return The number of boards or -1 if there is no solution
+     */
+
+    public long getFirstSolutionNodes() {
+        return firstSolutionNodes;
+    }
+}
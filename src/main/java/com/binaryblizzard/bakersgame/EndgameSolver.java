@@ -0,0 +1,342 @@
+package com.binaryblizzard.bakersgame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Solves endgames exactly. Once only a few cards are left off the Foundation there are few enough boards left to search
+ * them all, so rather than wander through them a search can ask this for the shortest way to finish.
+ * <p>
+ * It is an A* search. The estimate of the moves left is one for every card not on the Foundation plus one for every
+ * card on top of a lower card of its suit, since that card has to move out of the way before it can go to the
+ * Foundation. When there are pattern databases their bound is used instead if it is higher. No move lowers either
+ * estimate by more than one, so the first finished game taken off the queue is a shortest one. The results are
+ * remembered by the canonical form of the board: the number of moves and the next move for every board on a shortest
+ * path, and every board searched when there turns out to be no way to finish. Boards the search meets that it already
+ * knows are finished straight away. The results are kept across calls, so a depth first search that restarts keeps
+ * them.
+ */
+
+public class EndgameSolver {
+
+    /** A number of moves meaning the board can't be finished. */
+
+    public static final int DEAD = Integer.MAX_VALUE;
+
+    /** A number of moves meaning the search gave up. */
+
+    public static final int UNKNOWN = -1;
+
+    /** The most boards to expand in one endgame before giving up on it. */
+
+    private static final int MAX_NODES = 200_000;
+
+    /** The most boards to remember, they are all forgotten when there are more. */
+
+    private static final int MAX_ENTRIES = 1 << 21;
+
+    /** The value remembered for a board that can't be finished. */
+
+    private static final long DEAD_ENTRY = -1;
+
+    /** A board waiting in the queue. */
+
+    private static final class Node {
+
+        /** The board. */
+
+        private final Board board;
+
+        /** The number of moves from the start of the endgame to the board. */
+
+        private final int moves;
+
+        /** The estimated length of a way to finish through the board. */
+
+        private final int estimate;
+
+        /** True if the board is known to be finished in estimate - moves more moves. */
+
+        private final boolean known;
+
+        /** The order the board was queued in. */
+
+        private final long order;
+
+        /**
+         * Create a Node.
+         *
+         * @param board The board
+         * @param moves The number of moves from the start of the endgame to the board
+         * @param estimate The estimated length of a way to finish through the board
+         * @param known True if the estimate is exact because the board is known
+         * @param order The order the board was queued in
+         */
+
+        private Node(Board board, int moves, int estimate, boolean known, long order) {
+
+            this.board = board;
+            this.moves = moves;
+            this.estimate = estimate;
+            this.known = known;
+            this.order = order;
+        }
+    }
+
+    /** The most cards that may be left off the Foundation for a board to count as an endgame. */
+
+    private final int maxCards;
+
+    /** The pattern databases for a better estimate, null if there are none. */
+
+    private final PatternDatabase patternDatabase;
+
+    /** The results by the canonical form of the boards: the number of moves to finish and the next move, or DEAD_ENTRY. */
+
+    private final Map<String, Long> results = new HashMap<>();
+
+    /** The number of endgames solved. */
+
+    private long solved = 0;
+
+    /** The number of endgames that can't be finished. */
+
+    private long dead = 0;
+
+    /** The number of endgames given up on. */
+
+    private long gaveUp = 0;
+
+    /** The number of endgames that were already known. */
+
+    private long known = 0;
+
+    /** The number of boards expanded. */
+
+    private long expanded = 0;
+
+    /**
+     * Create an EndgameSolver.
+     *
+     * @param maxCards The most cards that may be left off the Foundation for a board to count as an endgame
+     * @param patternDatabase The pattern databases for a better estimate, null for none
+     */
+
+    public EndgameSolver(int maxCards, PatternDatabase patternDatabase) {
+
+        this.maxCards = maxCards;
+        this.patternDatabase = patternDatabase;
+    }
+
+    /**
+     * Check if a board is an endgame that this solves.
+     *
+     * @param board The board
+     * @return true if few enough cards are left off the Foundation
+     */
+
+    public boolean isEndgame(Board board) {
+        return Card.DECK_SIZE - board.getFoundationCount() <= maxCards;
+    }
+
+    /**
+     * Find the number of moves in the shortest way to finish a game.
+     *
+     * @param board The board to finish, its pending moves are not touched
+     * @return The number of moves, DEAD if it can't be finished or UNKNOWN if the search gave up
+     */
+
+    public int solve(Board board) {
+
+        Long result = results.get(getKey(board));
+        if (result != null) {
+            known++;
+            return (result == DEAD_ENTRY) ? DEAD : (int) (result >>> 16);
+        }
+
+        PriorityQueue<Node> queue = new PriorityQueue<>((a, b) -> (a.estimate != b.estimate) ? Integer.compare(a.estimate, b.estimate) :
+                (a.moves != b.moves) ? Integer.compare(b.moves, a.moves) : Long.compare(a.order, b.order));
+        Map<String, Integer> searched = new HashMap<>();
+        long order = 0;
+        int nodes = 0;
+        boolean forgotten = false;
+
+        Board start = new Board(board, new SearchContext(0, new MoveHistory()));
+        queue.add(new Node(start, 0, estimate(start), false, order++));
+        while (! queue.isEmpty()) {
+
+            Node node = queue.poll();
+
+            // The first finished game off the queue is a shortest one
+
+            if (node.known || node.board.gameIsWon()) {
+                Board wonBoard = node.known ? finish(node.board) : node.board;
+                if (wonBoard == null) {
+                    forgotten = true;
+                    continue;
+                }
+                remember(board, wonBoard);
+                solved++;
+                return wonBoard.getSolutionLength() - board.getSolutionLength();
+            }
+
+            String key = getKey(node.board);
+            Integer moves = searched.get(key);
+            if ((moves != null) && (moves <= node.moves))
+                continue;
+            searched.put(key, node.moves);
+
+            if (++nodes > MAX_NODES) {
+                gaveUp++;
+                return UNKNOWN;
+            }
+            expanded++;
+
+            for (Board nextBoard : node.board.getNextBoards()) {
+
+                if (nextBoard.isDead())
+                    continue;
+
+                // Go straight to the end of boards that are already known
+
+                Long nextResult = results.get(getKey(nextBoard));
+                if ((nextResult != null) && (nextResult == DEAD_ENTRY))
+                    continue;
+                if (nextResult != null)
+                    queue.add(new Node(nextBoard, node.moves + 1, node.moves + 1 + (int) (nextResult >>> 16), true, order++));
+                else
+                    queue.add(new Node(nextBoard, node.moves + 1, node.moves + 1 + estimate(nextBoard), false, order++));
+            }
+        }
+
+        // Every board that can be reached was searched, so none of them can be finished, unless the way to finish one
+        // of them was forgotten while searching
+
+        if (forgotten) {
+            gaveUp++;
+            return UNKNOWN;
+        }
+
+        makeRoom(searched.size());
+        for (String key : searched.keySet())
+            results.put(key, DEAD_ENTRY);
+        dead++;
+        return DEAD;
+    }
+
+    /**
+     * Finish a game in the fewest moves by following the remembered next moves. The board must have been solved first.
+     *
+     * @param board The board to finish
+     * @return The won board or null if a board on the way is not known
+     */
+
+    public Board finish(Board board) {
+
+        while (! board.gameIsWon()) {
+
+            int[] canonicalColumns = board.getCanonicalColumns();
+            Long result = results.get(new String(board.encodeCanonical(canonicalColumns), StandardCharsets.ISO_8859_1));
+            if ((result == null) || (result == DEAD_ENTRY))
+                return null;
+            board = board.applyMove(PositionStore.fromCanonicalCode((int) (result & 0xFFFF), canonicalColumns));
+        }
+
+        return board;
+    }
+
+    /**
+     * Remember the number of moves left and the next move for every board on a shortest way to finish.
+     *
+     * @param board The board at the start of the endgame
+     * @param wonBoard The won board at the end of it
+     */
+
+    private void remember(Board board, Board wonBoard) {
+
+        List<Move> solution = wonBoard.getSolution();
+        makeRoom(solution.size() - board.getSolutionLength());
+        for (int i = board.getSolutionLength(); i < solution.size(); i++) {
+            int[] canonicalColumns = board.getCanonicalColumns();
+            String key = new String(board.encodeCanonical(canonicalColumns), StandardCharsets.ISO_8859_1);
+            results.put(key, ((long) (solution.size() - i) << 16) | PositionStore.toCanonicalCode(solution.get(i), canonicalColumns));
+            board = board.applyMove(solution.get(i));
+        }
+    }
+
+    /**
+     * Forget everything if there is not room to remember more boards.
+     *
+     * @param entries The number of boards about to be remembered
+     */
+
+    private void makeRoom(int entries) {
+
+        if (results.size() + entries > MAX_ENTRIES)
+            results.clear();
+    }
+
+    /**
+     * Estimate the number of moves to finish a game, never more than it takes.
+     *
+     * @param board The board
+     * @return One for each card not on the Foundation plus one for each card on top of a lower card of its suit, or
+     *     the bound from the pattern databases if that is higher
+     */
+
+    private int estimate(Board board) {
+
+        int blockers = 0;
+        for (int i = 0; i < BoardCore.COLUMNS; i++) {
+
+            int[] lowestRank = new int[Card.SUITS.length];
+            Arrays.fill(lowestRank, Integer.MAX_VALUE);
+            for (Card card : board.getColumn(i)) {
+                int suit = card.getSuit().ordinal();
+                int rank = card.getRank().ordinal();
+                if (lowestRank[suit] < rank)
+                    blockers++;
+                else
+                    lowestRank[suit] = rank;
+            }
+        }
+
+        int estimate = Card.DECK_SIZE - board.getFoundationCount() + blockers;
+        return (patternDatabase != null) ? Math.max(estimate, patternDatabase.estimate(board.getCore())) : estimate;
+    }
+
+    /**
+     * Get the key of a board in the results.
+     *
+     * @param board The board
+     * @return The canonical encoding of the board held in a String
+     */
+
+    private static String getKey(Board board) {
+        return new String(board.encodeCanonical(board.getCanonicalColumns()), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Get the number of boards expanded.
+     *
+     * @return The number of boards
+     */
+
+    public long getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Get a summary of the work done.
+     *
+     * @return The numbers of endgames solved, found dead, given up on and already known
+     */
+
+    public String getStats() {
+        return "solved " + solved + " endgames, found " + dead + " dead, gave up on " + gaveUp + " and knew " + known + " already, expanding " + expanded + " boards";
+    }
+}
@@ -0,0 +1,618 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A breadth first search that keeps its boards on disk, for finding a shortest solution to a deal with more boards than
+ * fit in memory. It goes a layer at a time, each layer being the boards one move further from the initial board than
+ * the last, so the first solution it finds is a shortest one.
+ * <p>
+ * Each layer is a file of fixed length records sorted by board, so a record is found by its number and two layers can
+ * be merged by reading them in order. A record is the canonical encoding of a board padded out to BOARD_SIZE followed
+ * by the number of the record it came from in the layer before. Duplicates are found late rather than with a set in
+ * memory: the boards made from a layer are sorted in memory a run at a time and written out, then the runs are merged,
+ * keeping one record for each board and dropping the boards in the file of every board seen so far. That file is then
+ * merged with the new layer. The solution is found by following the record numbers back to the initial board and then
+ * finding the moves between the boards.
+ */
+
+public class ExternalBreadthFirstSearch implements Search {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(ExternalBreadthFirstSearch.class.getName());
+
+    /** The bytes in an encoded board, enough for the longest encoding. */
+
+    static final int BOARD_SIZE = 64;
+
+    /** The bytes in a record, the encoded board and the number of the record it came from. */
+
+    static final int RECORD_SIZE = BOARD_SIZE + 8;
+
+    /** The number of records sorted in memory before they are written out as a run, if none is given. */
+
+    public static final int DEFAULT_RUN_RECORDS = 1 << 18;
+
+    /** The size of the buffers the files are read and written through. */
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The number of boards to expand between reports to the BestSolution. */
+
+    private static final int CHECK_INTERVAL = 4096;
+
+    /** Orders records by their boards. */
+
+    private static final Comparator<byte[]> BY_BOARD = (a, b) -> Arrays.compareUnsigned(a, 0, BOARD_SIZE, b, 0, BOARD_SIZE);
+
+    /** The board that the search starts from. */
+
+    private final Board initialBoard;
+
+    /** The search context. */
+
+    private final SearchContext context;
+
+    /** The directory for the files. */
+
+    private final Path directory;
+
+    /** The number of records sorted in memory before they are written out. */
+
+    private final int runRecords;
+
+    /** Where solutions are published. */
+
+    private final BestSolution bestSolution;
+
+    /** The number of boards expanded. */
+
+    private long nodes = 0;
+
+    /** The number of boards made, before the duplicates were dropped. */
+
+    private long generated = 0;
+
+    /** The number of boards skipped because they were proved to be dead. */
+
+    private long deadlocked = 0;
+
+    /** The number of boards pruned because they can't lead to a shorter solution. */
+
+    private long pruned = 0;
+
+    /** The number of runs written. */
+
+    private int runs = 0;
+
+    /**
+     * Reads the records of a file in order.
+     */
+
+    private static final class RecordReader implements Closeable {
+
+        /** The file. */
+
+        private final FileChannel channel;
+
+        /** The buffer the file is read through. */
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE - (BUFFER_SIZE % RECORD_SIZE));
+
+        /** The record last read. */
+
+        private final byte[] record = new byte[RECORD_SIZE];
+
+        /**
+         * Open a file.
+         *
+         * @param path The file
+         * @throws IOException If the file can't be opened
+         */
+
+        private RecordReader(Path path) throws IOException {
+
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        /**
+         * Read the next record.
+         *
+         * @return true if there was one
+         * @throws IOException If the file can't be read
+         */
+
+        private boolean next() throws IOException {
+
+            if (buffer.remaining() < RECORD_SIZE) {
+                buffer.compact();
+                while (buffer.hasRemaining() && (channel.read(buffer) >= 0))
+                    ;
+                buffer.flip();
+                if (buffer.remaining() < RECORD_SIZE)
+                    return false;
+            }
+
+            buffer.get(record);
+            return true;
+        }
+
+        /** @see Closeable#close() */
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes records to a file.
+     */
+
+    private static final class RecordWriter implements Closeable {
+
+        /** The file. */
+
+        private final FileChannel channel;
+
+        /** The buffer the file is written through. */
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /** The number of records written. */
+
+        private long count = 0;
+
+        /**
+         * Create a file, replacing any that is there.
+         *
+         * @param path The file
+         * @throws IOException If the file can't be created
+         */
+
+        private RecordWriter(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * Write a record.
+         *
+         * @param record The record
+         * @throws IOException If the file can't be written
+         */
+
+        private void write(byte[] record) throws IOException {
+
+            if (buffer.remaining() < RECORD_SIZE)
+                flush();
+            buffer.put(record);
+            count++;
+        }
+
+        /**
+         * Write out the buffer.
+         *
+         * @throws IOException If the file can't be written
+         */
+
+        private void flush() throws IOException {
+
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        /** @see Closeable#close() */
+
+        @Override
+        public void close() throws IOException {
+
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Create an ExternalBreadthFirstSearch.
+     *
+     * @param initialBoard The board to start from
+     * @param context The search context for the boards of this search
+     * @param directory The directory for the files, it is created if it doesn't exist
+     * @param runRecords The number of records to sort in memory at a time
+     * @param bestSolution Where to publish the solution
+     */
+
+    public ExternalBreadthFirstSearch(Board initialBoard, SearchContext context, Path directory, int runRecords, BestSolution bestSolution) {
+
+        this.initialBoard = new Board(initialBoard, context);
+        this.context = context;
+        this.directory = directory;
+        this.runRecords = runRecords;
+        this.bestSolution = bestSolution;
+    }
+
+    /**
+     * Run the search until it finds a shortest solution, finds there is none or the run is finished.
+     */
+
+    @Override
+    public void run() {
+
+        try {
+
+            Files.createDirectories(directory);
+            deleteFiles();
+            search();
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException("The " + getName() + " failed", ex);
+
+        } finally {
+            deleteFiles();
+
+            // Report the boards expanded since the last full interval
+
+            bestSolution.countNodes(nodes % CHECK_INTERVAL);
+        }
+
+        LOG.info("The " + getName() + " expanded " + nodes + " boards, made " + generated + " boards in " + runs + " runs, pruned " + pruned + " and skipped " + deadlocked + " dead");
+    }
+
+    /**
+     * Search the layers in turn.
+     *
+     * @throws IOException If a file can't be read or written
+     */
+
+    private void search() throws IOException {
+
+        // The first layer is the initial board and it is all that has been seen so far
+
+        byte[] record = new byte[RECORD_SIZE];
+        encode(initialBoard, -1, record);
+        try (RecordWriter writer = new RecordWriter(getLayerPath(0))) {
+            writer.write(record);
+        }
+        Files.copy(getLayerPath(0), getSeenPath(0));
+
+        for (int depth = 0; ; depth++) {
+
+            long start = System.currentTimeMillis();
+            List<Path> runPaths = new ArrayList<>();
+            Board wonBoard = expandLayer(depth, runPaths);
+            if (wonBoard != null) {
+                if (bestSolution.offer(wonBoard, getName()))
+                    bestSolution.finish();
+                return;
+            }
+
+            if (bestSolution.isFinished())
+                return;
+
+            long size = mergeRuns(runPaths, getSeenPath(depth), getLayerPath(depth + 1));
+            mergeSeen(getSeenPath(depth), getLayerPath(depth + 1), getSeenPath(depth + 1));
+            Files.delete(getSeenPath(depth));
+            for (Path runPath : runPaths)
+                Files.delete(runPath);
+
+            LOG.info("The " + getName() + " found " + size + " new boards " + (depth + 1) + " moves from the start in " + (System.currentTimeMillis() - start) + " ms");
+            if (size == 0) {
+                LOG.info("The " + getName() + " searched every board, there is no shorter solution");
+                bestSolution.finish();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Make the boards one move on from every board in a layer and write them out as sorted runs.
+     *
+     * @param depth The number of the layer
+     * @param runPaths Given the files of the runs
+     * @return The won board if one of the moves wins the game, null if none does
+     * @throws IOException If a file can't be read or written
+     */
+
+    private Board expandLayer(int depth, List<Path> runPaths) throws IOException {
+
+        List<byte[]> run = new ArrayList<>(runRecords);
+        try (RecordReader reader = new RecordReader(getLayerPath(depth))) {
+
+            for (long index = 0; reader.next(); index++) {
+
+                if (++nodes % CHECK_INTERVAL == 0) {
+                    bestSolution.countNodes(CHECK_INTERVAL);
+                    if (bestSolution.isFinished())
+                        return null;
+                }
+
+                Board board = new Board(BoardCore.decode(reader.record), context);
+                for (Board nextBoard : board.getNextBoards()) {
+
+                    if (nextBoard.gameIsWon())
+                        return findSolution(depth, index);
+
+                    if (nextBoard.isDead()) {
+                        deadlocked++;
+                        continue;
+                    }
+
+                    // Every card that is not on the Foundation needs at least one more move
+
+                    if (depth + 1 + Card.DECK_SIZE - nextBoard.getFoundationCount() >= bestSolution.getBestLength()) {
+                        pruned++;
+                        continue;
+                    }
+
+                    byte[] record = new byte[RECORD_SIZE];
+                    encode(nextBoard, index, record);
+                    run.add(record);
+                    generated++;
+                    if (run.size() == runRecords)
+                        runPaths.add(writeRun(run));
+                }
+            }
+        }
+
+        if (! run.isEmpty())
+            runPaths.add(writeRun(run));
+
+        return null;
+    }
+
+    /**
+     * Sort a run of records and write it out without its duplicates.
+     *
+     * @param run The records, the list is emptied
+     * @return The file the run was written to
+     * @throws IOException If the file can't be written
+     */
+
+    private Path writeRun(List<byte[]> run) throws IOException {
+
+        run.sort(BY_BOARD);
+        Path path = directory.resolve("run-" + runs++ + ".dat");
+        try (RecordWriter writer = new RecordWriter(path)) {
+
+            byte[] last = null;
+            for (byte[] record : run)
+                if ((last == null) || (BY_BOARD.compare(last, record) != 0)) {
+                    writer.write(record);
+                    last = record;
+                }
+        }
+
+        run.clear();
+        return path;
+    }
+
+    /**
+     * Merge the runs of a layer into the layer's file, keeping one record for each board and dropping the boards seen
+     * before.
+     *
+     * @param runPaths The files of the runs
+     * @param seenPath The file of the boards seen before
+     * @param layerPath The file for the layer
+     * @return The number of boards in the layer
+     * @throws IOException If a file can't be read or written
+     */
+
+    private long mergeRuns(List<Path> runPaths, Path seenPath, Path layerPath) throws IOException {
+
+        PriorityQueue<RecordReader> queue = new PriorityQueue<>(Math.max(1, runPaths.size()), (a, b) -> BY_BOARD.compare(a.record, b.record));
+        List<RecordReader> readers = new ArrayList<>();
+        try (RecordReader seen = new RecordReader(seenPath); RecordWriter writer = new RecordWriter(layerPath)) {
+
+            for (Path runPath : runPaths) {
+                RecordReader reader = new RecordReader(runPath);
+                readers.add(reader);
+                if (reader.next())
+                    queue.add(reader);
+            }
+
+            boolean seenLeft = seen.next();
+            byte[] last = new byte[RECORD_SIZE];
+            boolean written = false;
+            while (! queue.isEmpty()) {
+
+                RecordReader reader = queue.poll();
+                byte[] record = reader.record;
+
+                // Skip the duplicates of the last board written and the boards seen before
+
+                while (seenLeft && (BY_BOARD.compare(seen.record, record) < 0))
+                    seenLeft = seen.next();
+                boolean duplicate = (written && (BY_BOARD.compare(last, record) == 0)) || (seenLeft && (BY_BOARD.compare(seen.record, record) == 0));
+                if (! duplicate) {
+                    writer.write(record);
+                    System.arraycopy(record, 0, last, 0, RECORD_SIZE);
+                    written = true;
+                }
+
+                if (reader.next())
+                    queue.add(reader);
+            }
+
+            return writer.count;
+
+        } finally {
+            for (RecordReader reader : readers)
+                reader.close();
+        }
+    }
+
+    /**
+     * Merge a new layer into the boards seen before.
+     *
+     * @param seenPath The file of the boards seen before the layer
+     * @param layerPath The file of the layer, none of its boards were seen before
+     * @param newSeenPath The file for all the boards seen
+     * @throws IOException If a file can't be read or written
+     */
+
+    private void mergeSeen(Path seenPath, Path layerPath, Path newSeenPath) throws IOException {
+
+        try (RecordReader seen = new RecordReader(seenPath); RecordReader layer = new RecordReader(layerPath);
+                RecordWriter writer = new RecordWriter(newSeenPath)) {
+
+            boolean seenLeft = seen.next();
+            boolean layerLeft = layer.next();
+            while (seenLeft || layerLeft)
+                if (! layerLeft || (seenLeft && (BY_BOARD.compare(seen.record, layer.record) < 0))) {
+                    writer.write(seen.record);
+                    seenLeft = seen.next();
+                } else {
+                    writer.write(layer.record);
+                    layerLeft = layer.next();
+                }
+        }
+    }
+
+    /**
+     * Find the moves to a board that is one move from winning, by following the records back to the initial board and
+     * then finding the move from each board to the next. The moves are found from the boards as they were decoded,
+     * since which move is forced can depend on the order of the columns, and then renumbered for the columns of the
+     * boards along the solution.
+     *
+     * @param depth The layer of the board
+     * @param index The number of the board's record in the layer
+     * @return The won board
+     * @throws IOException If a file can't be read
+     */
+
+    private Board findSolution(int depth, long index) throws IOException {
+
+        byte[][] boards = new byte[depth + 1][];
+        for (int layer = depth; layer >= 0; layer--) {
+            byte[] record = readRecord(getLayerPath(layer), index);
+            boards[layer] = record;
+            index = ByteBuffer.wrap(record, BOARD_SIZE, 8).getLong();
+        }
+
+        Board board = initialBoard;
+        byte[] record = new byte[RECORD_SIZE];
+        for (int layer = 0; layer <= depth; layer++) {
+
+            Move move = null;
+            for (Board nextBoard : new Board(BoardCore.decode(boards[layer]), context).getNextBoards()) {
+                encode(nextBoard, 0, record);
+                if ((layer == depth) ? nextBoard.gameIsWon() : (BY_BOARD.compare(record, boards[layer + 1]) == 0)) {
+                    move = nextBoard.getSolution().get(0);
+                    break;
+                }
+            }
+
+            if (move == null)
+                throw new IllegalStateException("No move leads from " + board + " to the next board of the solution");
+            board = board.applyMove(PositionStore.fromCanonicalCode(move.getCode(), board.getCanonicalColumns()));
+        }
+
+        if (! board.gameIsWon())
+            throw new IllegalStateException("The solution does not win the game from " + initialBoard);
+
+        return board;
+    }
+
+    /**
+     * Read one record of a file.
+     *
+     * @param path The file
+     * @param index The number of the record
+     * @return The record
+     * @throws IOException If the file can't be read
+     */
+
+    private static byte[] readRecord(Path path, long index) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            long position = index * RECORD_SIZE;
+            while (buffer.hasRemaining())
+                if (channel.read(buffer, position + buffer.position()) < 0)
+                    throw new IOException("Record " + index + " is past the end of " + path);
+
+            return buffer.array();
+        }
+    }
+
+    /**
+     * Encode a board into a record.
+     *
+     * @param board The board
+     * @param parent The number of the record the board came from in the layer before, -1 for none
+     * @param record The record to fill in
+     */
+
+    private static void encode(Board board, long parent, byte[] record) {
+
+        byte[] bytes = board.encodeCanonical(board.getCanonicalColumns());
+        System.arraycopy(bytes, 0, record, 0, bytes.length);
+        Arrays.fill(record, bytes.length, BOARD_SIZE, (byte) 0);
+        ByteBuffer.wrap(record, BOARD_SIZE, 8).putLong(parent);
+    }
+
+    /**
+     * Get the file of a layer.
+     *
+     * @param depth The number of the layer
+     * @return The path of the file
+     */
+
+    private Path getLayerPath(int depth) {
+        return directory.resolve("layer-" + depth + ".dat");
+    }
+
+    /**
+     * Get the file of the boards seen up to a layer.
+     *
+     * @param depth The number of the layer
+     * @return The path of the file
+     */
+
+    private Path getSeenPath(int depth) {
+        return directory.resolve("seen-" + depth + ".dat");
+    }
+
+    /**
+     * Delete the files the search wrote.
+     */
+
+    private void deleteFiles() {
+
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                if (name.matches("(layer|seen|run)-\\d+\\.dat"))
+                    Files.delete(path);
+            }
+
+        } catch (IOException ex) {
+            LOG.warning("Failed to delete the files in " + directory + ": " + ex);
+        }
+    }
+
+    /** @see Search#getName() */
+
+    @Override
+    public String getName() {
+        return "external breadth first search";
+    }
+}
@@ -0,0 +1,89 @@
+package com.binaryblizzard.bakersgame;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A check of the external breadth first search. It finds a solution to each deal with a depth first search, takes the
+ * boards along it where a number of cards are left, and solves each of them with the external search and with an
+ * EndgameSolver. Both find shortest solutions so they have to agree on the number of moves, the check fails if they
+ * don't, and it reports how long each one took.
+ */
+
+public class ExternalSearchBenchmark {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(ExternalSearchBenchmark.class.getName());
+
+    /** The numbers of cards left off the Foundation in the endgames to solve. */
+
+    private static final int[] CARDS_LEFT = {16, 20, 24, 28};
+
+    /** The number of records to sort in memory at a time, small so that every layer is merged from several runs. */
+
+    private static final int RUN_RECORDS = 4096;
+
+    /**
+     * Run the check.
+     *
+     * @param args The directory for the files of the external search followed by the board files
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            Path directory = Paths.get(args[0]);
+            int mismatches = 0;
+            for (int i = 1; i < args.length; i++) {
+
+                List<Board> path = PatternDatabaseBenchmark.findSolutionPath(args[i]);
+                if (path.isEmpty()) {
+                    LOG.warning(args[i] + ": no solution found to take the endgames from");
+                    continue;
+                }
+
+                for (int cardsLeft : CARDS_LEFT) {
+
+                    Board board = path.stream().filter(b -> Card.DECK_SIZE - b.getFoundationCount() <= cardsLeft).findFirst().orElse(null);
+                    if (board == null)
+                        continue;
+
+                    long start = System.nanoTime();
+                    int endgameMoves = new EndgameSolver(Card.DECK_SIZE, null).solve(board);
+                    long endgameTime = System.nanoTime() - start;
+
+                    // Start the external search from the same cards with no moves behind them
+
+                    SearchContext context = new SearchContext(1, new MoveHistory());
+                    BestSolution bestSolution = new BestSolution(1, 0);
+                    start = System.nanoTime();
+                    new ExternalBreadthFirstSearch(new Board(board.getCore(), context), context, directory, RUN_RECORDS, bestSolution).run();
+                    long externalTime = System.nanoTime() - start;
+                    int externalMoves = (bestSolution.getSolution() == null) ? EndgameSolver.DEAD : bestSolution.getSolution().size();
+
+                    if ((endgameMoves != EndgameSolver.UNKNOWN) && (endgameMoves != externalMoves)) {
+                        mismatches++;
+                        LOG.severe(args[i] + ": the endgame solver found " + endgameMoves + " moves but the external search found " + externalMoves + " for " + board);
+                    }
+
+                    LOG.info(String.format("%s, %d cards left: %d moves, endgame solver %d ms, external search %d ms",
+                            args[i], Card.DECK_SIZE - board.getFoundationCount(), externalMoves, endgameTime / 1_000_000, externalTime / 1_000_000));
+                }
+            }
+
+            LOG.info(mismatches + " mismatches");
+            System.exit((mismatches == 0) ? 0 : 1);
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
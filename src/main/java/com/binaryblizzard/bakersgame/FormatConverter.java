@@ -0,0 +1,150 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Converts between the JSON and text files the solver reads and writes one deal at a time and the compact binary files
+ * of DealFile and SolutionFile. The commands are:
+ * <pre>
+ * pack-deals &lt;dealfile&gt; &lt;boardfiles&gt;           write the boards to a deal file in the order given
+ * unpack-deals &lt;dealfile&gt; &lt;directory&gt;          write each deal as deal-&lt;n&gt;.json in the directory
+ * pack-solutions &lt;solutionfile&gt; &lt;solutionfiles&gt; write the solutions to a solution file, "-" for an unsolved deal
+ * unpack-solutions &lt;solutionfile&gt; &lt;directory&gt;  write each solution as solution-&lt;n&gt; in the directory
+ * </pre>
+ * Each unpack reads every record back and writes it in the form it was packed from, so packing again gives the same file.
+ */
+
+public class FormatConverter {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(FormatConverter.class.getName());
+
+    /**
+     * Write board files to a deal file.
+     *
+     * @param dealPath The deal file
+     * @param boardFiles The board files
+     * @throws IOException If a file can't be read or written
+     */
+
+    private static void packDeals(Path dealPath, List<String> boardFiles) throws IOException {
+
+        try (DealFileWriter writer = new DealFileWriter(dealPath)) {
+            for (String boardFile : boardFiles)
+                writer.write(new Board(boardFile));
+        }
+
+        LOG.info("Packed " + boardFiles.size() + " deals into " + Files.size(dealPath) + " bytes");
+    }
+
+    /**
+     * Write the deals of a deal file to board files.
+     *
+     * @param dealPath The deal file
+     * @param directory The directory for the board files
+     * @throws IOException If a file can't be read or written
+     */
+
+    private static void unpackDeals(Path dealPath, Path directory) throws IOException {
+
+        Files.createDirectories(directory);
+        try (DealFile deals = new DealFile(dealPath)) {
+            for (long i = 0; deals.hasNext(); i++)
+                deals.next().writeJson(directory.resolve("deal-" + i + ".json").toString());
+        }
+
+        LOG.info("Unpacked the deals to " + directory);
+    }
+
+    /**
+     * Write solution files to a solution file.
+     *
+     * @param solutionPath The solution file
+     * @param solutionFiles The solution files, "-" for a deal that wasn't solved
+     * @throws IOException If a file can't be read or written
+     */
+
+    private static void packSolutions(Path solutionPath, List<String> solutionFiles) throws IOException {
+
+        try (SolutionFileWriter writer = new SolutionFileWriter(solutionPath)) {
+            for (String solutionFile : solutionFiles)
+                writer.write(solutionFile.equals("-") ? null : BakersGame.readSolution(Paths.get(solutionFile)));
+        }
+
+        LOG.info("Packed " + solutionFiles.size() + " solutions into " + Files.size(solutionPath) + " bytes");
+    }
+
+    /**
+     * Write the solutions of a solution file to solution files, one move per line. There is no file for a deal that
+     * wasn't solved.
+     *
+     * @param solutionPath The solution file
+     * @param directory The directory for the solution files
+     * @throws IOException If a file can't be read or written
+     */
+
+    private static void unpackSolutions(Path solutionPath, Path directory) throws IOException {
+
+        Files.createDirectories(directory);
+        long count = 0;
+        try (SolutionFile solutions = new SolutionFile(solutionPath)) {
+            for (; solutions.hasNext(); count++) {
+
+                List<Move> solution = solutions.next();
+                if (solution == null)
+                    continue;
+
+                try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(directory.resolve("solution-" + count)))) {
+                    for (Move move : solution)
+                        writer.println(move.toString());
+                }
+            }
+        }
+
+        LOG.info("Unpacked " + count + " solutions");
+    }
+
+    /**
+     * Run a conversion.
+     *
+     * @param args The command, the binary file and the files or directory to convert to or from
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            if (args.length < 3) {
+                System.err.println("usage: FormatConverter pack-deals|unpack-deals|pack-solutions|unpack-solutions <binaryfile> <files>|<directory>");
+                System.exit(2);
+            }
+
+            Path binaryPath = Paths.get(args[1]);
+            List<String> files = List.of(args).subList(2, args.length);
+            if (args[0].equals("pack-deals"))
+                packDeals(binaryPath, files);
+            else if (args[0].equals("unpack-deals"))
+                unpackDeals(binaryPath, Paths.get(args[2]));
+            else if (args[0].equals("pack-solutions"))
+                packSolutions(binaryPath, files);
+            else if (args[0].equals("unpack-solutions"))
+                unpackSolutions(binaryPath, Paths.get(args[2]));
+            else
+                throw new IllegalArgumentException("Unknown command: " + args[0]);
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package com.binaryblizzard.bakersgame;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * This object represents a Move in the game
  */
 
 public class Move {
 
+    /** The form toString() writes a move in, the weight is optional. */
+
+    private static final Pattern MOVE_PATTERN = Pattern.compile("Move\\{from=(\\w+), to=(\\w+), card=(\\w+)(, weight=-?\\d+)?}");
+
     /** The location on the board that the card was moved from. */
 
     private final CardPosition from;
@@ -37,6 +44,41 @@ public class Move {
         this.card = card;
     }
 
+    /**
+     * Create a move from its code.
+     *
+     * @param code The code (see getCode())
+     * @return The move
+     * @throws IllegalArgumentException If the code is not a valid move
+     */
+
+    public static Move forCode(int code) throws IllegalArgumentException {
+
+        int card = (code >>> 8) & 0x3F;
+        if (card >= Card.DECK_SIZE)
+            throw new IllegalArgumentException("Invalid move code: " + code);
+
+        return new Move(CardPosition.forIndex((code >>> 4) & 0xF), CardPosition.forIndex(code & 0xF), Card.forIndex(card));
+    }
+
+    /**
+     * Read a move in the form toString() writes it, e.g. a line of a solution file.
+     *
+     * @param text The move
+     * @return The move
+     * @throws IllegalArgumentException If the text is not a valid move
+     */
+
+    public static Move parse(String text) throws IllegalArgumentException {
+
+        Matcher matcher = MOVE_PATTERN.matcher(text.trim());
+        if (! matcher.matches())
+            throw new IllegalArgumentException("Invalid move: " + text);
+
+        Card card = Card.forIndex(new Card(matcher.group(3)).getIndex());
+        return new Move(CardPosition.parse(matcher.group(1)), CardPosition.parse(matcher.group(2)), card);
+    }
+
     /**
      * Get the from location.
      *
@@ -67,6 +109,17 @@ public class Move {
         return card;
     }
 
+    /**
+     * Get a compact code for the move that fits in two bytes: the card index in the high byte and the from and to
+     * position indexes in the high and low nibbles of the low byte. The weight is not part of it.
+     *
+     * @return The code
+     */
+
+    public int getCode() {
+        return (card.getIndex() << 8) | (from.getIndex() << 4) | to.getIndex();
+    }
+
     /**
      * Get the weight.
      *
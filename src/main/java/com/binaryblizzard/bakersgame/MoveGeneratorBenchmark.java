@@ -0,0 +1,116 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Stack;
+import java.util.logging.Logger;
+
+/**
+ * A benchmark that compares deriving the legal moves of a board from its parent with computing them from scratch. It
+ * first runs a search with every incrementally derived move list checked against the full generator, then times the
+ * same seeded search both ways.
+ */
+
+public class MoveGeneratorBenchmark {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(MoveGeneratorBenchmark.class.getName());
+
+    /** The number of boards to expand in each run. */
+
+    private static final int NODES = 2_000_000;
+
+    /** The seed used for every run so they all search the same tree. */
+
+    private static final long SEED = 1;
+
+    /**
+     * Run a depth first search for a fixed number of boards.
+     *
+     * @param boardFile The file with the initial deal
+     * @param incremental true to derive moves incrementally
+     * @param verify true to check the incremental moves against the full generator
+     * @return The time taken in nanoseconds
+     * @throws IOException If the board can't be read
+     */
+
+    private static long runSearch(String boardFile, boolean incremental, boolean verify) throws IOException {
+
+        SearchContext context = new SearchContext(SEED, new MoveHistory());
+        context.setIncrementalMoves(incremental);
+        context.setVerifyingMoves(verify);
+
+        Board initialBoard = new Board(boardFile);
+        initialBoard.setSearchContext(context);
+        initialBoard.computePendingMoves();
+
+        long start = System.nanoTime();
+        Stack<Board> gameStates = new Stack<>();
+        Set<String> previousBoards = new HashSet<>();
+        Board currentBoard = initialBoard;
+        previousBoards.add(currentBoard.getSignature());
+
+        for (int nodes = 0; nodes < NODES; nodes++) {
+
+            // Backtrack until there is a board with moves left, start again if the whole tree was searched
+
+            while (currentBoard.boardHasFailed())
+                if (gameStates.isEmpty()) {
+                    previousBoards.clear();
+                    currentBoard = initialBoard;
+                    currentBoard.computePendingMoves();
+                } else
+                    currentBoard = gameStates.pop();
+
+            Board nextBoard = currentBoard.applyNextMove();
+            if (nextBoard.gameIsWon()) {
+                gameStates.clear();
+                previousBoards.clear();
+                currentBoard = initialBoard;
+                currentBoard.computePendingMoves();
+
+            } else if (previousBoards.add(nextBoard.getSignature())) {
+                gameStates.push(currentBoard);
+                currentBoard = nextBoard;
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The board files to run the benchmark on
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            for (String boardFile : args) {
+
+                // Check that the incremental moves are correct
+
+                runSearch(boardFile, true, true);
+                LOG.info(boardFile + ": incremental moves match the full generator for " + NODES + " boards");
+
+                // Warm up then time both ways
+
+                runSearch(boardFile, false, false);
+                runSearch(boardFile, true, false);
+                long full = runSearch(boardFile, false, false);
+                long incremental = runSearch(boardFile, true, false);
+                LOG.info(String.format("%s: full %d ms, incremental %d ms, speedup %.2fx", boardFile, full / 1_000_000, incremental / 1_000_000, (double) full / incremental));
+            }
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+        }
+    }
+}
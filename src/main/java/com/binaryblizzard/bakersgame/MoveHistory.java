@@ -0,0 +1,102 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An adaptive move ordering table. It is keyed by the card being moved and the positions it moves from and to, and it
+ * remembers which moves showed up on solution paths or lead to deep progress. The table is kept for the whole run so
+ * that every restart of the search benefits from what the earlier ones learned.
+ */
+
+public class MoveHistory {
+
+    /** The largest bonus that the history will add to the weight of a move. */
+
+    public static final int MAX_BONUS = 3;
+
+    /** The reward given to the moves of a solution that is shorter than any found before. */
+
+    public static final int BEST_SOLUTION_REWARD = 8;
+
+    /** The reward given to the moves of any other solution. */
+
+    public static final int SOLUTION_REWARD = 2;
+
+    /** The reward given to the moves that lead to a board with more cards on the Foundation than seen before. */
+
+    public static final int PROGRESS_REWARD = 1;
+
+    /** When a score gets this high all the scores are halved so that old knowledge fades out. */
+
+    private static final int AGING_THRESHOLD = 1 << 20;
+
+    /** The score for each card, from and to combination. */
+
+    private final int[] scores = new int[Card.DECK_SIZE * CardPosition.COUNT * CardPosition.COUNT];
+
+    /** The highest score in the table. */
+
+    private int maxScore = 0;
+
+    /**
+     * Reward each of the moves in a sequence.
+     *
+     * @param moves The moves to reward
+     * @param amount The amount to add to the score of each move
+     */
+
+    public void reward(List<Move> moves, int amount) {
+
+        for (Move move : moves) {
+            int index = indexOf(move);
+            scores[index] += amount;
+            maxScore = Math.max(maxScore, scores[index]);
+        }
+
+        // Age the table once the scores get too high
+
+        if (maxScore > AGING_THRESHOLD) {
+            for (int i = 0; i < scores.length; i++)
+                scores[i] >>= 1;
+            maxScore >>= 1;
+        }
+    }
+
+    /**
+     * Get the bonus to add to the weight of a move. The bonus is the score of the move scaled relative to the best
+     * score in the table so that it never swamps the heuristics.
+     *
+     * @param move The move to get the bonus for
+     * @return A value between 0 and MAX_BONUS
+     */
+
+    public int getBonus(Move move) {
+
+        if (maxScore == 0)
+            return 0;
+
+        return (int) ((long) scores[indexOf(move)] * MAX_BONUS / maxScore);
+    }
+
+    /**
+     * Forget everything that has been learned.
+     */
+
+    public void clear() {
+
+        Arrays.fill(scores, 0);
+        maxScore = 0;
+    }
+
+    /**
+     * Compute the index of a move in the scores table.
+     *
+     * @param move The move
+     * @return The index in the table
+     */
+
+    private static int indexOf(Move move) {
+        return (move.getCard().getIndex() * CardPosition.COUNT + move.getFrom().getIndex()) * CardPosition.COUNT + move.getTo().getIndex();
+    }
+}
@@ -0,0 +1,102 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable sequence of moves stored as a linked list that grows at the end. Each board adds its move to the path of
+ * the board it came from, so all the boards along a search path share one chain of moves instead of each holding a
+ * copy of it.
+ */
+
+public final class MovePath {
+
+    /** The empty path. */
+
+    public static final MovePath EMPTY = new MovePath(null, null, 0);
+
+    /** The path before the last move. */
+
+    private final MovePath previous;
+
+    /** The last move of the path. */
+
+    private final Move move;
+
+    /** The number of moves in the path. */
+
+    private final int length;
+
+    /**
+     * Create a MovePath.
+     *
+     * @param previous The path before the move
+     * @param move The last move
+     * @param length The number of moves
+     */
+
+    private MovePath(MovePath previous, Move move, int length) {
+
+        this.previous = previous;
+        this.move = move;
+        this.length = length;
+    }
+
+    /**
+     * Create a path with a move added to the end of this one.
+     *
+     * @param move The move to add
+     * @return The new path
+     */
+
+    public MovePath append(Move move) {
+        return new MovePath(this, move, length + 1);
+    }
+
+    /**
+     * Get the number of moves in the path.
+     *
+     * @return The length
+     */
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Get the last move in the path.
+     *
+     * @return The last move or null if the path is empty
+     */
+
+    public Move getLastMove() {
+        return move;
+    }
+
+    /**
+     * Get the path without its last move.
+     *
+     * @return The previous path or null if the path is empty
+     */
+
+    public MovePath getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Copy the path into a list.
+     *
+     * @return The moves from first to last
+     */
+
+    public List<Move> toList() {
+
+        List<Move> moves = new ArrayList<>(length);
+        for (MovePath path = this; path.length > 0; path = path.previous)
+            moves.add(path.move);
+        Collections.reverse(moves);
+
+        return moves;
+    }
+}
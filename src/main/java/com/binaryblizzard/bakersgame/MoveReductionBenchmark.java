@@ -0,0 +1,152 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Stack;
+import java.util.logging.Logger;
+
+/**
+ * A benchmark of dropping the moves that undo the last move or only reorder moves already tried. It runs the same
+ * seeded depth first search with and without dropping them, up to the first solution or a number of boards. The
+ * dropped moves only ever lead to boards seen before, so both searches have to expand the same boards and find the same
+ * solution, the benchmark fails if they don't, and it reports how many moves each one tried and how many of those led
+ * to boards seen before.
+ */
+
+public class MoveReductionBenchmark {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(MoveReductionBenchmark.class.getName());
+
+    /** The most boards to expand in each run. */
+
+    private static final int NODES = 2_000_000;
+
+    /** The seed used for every run so they all search the same tree. */
+
+    private static final long SEED = 1;
+
+    /** The counts from one run of the search. */
+
+    private static final class Result {
+
+        /** The number of boards expanded. */
+
+        private long expanded = 0;
+
+        /** The number of moves tried. */
+
+        private long moves = 0;
+
+        /** The number of moves that led to a board seen before. */
+
+        private long duplicates = 0;
+
+        /** The length of the solution found, 0 if there was none. */
+
+        private int solutionLength = 0;
+
+        /** The time taken in nanoseconds. */
+
+        private long time;
+    }
+
+    /**
+     * Run a depth first search up to the first solution.
+     *
+     * @param boardFile The file with the initial deal
+     * @param reducing true to drop the moves
+     * @return The counts from the search
+     * @throws IOException If the board can't be read
+     */
+
+    private static Result runSearch(String boardFile, boolean reducing) throws IOException {
+
+        SearchContext context = new SearchContext(SEED, new MoveHistory());
+        context.setReducingMoves(reducing);
+
+        Board currentBoard = new Board(boardFile);
+        currentBoard.setSearchContext(context);
+        currentBoard.computePendingMoves();
+
+        Result result = new Result();
+        long start = System.nanoTime();
+        Stack<Board> gameStates = new Stack<>();
+        Set<String> previousBoards = new HashSet<>();
+        previousBoards.add(currentBoard.getSignature());
+
+        while (result.expanded < NODES) {
+
+            while (currentBoard.boardHasFailed()) {
+                if (gameStates.isEmpty()) {
+                    result.time = System.nanoTime() - start;
+                    return result;
+                }
+                currentBoard = gameStates.pop();
+            }
+
+            Board nextBoard = currentBoard.applyNextMove();
+            result.moves++;
+            if (nextBoard.gameIsWon()) {
+                result.solutionLength = nextBoard.getSolutionLength();
+                break;
+            }
+
+            if (previousBoards.add(nextBoard.getSignature())) {
+                gameStates.push(currentBoard);
+                currentBoard = nextBoard;
+                result.expanded++;
+            } else
+                result.duplicates++;
+        }
+
+        result.time = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The board files to run the benchmark on
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            int mismatches = 0;
+            for (String boardFile : args) {
+
+                // Warm up then run both ways
+
+                runSearch(boardFile, false);
+                runSearch(boardFile, true);
+                Result full = runSearch(boardFile, false);
+                Result reduced = runSearch(boardFile, true);
+
+                if ((full.expanded != reduced.expanded) || (full.solutionLength != reduced.solutionLength)) {
+                    mismatches++;
+                    LOG.severe(boardFile + ": expanded " + full.expanded + " boards and found " + full.solutionLength + " moves with every move but " +
+                            reduced.expanded + " boards and " + reduced.solutionLength + " moves with the moves dropped");
+                }
+
+                LOG.info(String.format("%s: %d boards expanded, %s moves solution, every move: %d moves tried, %d seen before, %d ms, " +
+                                "dropped: %d moves tried, %d seen before, %d ms, %.1f%% fewer moves",
+                        boardFile, reduced.expanded, (reduced.solutionLength == 0) ? "no" : Integer.toString(reduced.solutionLength),
+                        full.moves, full.duplicates, full.time / 1_000_000, reduced.moves, reduced.duplicates, reduced.time / 1_000_000,
+                        100.0 * (full.moves - reduced.moves) / Math.max(1, full.moves)));
+            }
+
+            System.exit((mismatches == 0) ? 0 : 1);
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * A lower bound on the number of moves left in a game, looked up in pattern databases built ahead of time by
+ * PatternDatabaseBuilder.
+ * <p>
+ * The cards are split into groups, each one a band of ranks from two suits, and each group is looked at on its own with
+ * the rest of the cards taken off the board. All that is kept of a group card is whether it is on the Foundation, in
+ * the Reserve or in a column, which group card it is on top of in its column, and whether a card of its suit lower
+ * than the band is under it, in which case it can't go to the Foundation until it has moved. The cards of the group
+ * move by the rules of the game, except that a column with no group card in it counts as empty, the Reserve is the
+ * group's alone and the top card of each suit in the band can go on any column. Every move in a real game is either a
+ * legal move of one group in this simpler game or leaves it unchanged, so the fewest moves that finish each group in
+ * it never add up to more than it takes to finish the real game. The bound is never lower than counting the cards left
+ * plus the cards on a lower card of their suit, and taking two suits at a time also catches cards that block each other
+ * across suits, such as the Three of each suit sitting on the Ace of the other.
+ * <p>
+ * The suits are paired up in each of the three possible ways and the highest of the three sums is the bound. Groups of
+ * the same shape share one database, which holds the fewest moves for every arrangement of the group in a byte. They
+ * are kept in memory mapped files.
+ */
+
+public class PatternDatabase {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(PatternDatabase.class.getName());
+
+    /** The three ways of pairing up the suits, each one the two suits of the first pair and then of the second. */
+
+    static final int[][] PAIRINGS = {{0, 1, 2, 3}, {0, 2, 1, 3}, {0, 3, 1, 2}};
+
+    /** The lowest rank of each band. */
+
+    static final int[] BAND_LOW = {0, 3, 6, 9, 11};
+
+    /** The shapes that have a database. */
+
+    static final Shape[] SHAPES = {new Shape(2, 3), new Shape(2, 2)};
+
+    /** The shape of the groups of each band. */
+
+    static final int[] BAND_SHAPE = {0, 0, 0, 1, 1};
+
+    /** The code for a card in the Reserve. */
+
+    static final int RESERVE = 0;
+
+    /** The code for a card with no group card under it, a card on another adds two for each number up to it. */
+
+    static final int BOTTOM = 1;
+
+    /** Added to the code of a card in a column with a lower card of its suit from outside the group under it. */
+
+    static final int DIRTY = 1;
+
+    /** The value for an arrangement that can't happen. */
+
+    static final int NO_VALUE = 0xFF;
+
+    /** The value the files start with. */
+
+    static final int MAGIC = 0x42475044;
+
+    /** The version of the file format. */
+
+    static final int VERSION = 1;
+
+    /** The size of the header: the magic number, the version, the number of suits and the number of ranks. */
+
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * The shape of a group, the number of suits and the number of ranks of each, and how its arrangements are numbered.
+     * <p>
+     * The cards are numbered by suit and then rank. An arrangement is numbered by the number of cards of each suit on
+     * the Foundation and then one digit for each card that is not, in the order of the card numbers, in base (2 * cards
+     * left + 3). The digit is the code of the card, except that the card it is on is given by its position in that
+     * order rather than its number.
+     */
+
+    static final class Shape {
+
+        /** The number of suits. */
+
+        final int suits;
+
+        /** The number of ranks of each suit. */
+
+        final int ranks;
+
+        /** The number of cards. */
+
+        final int cards;
+
+        /** The number of the first arrangement for each set of Foundation heights, and the total at the end. */
+
+        private final int[] offsets;
+
+        /**
+         * Create a Shape.
+         *
+         * @param suits The number of suits
+         * @param ranks The number of ranks of each suit
+         */
+
+        Shape(int suits, int ranks) {
+
+            this.suits = suits;
+            this.ranks = ranks;
+            cards = suits * ranks;
+
+            int heightCount = 1;
+            for (int suit = 0; suit < suits; suit++)
+                heightCount *= ranks + 1;
+            offsets = new int[heightCount + 1];
+            for (int heights = 0; heights < heightCount; heights++) {
+                int left = cards;
+                for (int rest = heights; rest > 0; rest /= ranks + 1)
+                    left -= rest % (ranks + 1);
+                long arrangements = 1;
+                for (int i = 0; i < left; i++)
+                    arrangements *= (2 * left) + 3;
+                offsets[heights + 1] = Math.toIntExact(offsets[heights] + arrangements);
+            }
+        }
+
+        /**
+         * Get the number of arrangements.
+         *
+         * @return The number of arrangements
+         */
+
+        int size() {
+            return offsets[offsets.length - 1];
+        }
+
+        /**
+         * Get the name of the file of the database.
+         *
+         * @return The file name
+         */
+
+        String getFileName() {
+            return "pattern" + suits + "x" + ranks + ".db";
+        }
+
+        /**
+         * Number an arrangement.
+         *
+         * @param heights The number of cards of each suit on the Foundation
+         * @param codes The code of each card by its number
+         * @return The number of the arrangement
+         */
+
+        int encode(int[] heights, int[] codes) {
+
+            // Find the position of each card left
+
+            int[] positions = new int[cards];
+            int heightsIndex = 0;
+            int left = 0;
+            for (int suit = suits - 1; suit >= 0; suit--)
+                heightsIndex = (heightsIndex * (ranks + 1)) + heights[suit];
+            for (int suit = 0; suit < suits; suit++)
+                for (int rank = heights[suit]; rank < ranks; rank++)
+                    positions[(suit * ranks) + rank] = left++;
+
+            int base = (2 * left) + 3;
+            int index = 0;
+            for (int suit = suits - 1; suit >= 0; suit--)
+                for (int rank = ranks - 1; rank >= heights[suit]; rank--) {
+                    int code = codes[(suit * ranks) + rank];
+                    int under = getUnder(code);
+                    index = (index * base) + ((under >= 0) ? code + (2 * (positions[under] - under)) : code);
+                }
+
+            return offsets[heightsIndex] + index;
+        }
+
+        /**
+         * Turn the number of an arrangement back into the codes of its cards.
+         *
+         * @param index The number of the arrangement
+         * @param heights Set to the number of cards of each suit on the Foundation
+         * @param codes Set to the code of each card by its number
+         */
+
+        void decode(int index, int[] heights, int[] codes) {
+
+            int heightsIndex = 0;
+            while (index >= offsets[heightsIndex + 1])
+                heightsIndex++;
+            index -= offsets[heightsIndex];
+
+            int[] numbers = new int[cards];
+            int left = 0;
+            for (int suit = 0; suit < suits; suit++) {
+                heights[suit] = heightsIndex % (ranks + 1);
+                heightsIndex /= ranks + 1;
+                for (int rank = heights[suit]; rank < ranks; rank++)
+                    numbers[left++] = (suit * ranks) + rank;
+            }
+
+            int base = (2 * left) + 3;
+            for (int position = 0; position < left; position++) {
+                int digit = index % base;
+                int under = getUnder(digit);
+                codes[numbers[position]] = (under >= 0) ? digit + (2 * (numbers[under] - under)) : digit;
+                index /= base;
+            }
+        }
+    }
+
+    /**
+     * Get the code of a card in a column.
+     *
+     * @param under The number of the group card it is on, -1 for none
+     * @param dirty true if a lower card of its suit from outside the group is under it
+     * @return The code
+     */
+
+    static int getCode(int under, boolean dirty) {
+        return BOTTOM + (2 * (under + 1)) + (dirty ? DIRTY : 0);
+    }
+
+    /**
+     * Get the group card a card is on.
+     *
+     * @param code The code of the card
+     * @return The number of the card it is on, -1 if it is in the Reserve or has no group card under it
+     */
+
+    static int getUnder(int code) {
+        return (code == RESERVE) ? -1 : ((code - BOTTOM) / 2) - 1;
+    }
+
+    /**
+     * Check if a card has a lower card of its suit from outside the group under it.
+     *
+     * @param code The code of the card
+     * @return true if it has
+     */
+
+    static boolean isDirty(int code) {
+        return (code != RESERVE) && (((code - BOTTOM) & DIRTY) != 0);
+    }
+
+    /** The database for each shape. */
+
+    private final MappedByteBuffer[] tables = new MappedByteBuffer[SHAPES.length];
+
+    /**
+     * Open the databases.
+     *
+     * @param directory The directory holding the files
+     * @throws IOException If a file can't be opened or is not a pattern database
+     */
+
+    public PatternDatabase(Path directory) throws IOException {
+
+        for (int shape = 0; shape < SHAPES.length; shape++) {
+
+            Path path = directory.resolve(SHAPES[shape].getFileName());
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+                tables[shape] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if ((channel.size() != HEADER_SIZE + SHAPES[shape].size()) || (tables[shape].getInt(0) != MAGIC) || (tables[shape].getInt(4) != VERSION) ||
+                        (tables[shape].getInt(8) != SHAPES[shape].suits) || (tables[shape].getInt(12) != SHAPES[shape].ranks))
+                    throw new IOException("Not a pattern database: " + path);
+            }
+        }
+
+        LOG.info("Opened the pattern databases in " + directory);
+    }
+
+    /**
+     * Find a lower bound on the number of moves to finish a game.
+     *
+     * @param core The cards of the board
+     * @return The highest over the pairings of the suits of the sum over the groups of the fewest moves to finish each one
+     */
+
+    int estimate(BoardCore core) {
+
+        // Work up each column noting for each card whether a card lower than its band of its suit is under it and, for
+        // each pairing, the highest card of its group under it
+
+        boolean[] dirty = new boolean[Card.DECK_SIZE];
+        int[][] under = new int[PAIRINGS.length][Card.DECK_SIZE];
+        int[][] last = new int[PAIRINGS.length][2 * BAND_LOW.length];
+        int[] lowest = new int[Card.SUITS.length];
+        for (int column = 0; column < BoardCore.COLUMNS; column++) {
+
+            Arrays.fill(lowest, Card.RANKS.length);
+            for (int[] pairingLast : last)
+                Arrays.fill(pairingLast, -1);
+            for (int index = 0; index < core.getColumnSize(column); index++) {
+
+                int card = core.getColumnCard(column, index);
+                int suit = BoardCore.suitOf(card);
+                int band = getBand(BoardCore.rankOf(card));
+                dirty[card] = lowest[suit] < BAND_LOW[band];
+                for (int pairing = 0; pairing < PAIRINGS.length; pairing++) {
+                    int group = (getPair(pairing, suit) * BAND_LOW.length) + band;
+                    under[pairing][card] = last[pairing][group];
+                    last[pairing][group] = card;
+                }
+                lowest[suit] = Math.min(lowest[suit], BoardCore.rankOf(card));
+            }
+        }
+
+        long reserve = core.getReserve();
+        int[] heights = new int[2];
+        int[] codes = new int[SHAPES[0].cards];
+        int best = 0;
+        for (int pairing = 0; pairing < PAIRINGS.length; pairing++) {
+
+            int estimate = 0;
+            for (int pair = 0; pair < 2; pair++)
+                for (int band = 0; band < BAND_LOW.length; band++) {
+
+                    Shape shape = SHAPES[BAND_SHAPE[band]];
+                    for (int i = 0; i < shape.suits; i++) {
+
+                        int suit = PAIRINGS[pairing][(pair * 2) + i];
+                        heights[i] = Math.max(0, Math.min(shape.ranks, core.getFoundationHeight(suit) - BAND_LOW[band]));
+                        for (int rank = heights[i]; rank < shape.ranks; rank++) {
+
+                            int card = (suit * Card.RANKS.length) + BAND_LOW[band] + rank;
+                            if ((reserve & (1L << card)) != 0)
+                                codes[(i * shape.ranks) + rank] = RESERVE;
+                            else
+                                codes[(i * shape.ranks) + rank] = getCode((under[pairing][card] < 0) ? -1 : getGroupNumber(pairing, under[pairing][card], band), dirty[card]);
+                        }
+                    }
+
+                    int value = tables[BAND_SHAPE[band]].get(HEADER_SIZE + shape.encode(heights, codes)) & 0xFF;
+                    if (value != NO_VALUE)
+                        estimate += value;
+                }
+
+            best = Math.max(best, estimate);
+        }
+
+        return best;
+    }
+
+    /**
+     * Get the band of a rank.
+     *
+     * @param rank The rank
+     * @return The band
+     */
+
+    private static int getBand(int rank) {
+
+        int band = BAND_LOW.length - 1;
+        while (BAND_LOW[band] > rank)
+            band--;
+
+        return band;
+    }
+
+    /**
+     * Get the pair a suit is in.
+     *
+     * @param pairing The pairing of the suits
+     * @param suit The suit
+     * @return 0 for the first pair, 1 for the second
+     */
+
+    private static int getPair(int pairing, int suit) {
+
+        for (int i = 0; i < PAIRINGS[pairing].length; i++)
+            if (PAIRINGS[pairing][i] == suit)
+                return i / 2;
+
+        throw new IllegalStateException("No suit " + suit + " in pairing " + pairing);
+    }
+
+    /**
+     * Get the number of a card in its group.
+     *
+     * @param pairing The pairing of the suits
+     * @param card The card
+     * @param band The band of the card
+     * @return The number of the card in the shape of the group
+     */
+
+    private static int getGroupNumber(int pairing, int card, int band) {
+
+        int suit = BoardCore.suitOf(card);
+        int first = (PAIRINGS[pairing][0] == suit) || (PAIRINGS[pairing][2] == suit) ? 0 : 1;
+        return (first * SHAPES[BAND_SHAPE[band]].ranks) + BoardCore.rankOf(card) - BAND_LOW[band];
+    }
+}
@@ -0,0 +1,144 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+import java.util.logging.Logger;
+
+/**
+ * A benchmark of the bounds from the pattern databases. It finds a solution to each deal with a depth first search, takes
+ * the boards along it where a number of cards are left, and solves each of them exactly with an EndgameSolver that
+ * counts the cards left and one that uses the pattern databases. Both have to find the same number of moves, the
+ * benchmark fails if they don't, and it reports how many boards each one expanded.
+ */
+
+public class PatternDatabaseBenchmark {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(PatternDatabaseBenchmark.class.getName());
+
+    /** The numbers of cards left off the Foundation in the endgames to solve. */
+
+    private static final int[] CARDS_LEFT = {32, 36, 40, 44, 48, 52};
+
+    /** The most boards to expand looking for a solution to a deal. */
+
+    private static final int MAX_NODES = 5_000_000;
+
+    /** The seed used for the search so every run solves the same endgames. */
+
+    private static final long SEED = 1;
+
+    /**
+     * Find the boards along a solution to a deal.
+     *
+     * @param boardFile The file with the initial deal
+     * @return The boards from the initial one to the one before the game is won, empty if none was found
+     * @throws IOException If the board can't be read
+     */
+
+    static List<Board> findSolutionPath(String boardFile) throws IOException {
+
+        Board currentBoard = new Board(boardFile);
+        currentBoard.setSearchContext(new SearchContext(SEED, new MoveHistory()));
+        currentBoard.computePendingMoves();
+
+        Stack<Board> gameStates = new Stack<>();
+        Set<String> previousBoards = new HashSet<>();
+        previousBoards.add(currentBoard.getSignature());
+        for (int nodes = 0; nodes < MAX_NODES; nodes++) {
+
+            while (currentBoard.boardHasFailed()) {
+                if (gameStates.isEmpty())
+                    return new ArrayList<>();
+                currentBoard = gameStates.pop();
+            }
+
+            Board nextBoard = currentBoard.applyNextMove();
+            if (nextBoard.gameIsWon()) {
+                List<Board> path = new ArrayList<>(gameStates);
+                path.add(currentBoard);
+                return path;
+            }
+
+            if (! nextBoard.isDead() && previousBoards.add(nextBoard.getSignature())) {
+                gameStates.push(currentBoard);
+                currentBoard = nextBoard;
+            }
+        }
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The directory holding the pattern databases followed by the board files to run the benchmark on
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            PatternDatabase patternDatabase = new PatternDatabase(Paths.get(args[0]));
+            long totalCounting = 0;
+            long totalPatterns = 0;
+            int mismatches = 0;
+            for (int i = 1; i < args.length; i++) {
+
+                List<Board> path = findSolutionPath(args[i]);
+                if (path.isEmpty()) {
+                    LOG.warning(args[i] + ": no solution found to take the endgames from");
+                    continue;
+                }
+
+                for (int cardsLeft : CARDS_LEFT) {
+
+                    Board board = path.stream().filter(b -> Card.DECK_SIZE - b.getFoundationCount() <= cardsLeft).findFirst().orElse(null);
+                    if (board == null)
+                        continue;
+
+                    // Solve the endgame both ways with solvers that know nothing yet
+
+                    EndgameSolver counting = new EndgameSolver(Card.DECK_SIZE, null);
+                    long start = System.nanoTime();
+                    int countingMoves = counting.solve(board);
+                    long countingTime = System.nanoTime() - start;
+
+                    EndgameSolver patterns = new EndgameSolver(Card.DECK_SIZE, patternDatabase);
+                    start = System.nanoTime();
+                    int patternMoves = patterns.solve(board);
+                    long patternTime = System.nanoTime() - start;
+
+                    if ((countingMoves != patternMoves) && (countingMoves != EndgameSolver.UNKNOWN) && (patternMoves != EndgameSolver.UNKNOWN)) {
+                        mismatches++;
+                        LOG.severe(args[i] + ": counting found " + countingMoves + " moves but the pattern databases found " + patternMoves + " for " + board);
+                    }
+
+                    totalCounting += counting.getExpanded();
+                    totalPatterns += patterns.getExpanded();
+                    LOG.info(String.format("%s, %d cards left: %s moves, %d boards in %d ms counting, %d boards in %d ms with patterns, %.1fx fewer",
+                            args[i], Card.DECK_SIZE - board.getFoundationCount(), (patternMoves == EndgameSolver.UNKNOWN) ? "?" : Integer.toString(patternMoves),
+                            counting.getExpanded(), countingTime / 1_000_000, patterns.getExpanded(), patternTime / 1_000_000,
+                            (double) counting.getExpanded() / Math.max(1, patterns.getExpanded())));
+                }
+            }
+
+            LOG.info(String.format("Total: %d boards counting, %d boards with patterns, %.1fx fewer, %d mismatches",
+                    totalCounting, totalPatterns, (double) totalCounting / Math.max(1, totalPatterns), mismatches));
+            System.exit((mismatches == 0) ? 0 : 1);
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
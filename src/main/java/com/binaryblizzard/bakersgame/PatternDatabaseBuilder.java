@@ -0,0 +1,243 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Builds the files of a PatternDatabase. It is a separate step, run with the patterns Maven profile or by hand, since it
+ * takes a while and the files only change when the way the groups are looked at changes.
+ * <p>
+ * The fewest moves to finish every arrangement of a group are found with a breadth first search backwards from the
+ * finished group. Each pass goes through the arrangements found at the last distance and works out every arrangement
+ * one move before them.
+ */
+
+public class PatternDatabaseBuilder {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(PatternDatabaseBuilder.class.getName());
+
+    /** The directory for the files if none is given. */
+
+    private static final String DEFAULT_DIRECTORY = "patterns";
+
+    /** The shape of the groups being built. */
+
+    private final PatternDatabase.Shape shape;
+
+    /**
+     * Create a PatternDatabaseBuilder.
+     *
+     * @param shape The shape of the groups
+     */
+
+    private PatternDatabaseBuilder(PatternDatabase.Shape shape) {
+        this.shape = shape;
+    }
+
+    /**
+     * Find the fewest moves to finish every arrangement.
+     *
+     * @return The number of moves for each arrangement, NO_VALUE for the ones that can't happen
+     */
+
+    private byte[] build() {
+
+        byte[] distances = new byte[shape.size()];
+        Arrays.fill(distances, (byte) PatternDatabase.NO_VALUE);
+        int[] heights = new int[shape.suits];
+        Arrays.fill(heights, shape.ranks);
+        distances[shape.encode(heights, new int[shape.cards])] = 0;
+
+        int[] codes = new int[shape.cards];
+        int found = 1;
+        for (int distance = 0; found > 0; distance++) {
+
+            byte next = (byte) (distance + 1);
+            int[] added = new int[1];
+            for (int index = 0; index < distances.length; index++)
+                if ((distances[index] & 0xFF) == distance) {
+                    shape.decode(index, heights, codes);
+                    forEachPredecessor(heights, codes, predecessor -> {
+                        if ((distances[predecessor] & 0xFF) == PatternDatabase.NO_VALUE) {
+                            distances[predecessor] = next;
+                            added[0]++;
+                        }
+                    });
+                }
+
+            found = added[0];
+            LOG.fine(found + " arrangements are " + (distance + 1) + " moves from the end");
+        }
+
+        return distances;
+    }
+
+    /**
+     * Find every arrangement one move before an arrangement.
+     *
+     * @param heights The number of cards of each suit on the Foundation
+     * @param codes The code of each card by its number
+     * @param consumer Given the number of each arrangement before it
+     */
+
+    private void forEachPredecessor(int[] heights, int[] codes, IntConsumer consumer) {
+
+        // Find the cards on top of their columns
+
+        boolean[] left = new boolean[shape.cards];
+        boolean[] covered = new boolean[shape.cards];
+        int reserveCount = 0;
+        for (int suit = 0; suit < shape.suits; suit++)
+            for (int rank = heights[suit]; rank < shape.ranks; rank++) {
+                int card = (suit * shape.ranks) + rank;
+                left[card] = true;
+                if (codes[card] == PatternDatabase.RESERVE)
+                    reserveCount++;
+                else if (PatternDatabase.getUnder(codes[card]) >= 0)
+                    covered[PatternDatabase.getUnder(codes[card])] = true;
+            }
+
+        boolean[] top = new boolean[shape.cards];
+        for (int card = 0; card < shape.cards; card++)
+            top[card] = left[card] && (codes[card] != PatternDatabase.RESERVE) && ! covered[card];
+
+        boolean reserveFree = reserveCount < BoardCore.RESERVE_SIZE;
+        int[] before = codes.clone();
+
+        // The last card of a suit to go to the Foundation came from the Reserve or from the top of a column with nothing
+        // lower of its suit under it
+
+        for (int suit = 0; suit < shape.suits; suit++) {
+
+            if (heights[suit] == 0)
+                continue;
+
+            int card = (suit * shape.ranks) + heights[suit] - 1;
+            heights[suit]--;
+            if (reserveFree)
+                consumer.accept(withCode(heights, before, card, PatternDatabase.RESERVE));
+            consumer.accept(withCode(heights, before, card, PatternDatabase.getCode(-1, false)));
+            for (int other = 0; other < shape.cards; other++)
+                if (top[other])
+                    consumer.accept(withCode(heights, before, card, PatternDatabase.getCode(other, false)));
+            heights[suit]++;
+            before[card] = codes[card];
+        }
+
+        // Any other card that could have been moved where it is came from the Reserve or the top of a column. A card
+        // moved to a column with no group card came to an empty column, unless it is the top of its suit in the band
+        // and went on the next card of its suit, and a card moved on to a group card has to be on the next card of its
+        // suit unless it is the top of its suit in the band. Only a card moved on to another card can have a lower card
+        // of its suit under it.
+
+        for (int card = 0; card < shape.cards; card++) {
+
+            int code = codes[card];
+            if (! left[card] || covered[card])
+                continue;
+
+            boolean highest = (card % shape.ranks) == shape.ranks - 1;
+            int under = PatternDatabase.getUnder(code);
+            if ((code != PatternDatabase.RESERVE) && (under < 0) && PatternDatabase.isDirty(code) && ! highest)
+                continue;
+            if ((under >= 0) && (under != card + 1) && ! highest)
+                continue;
+
+            if ((code != PatternDatabase.RESERVE) && reserveFree)
+                consumer.accept(withCode(heights, before, card, PatternDatabase.RESERVE));
+            for (int other = -1; other < shape.cards; other++)
+                if ((other < 0) || (top[other] && (other != card)))
+                    for (int dirty = 0; dirty < 2; dirty++) {
+                        int origin = PatternDatabase.getCode(other, dirty != 0);
+                        if ((origin != code) && ((other >= 0) || (under >= 0) || (code == PatternDatabase.RESERVE) || (PatternDatabase.isDirty(origin) != PatternDatabase.isDirty(code))))
+                            consumer.accept(withCode(heights, before, card, origin));
+                    }
+            before[card] = code;
+        }
+    }
+
+    /**
+     * Number an arrangement with the code of one card changed.
+     *
+     * @param heights The number of cards of each suit on the Foundation
+     * @param codes The code of each card, the changed card's code is left in it
+     * @param card The card to change
+     * @param code The new code of the card
+     * @return The number of the arrangement
+     */
+
+    private int withCode(int[] heights, int[] codes, int card, int code) {
+
+        codes[card] = code;
+        return shape.encode(heights, codes);
+    }
+
+    /**
+     * Write a database to a file.
+     *
+     * @param path The file
+     * @param distances The number of moves for each arrangement
+     * @throws IOException If the file can't be written
+     */
+
+    private void write(Path path, byte[] distances) throws IOException {
+
+        Files.deleteIfExists(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, PatternDatabase.HEADER_SIZE + distances.length);
+            buffer.putInt(0, PatternDatabase.MAGIC).putInt(4, PatternDatabase.VERSION).putInt(8, shape.suits).putInt(12, shape.ranks);
+            buffer.put(PatternDatabase.HEADER_SIZE, distances);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Build the databases.
+     *
+     * @param args The directory to write the files to, optional
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            Path directory = Paths.get((args.length > 0) ? args[0] : DEFAULT_DIRECTORY);
+            Files.createDirectories(directory);
+            for (PatternDatabase.Shape shape : PatternDatabase.SHAPES) {
+
+                long start = System.currentTimeMillis();
+                PatternDatabaseBuilder builder = new PatternDatabaseBuilder(shape);
+                byte[] distances = builder.build();
+                Path path = directory.resolve(shape.getFileName());
+                builder.write(path, distances);
+
+                int arrangements = 0;
+                int maxDistance = 0;
+                for (byte distance : distances)
+                    if ((distance & 0xFF) != PatternDatabase.NO_VALUE) {
+                        arrangements++;
+                        maxDistance = Math.max(maxDistance, distance & 0xFF);
+                    }
+                LOG.info("Built " + path + ": " + arrangements + " arrangements of " + distances.length + ", up to " +
+                        maxDistance + " moves, in " + (System.currentTimeMillis() - start) + " ms");
+            }
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
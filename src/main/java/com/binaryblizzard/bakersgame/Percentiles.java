@@ -0,0 +1,44 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.Arrays;
+
+/**
+ * Describes how a set of measurements, such as times or boards expanded, is spread, for the tools that run many
+ * searches or requests and report on them as a whole.
+ */
+
+final class Percentiles {
+
+    /** The percentiles reported. */
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 1};
+
+    /** Not created. */
+
+    private Percentiles() {
+    }
+
+    /**
+     * Describe how values are spread.
+     *
+     * @param values The values, sorted in place
+     * @param unit The amount of a value that makes one of the units reported
+     * @return The mean and percentiles
+     */
+
+    static String describe(long[] values, long unit) {
+
+        if (values.length == 0)
+            return "none";
+
+        Arrays.sort(values);
+        StringBuilder description = new StringBuilder(String.format("mean %.1f", Arrays.stream(values).average().orElse(0) / unit));
+        for (double percentile : PERCENTILES) {
+            int index = (int) Math.min(values.length - 1, Math.ceil(percentile * values.length) - 1);
+            description.append(percentile == 1 ? ", max " : String.format(", p%d ", Math.round(percentile * 100)));
+            description.append(values[Math.max(0, index)] / unit);
+        }
+
+        return description.toString();
+    }
+}
@@ -0,0 +1,255 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connects a depth first search to a PositionStore. It looks up the boards the search reaches and records the
+ * solutions it finds and the boards it proves dead.
+ * <p>
+ * A board is only dead when every move from it leads to a dead board, so the recorder follows the search path and
+ * keeps a frame for each board on it. A board that was skipped because it was pruned or seen before somewhere else
+ * might still be solvable, so it taints the board it was reached from, and the taint spreads up the path. A move back to
+ * a board that is still on the path doesn't taint, but it makes the board only as dead as that ancestor, so its
+ * position is held in the ancestor's frame until the ancestor is finished, the same way strongly connected components
+ * are found. Everything the search skips as already known dead counts as dead.
+ */
+
+class PositionRecorder {
+
+    /** What is known about a board on the search path. */
+
+    private static final class Frame {
+
+        /** The signature of the board. */
+
+        private final String signature;
+
+        /** True if a move from the board or below it led somewhere that might be solvable. */
+
+        private boolean tainted;
+
+        /** The smallest depth on the path that a move from the board or below it led back to. */
+
+        private int low;
+
+        /** The positions below the board that are dead if it is. */
+
+        private final List<byte[]> dependents = new ArrayList<>();
+
+        /**
+         * Create a Frame.
+         *
+         * @param signature The signature of the board
+         * @param depth The depth of the board on the path
+         * @param tainted True if nothing can be proved about the board
+         */
+
+        private Frame(String signature, int depth, boolean tainted) {
+
+            this.signature = signature;
+            this.low = depth;
+            this.tainted = tainted;
+        }
+    }
+
+    /** The store. */
+
+    private final PositionStore store;
+
+    /** A frame for each board on the search path, the last one is for the current board. */
+
+    private final List<Frame> frames = new ArrayList<>();
+
+    /** The depth of each board on the search path by its signature. */
+
+    private final Map<String, Integer> onPath = new HashMap<>();
+
+    /** The number of positions proved dead and added to the store. */
+
+    private long deadRecorded = 0;
+
+    /**
+     * Create a PositionRecorder.
+     *
+     * @param store The store to use
+     */
+
+    PositionRecorder(PositionStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Start a new search path.
+     *
+     * @param initialBoard The board at the start of the path
+     */
+
+    void reset(Board initialBoard) {
+
+        frames.clear();
+        onPath.clear();
+        push(initialBoard, false);
+    }
+
+    /**
+     * Add a board to the end of the path.
+     *
+     * @param board The board
+     * @param tainted True if nothing can be proved about the board, e.g. it was restored from a checkpoint
+     */
+
+    void push(Board board, boolean tainted) {
+
+        String signature = board.getSignature();
+        onPath.put(signature, frames.size());
+        frames.add(new Frame(signature, frames.size(), tainted));
+    }
+
+    /**
+     * Note that a move from the current board led somewhere that might be solvable.
+     */
+
+    void taint() {
+        frames.get(frames.size() - 1).tainted = true;
+    }
+
+    /**
+     * Note that a move from the current board led to a board that was seen before.
+     *
+     * @param signature The signature of the board
+     */
+
+    void seenBefore(String signature) {
+
+        Integer depth = onPath.get(signature);
+        Frame frame = frames.get(frames.size() - 1);
+        if (depth == null)
+            frame.tainted = true;
+        else
+            frame.low = Math.min(frame.low, depth);
+    }
+
+    /**
+     * Remove the current board from the end of the path after all of its moves were tried, recording it as dead if that
+     * has been proved.
+     *
+     * @param board The current board
+     */
+
+    void pop(Board board) {
+
+        int depth = frames.size() - 1;
+        Frame frame = frames.remove(depth);
+        onPath.remove(frame.signature);
+        Frame parent = (depth > 0) ? frames.get(depth - 1) : null;
+
+        // A move the board dropped as the reverse of its last move led back to its parent, one it dropped for only
+        // reordering moves already tried led to a board searched before that may not be dead
+
+        if (board.isReversalDropped())
+            frame.low = Math.min(frame.low, depth - 1);
+        if (board.isSleepingDropped())
+            frame.tainted = true;
+
+        if (frame.tainted) {
+            if (parent != null)
+                parent.tainted = true;
+
+        } else if (frame.low >= depth) {
+
+            // Nothing below the board leads anywhere but to dead boards, so it and everything waiting on it is dead
+
+            store.markDead(getKey(board));
+            for (byte[] dependent : frame.dependents)
+                store.markDead(dependent);
+            deadRecorded += 1 + frame.dependents.size();
+
+        } else {
+
+            // The board is dead if the board it led back to is
+
+            Frame ancestor = frames.get(frame.low);
+            ancestor.dependents.add(getKey(board));
+            ancestor.dependents.addAll(frame.dependents);
+            parent.low = Math.min(parent.low, frame.low);
+        }
+    }
+
+    /**
+     * Look a board up in the store.
+     *
+     * @param board The board
+     * @return The number of moves to solve it, PositionStore.DEAD or PositionStore.UNKNOWN
+     */
+
+    int lookUp(Board board) {
+        return store.getDistance(getKey(board));
+    }
+
+    /**
+     * Follow the moves in the store from a solved board to the end of the game.
+     *
+     * @param board The solved board
+     * @param distance The number of moves the store has for it
+     * @return The won board or null if the moves in the store don't lead to one
+     */
+
+    Board followSolution(Board board, int distance) {
+
+        try {
+
+            for (int i = 0; (i < distance) && ! board.gameIsWon(); i++) {
+                int[] canonicalColumns = board.getCanonicalColumns();
+                int code = store.getNextMove(board.encodeCanonical(canonicalColumns));
+                if (code < 0)
+                    return null;
+                board = board.applyMove(PositionStore.fromCanonicalCode(code, canonicalColumns));
+            }
+
+        } catch (IllegalStateException | IllegalArgumentException ex) {
+            return null;
+        }
+
+        return board.gameIsWon() ? board : null;
+    }
+
+    /**
+     * Record a solution for each board along a path.
+     *
+     * @param boards The boards on the path from the initial board
+     * @param solution The moves of the solution from the initial board, it starts with the moves between the boards
+     */
+
+    void recordSolution(List<Board> boards, List<Move> solution) {
+
+        for (int depth = 0; depth < boards.size(); depth++) {
+            Board board = boards.get(depth);
+            int[] canonicalColumns = board.getCanonicalColumns();
+            store.recordSolution(board.encodeCanonical(canonicalColumns), solution.size() - depth, PositionStore.toCanonicalCode(solution.get(depth), canonicalColumns));
+        }
+    }
+
+    /**
+     * Get the number of positions proved dead and added to the store.
+     *
+     * @return The number of positions
+     */
+
+    long getDeadRecorded() {
+        return deadRecorded;
+    }
+
+    /**
+     * Get the key of a board in the store.
+     *
+     * @param board The board
+     * @return The canonical encoding of the board
+     */
+
+    private static byte[] getKey(Board board) {
+        return board.encodeCanonical(board.getCanonicalColumns());
+    }
+}
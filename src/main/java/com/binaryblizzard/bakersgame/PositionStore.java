@@ -0,0 +1,360 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * A store of what earlier searches learned about positions, kept in a memory mapped file so that it lasts across runs
+ * and deals. A position is either known to be dead, i.e. no sequence of moves from it wins, or known to be solved in a
+ * number of moves, together with the first move of that solution. Positions are keyed by their canonical encoding so
+ * that boards which only differ in the order of their columns share an entry, and the moves are stored with the
+ * columns numbered in the canonical order.
+ * <p>
+ * The file is an open addressing hash table of fixed size slots. Each slot holds a 128 bit fingerprint of the position
+ * rather than the position itself, so that the slots are small and the chance of two positions sharing one is
+ * negligible. Writes are synchronized. Reads are not, so a search can miss an entry that another thread is writing at
+ * that moment, which only costs it some work. When the table is too full to probe well no more entries are added.
+ */
+
+public class PositionStore {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(PositionStore.class.getName());
+
+    /** A distance meaning nothing is known about the position. */
+
+    public static final int UNKNOWN = -1;
+
+    /** A distance meaning the position is dead. */
+
+    public static final int DEAD = Integer.MAX_VALUE;
+
+    /** The number of slots in a new store if none is given. */
+
+    public static final int DEFAULT_SLOTS = 1 << 20;
+
+    /** The value the file starts with. */
+
+    private static final int MAGIC = 0x42475053;
+
+    /** The version of the file format. */
+
+    private static final int VERSION = 1;
+
+    /** The size of the header: the magic number, the version, the number of slots and the number of entries. */
+
+    private static final int HEADER_SIZE = 24;
+
+    /** The size of a slot: two longs of fingerprint and a long holding the flags, the move and the distance. */
+
+    private static final int SLOT_SIZE = 24;
+
+    /** The offset of the number of entries in the header. */
+
+    private static final int COUNT_OFFSET = 16;
+
+    /** The flag set for a dead position. */
+
+    private static final long DEAD_FLAG = 1L << 32;
+
+    /** The flag set for a solved position. */
+
+    private static final long SOLVED_FLAG = 2L << 32;
+
+    /** The file mapped into memory. */
+
+    private final MappedByteBuffer buffer;
+
+    /** The number of slots, a power of two. */
+
+    private final int slots;
+
+    /** The most entries to add before the table is too full. */
+
+    private final int maxEntries;
+
+    /** The number of entries. */
+
+    private int entries;
+
+    /** Set once a position could not be added because the table is full. */
+
+    private boolean full = false;
+
+    /**
+     * Open a store, creating it if the file does not exist.
+     *
+     * @param path The file
+     * @param slots The number of slots if the file is created, rounded up to a power of two
+     * @throws IOException If the file can't be opened or is not a position store
+     */
+
+    public PositionStore(Path path, int slots) throws IOException {
+
+        boolean exists = Files.exists(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+
+            if (exists) {
+
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION))
+                    throw new IOException("Not a position store: " + path);
+                slots = (int) header.getLong(8);
+
+            } else
+                slots = Integer.highestOneBit(Math.max(slots - 1, 1)) << 1;
+
+            this.slots = slots;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + ((long) slots * SLOT_SIZE));
+        }
+
+        if (! exists)
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, slots).putLong(COUNT_OFFSET, 0);
+
+        maxEntries = (int) (slots * 0.75);
+        entries = (int) buffer.getLong(COUNT_OFFSET);
+        LOG.info("Position store " + path + " has " + entries + " positions in " + slots + " slots");
+    }
+
+    /**
+     * Get what is known about a position.
+     *
+     * @param position The canonical encoding of the position
+     * @return The number of moves to solve it, DEAD or UNKNOWN
+     */
+
+    public int getDistance(byte[] position) {
+
+        long value = getValue(position);
+        if ((value & DEAD_FLAG) != 0)
+            return DEAD;
+        else if ((value & SOLVED_FLAG) != 0)
+            return (int) (value & 0xFFFF);
+        else
+            return UNKNOWN;
+    }
+
+    /**
+     * Get the first move of the best known solution from a position.
+     *
+     * @param position The canonical encoding of the position
+     * @return The code of the move with its columns in the canonical order, or -1 if the position is not solved
+     */
+
+    public int getNextMove(byte[] position) {
+
+        long value = getValue(position);
+        return ((value & SOLVED_FLAG) != 0) ? (int) ((value >>> 16) & 0xFFFF) : -1;
+    }
+
+    /**
+     * Record that a position is dead.
+     *
+     * @param position The canonical encoding of the position
+     */
+
+    public synchronized void markDead(byte[] position) {
+
+        int slot = findSlot(position);
+        if (slot >= 0)
+            putValue(slot, position, DEAD_FLAG);
+    }
+
+    /**
+     * Record a solution from a position, unless a shorter one is already known.
+     *
+     * @param position The canonical encoding of the position
+     * @param distance The number of moves in the solution
+     * @param nextMove The code of the first move with its columns in the canonical order
+     */
+
+    public synchronized void recordSolution(byte[] position, int distance, int nextMove) {
+
+        int slot = findSlot(position);
+        if (slot < 0)
+            return;
+
+        long value = buffer.getLong(HEADER_SIZE + (slot * SLOT_SIZE) + 16);
+        if (((value & SOLVED_FLAG) == 0) || ((value & 0xFFFF) > distance))
+            putValue(slot, position, SOLVED_FLAG | ((long) nextMove << 16) | distance);
+    }
+
+    /**
+     * Get the number of positions in the store.
+     *
+     * @return The number of positions
+     */
+
+    public synchronized int size() {
+        return entries;
+    }
+
+    /**
+     * Write the changes out to the file.
+     */
+
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Convert a move to a code with the columns numbered in the canonical order.
+     *
+     * @param move The move
+     * @param canonicalColumns The canonical order of the columns of the board the move is made from
+     * @return The code
+     */
+
+    public static int toCanonicalCode(Move move, int[] canonicalColumns) {
+
+        int code = move.getCode();
+        int from = (code >>> 4) & 0xF;
+        int to = code & 0xF;
+        for (int i = 0; i < canonicalColumns.length; i++) {
+            if (canonicalColumns[i] == move.getFrom().getIndex())
+                from = i;
+            if (canonicalColumns[i] == move.getTo().getIndex())
+                to = i;
+        }
+
+        return (code & ~0xFF) | (from << 4) | to;
+    }
+
+    /**
+     * Convert a code with the columns numbered in the canonical order back to a move.
+     *
+     * @param code The code
+     * @param canonicalColumns The canonical order of the columns of the board the move is made from
+     * @return The move
+     */
+
+    public static Move fromCanonicalCode(int code, int[] canonicalColumns) {
+
+        int from = (code >>> 4) & 0xF;
+        int to = code & 0xF;
+        if (from < canonicalColumns.length)
+            from = canonicalColumns[from];
+        if (to < canonicalColumns.length)
+            to = canonicalColumns[to];
+
+        return Move.forCode((code & ~0xFF) | (from << 4) | to);
+    }
+
+    /**
+     * Get the value stored for a position.
+     *
+     * @param position The canonical encoding of the position
+     * @return The value or 0 if there is none
+     */
+
+    private long getValue(byte[] position) {
+
+        long hash1 = hash1(position);
+        long hash2 = hash2(position);
+        for (int probe = 0, slot = (int) hash1 & (slots - 1); probe < slots; probe++, slot = (slot + 1) & (slots - 1)) {
+
+            int offset = HEADER_SIZE + (slot * SLOT_SIZE);
+            long slotHash1 = buffer.getLong(offset);
+            long slotHash2 = buffer.getLong(offset + 8);
+            if ((slotHash1 == hash1) && (slotHash2 == hash2))
+                return buffer.getLong(offset + 16);
+            if ((slotHash1 == 0) && (slotHash2 == 0))
+                return 0;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Find the slot for a position, claiming an empty one for it if it is not in the table.
+     *
+     * @param position The canonical encoding of the position
+     * @return The slot or -1 if the position is not in the table and the table is full
+     */
+
+    private int findSlot(byte[] position) {
+
+        long hash1 = hash1(position);
+        long hash2 = hash2(position);
+        for (int probe = 0, slot = (int) hash1 & (slots - 1); probe < slots; probe++, slot = (slot + 1) & (slots - 1)) {
+
+            int offset = HEADER_SIZE + (slot * SLOT_SIZE);
+            long slotHash1 = buffer.getLong(offset);
+            long slotHash2 = buffer.getLong(offset + 8);
+            if ((slotHash1 == hash1) && (slotHash2 == hash2))
+                return slot;
+
+            if ((slotHash1 == 0) && (slotHash2 == 0)) {
+
+                if (entries >= maxEntries) {
+                    if (! full)
+                        LOG.warning("Position store is full, no more positions will be added");
+                    full = true;
+                    return -1;
+                }
+
+                buffer.putLong(COUNT_OFFSET, ++entries);
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Write a slot. The value goes in first and the fingerprint last so that a reader never matches a slot that has no
+     * value yet.
+     *
+     * @param slot The slot
+     * @param position The canonical encoding of the position
+     * @param value The value
+     */
+
+    private void putValue(int slot, byte[] position, long value) {
+
+        int offset = HEADER_SIZE + (slot * SLOT_SIZE);
+        buffer.putLong(offset + 16, value);
+        buffer.putLong(offset + 8, hash2(position));
+        buffer.putLong(offset, hash1(position));
+    }
+
+    /**
+     * The first half of the fingerprint of a position, a 64 bit FNV-1a hash.
+     *
+     * @param position The canonical encoding of the position
+     * @return The hash, never 0
+     */
+
+    private static long hash1(byte[] position) {
+
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : position)
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+
+        return (hash == 0) ? 1 : hash;
+    }
+
+    /**
+     * The second half of the fingerprint of a position, a multiplicative hash finished with the SplitMix64 mixer.
+     *
+     * @param position The canonical encoding of the position
+     * @return The hash
+     */
+
+    private static long hash2(byte[] position) {
+
+        long hash = position.length;
+        for (byte b : position)
+            hash = (hash * 0x9E3779B97F4A7C15L) + (b & 0xFF) + 1;
+
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+}
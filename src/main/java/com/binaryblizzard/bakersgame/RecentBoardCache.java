@@ -0,0 +1,112 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size cache of the boards a depth first search has recently finished with, for when the search only keeps the
+ * boards on its path. Each board goes in the one slot its hash picks and replaces whatever was there, so the memory
+ * never grows however long the search runs, and the boards that come up again soon after they were searched, which is
+ * most transpositions, are still skipped. Only a 64 bit hash of each signature is kept, so two boards with the same hash
+ * could be taken for each other, but with a few million slots that is not going to happen in any run of the solver.
+ */
+
+public class RecentBoardCache {
+
+    /** The hashes of the boards by slot, 0 for an empty slot. */
+
+    private final long[] hashes;
+
+    /** The number of times a board was found in the cache. */
+
+    private long hits = 0;
+
+    /**
+     * Create a RecentBoardCache.
+     *
+     * @param slots The number of boards the cache can hold, rounded up to a power of 2
+     * @throws IllegalArgumentException If the number of slots is not positive or too big
+     */
+
+    public RecentBoardCache(int slots) throws IllegalArgumentException {
+
+        if ((slots <= 0) || (slots > (1 << 30)))
+            throw new IllegalArgumentException("Invalid recent board cache size: " + slots);
+
+        int size = Integer.highestOneBit(slots);
+        hashes = new long[(size < slots) ? size << 1 : size];
+    }
+
+    /**
+     * Check if a board is in the cache.
+     *
+     * @param signature The signature of the board
+     * @return true if the board is in the cache
+     */
+
+    public boolean contains(String signature) {
+
+        long hash = hash(signature);
+        if (hashes[(int) hash & (hashes.length - 1)] != hash)
+            return false;
+
+        hits++;
+        return true;
+    }
+
+    /**
+     * Put a board in the cache, in place of the board in its slot.
+     *
+     * @param signature The signature of the board
+     */
+
+    public void add(String signature) {
+
+        long hash = hash(signature);
+        hashes[(int) hash & (hashes.length - 1)] = hash;
+    }
+
+    /**
+     * Empty the cache.
+     */
+
+    public void clear() {
+        Arrays.fill(hashes, 0);
+    }
+
+    /**
+     * Get the number of slots.
+     *
+     * @return The number of slots
+     */
+
+    public int getSlots() {
+        return hashes.length;
+    }
+
+    /**
+     * Get the number of times a board was found in the cache.
+     *
+     * @return The number of hits
+     */
+
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Hash a signature to 64 bits, never 0 since that marks an empty slot.
+     *
+     * @param signature The signature of the board
+     * @return The hash
+     */
+
+    private static long hash(String signature) {
+
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < signature.length(); i++)
+            hash = (hash ^ signature.charAt(i)) * 0x100000001B3L;
+        hash ^= hash >>> 29;
+
+        return (hash == 0) ? 1 : hash;
+    }
+}
@@ -0,0 +1,100 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A benchmark that compares restart policies. For each board and policy it runs the depth first search with a number of
+ * seeds until the first solution and reports how many boards that took, on average and in the worst case. The policies
+ * are there to cut off the long tail of bad orderings, so the spread and the worst case matter more than the mean.
+ */
+
+public class RestartBenchmark {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(RestartBenchmark.class.getName());
+
+    /** The number of seeds to run each policy with. */
+
+    private static final int SEEDS = 20;
+
+    /** The time to give each run before counting it as unsolved, in milliseconds. */
+
+    private static final long TIME_BUDGET = 10_000;
+
+    /** The policies to compare. */
+
+    private static final String[] POLICIES = {"none", "fixed:20000", "geometric:1000:1.5", "luby:1000", "luby:1000:keep"};
+
+    /**
+     * Run the search with one policy and seed until it finds a solution.
+     *
+     * @param initialBoard The board to solve
+     * @param policy The restart policy, with ":keep" on the end to keep the boards seen before
+     * @param seed The seed
+     * @return The number of boards expanded before the first solution or -1 if none was found in time
+     */
+
+    private static long runSearch(Board initialBoard, String policy, long seed) {
+
+        SearchContext context = new SearchContext(seed, new MoveHistory());
+        context.setKeepingVisited(policy.endsWith(":keep"));
+        context.setRestartPolicy(RestartPolicy.parse(policy.replaceFirst(":keep$", "")));
+
+        DepthFirstSearch search = new DepthFirstSearch(initialBoard, context, new BestSolution(1, TIME_BUDGET));
+        search.run();
+        return search.getFirstSolutionNodes();
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The board files to run the benchmark on
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            // The searches log every solution and their statistics, only the results are wanted here
+
+            Logger.getLogger(DepthFirstSearch.class.getName()).setLevel(Level.WARNING);
+            Logger.getLogger(BestSolution.class.getName()).setLevel(Level.WARNING);
+
+            for (String boardFile : args) {
+
+                Board initialBoard = new Board(boardFile);
+                for (String policy : POLICIES) {
+
+                    long total = 0;
+                    long worst = 0;
+                    double sumOfSquares = 0;
+                    int solved = 0;
+                    for (long seed = 1; seed <= SEEDS; seed++) {
+
+                        long nodes = runSearch(initialBoard, policy, seed);
+                        if (nodes < 0)
+                            continue;
+
+                        solved++;
+                        total += nodes;
+                        worst = Math.max(worst, nodes);
+                        sumOfSquares += (double) nodes * nodes;
+                    }
+
+                    double mean = (solved == 0) ? 0 : (double) total / solved;
+                    double deviation = (solved == 0) ? 0 : Math.sqrt(Math.max(0, (sumOfSquares / solved) - (mean * mean)));
+                    LOG.info(String.format("%s %-20s solved %2d/%d, mean %10.0f, std dev %10.0f, worst %10d boards",
+                            boardFile, policy, solved, SEEDS, mean, deviation, worst));
+                }
+            }
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.binaryblizzard.bakersgame;
+
+/**
+ * Decides how many boards a depth first search may expand on one descent before it gives up and starts again from the
+ * initial board with a new ordering. The time a randomized search takes to solve a deal is heavy tailed, most orderings
+ * solve it quickly but a few get lost in huge dead subtrees, so cutting a descent short and trying another ordering
+ * bounds the damage a bad one can do.
+ */
+
+public class RestartPolicy {
+
+    /** The ways the cutoff can grow from one restart to the next. */
+
+    public enum Type {
+        NONE,
+        FIXED,
+        GEOMETRIC,
+        LUBY
+    }
+
+    /** A policy that never restarts. */
+
+    public static final RestartPolicy NONE = new RestartPolicy(Type.NONE, Long.MAX_VALUE, 1);
+
+    /** The default growth factor of a geometric policy. */
+
+    private static final double DEFAULT_FACTOR = 1.5;
+
+    /** The type of policy. */
+
+    private final Type type;
+
+    /** The cutoff of the first descent. */
+
+    private final long base;
+
+    /** The factor the cutoff grows by for a geometric policy. */
+
+    private final double factor;
+
+    /**
+     * Create a RestartPolicy.
+     *
+     * @param type The type of policy
+     * @param base The number of boards the first descent may expand
+     * @param factor The factor the cutoff grows by for a geometric policy
+     */
+
+    public RestartPolicy(Type type, long base, double factor) {
+
+        this.type = type;
+        this.base = base;
+        this.factor = factor;
+    }
+
+    /**
+     * Parse a policy from a string of the form type[:base[:factor]], e.g. "luby:1000" or "geometric:1000:2".
+     *
+     * @param spec The policy
+     * @return The RestartPolicy
+     * @throws IllegalArgumentException If the string is not a valid policy
+     */
+
+    public static RestartPolicy parse(String spec) throws IllegalArgumentException {
+
+        String[] parts = spec.split(":");
+        Type type = Type.valueOf(parts[0].toUpperCase());
+        if (type == Type.NONE)
+            return NONE;
+
+        long base = (parts.length > 1) ? Long.parseLong(parts[1]) : 1000;
+        double factor = (parts.length > 2) ? Double.parseDouble(parts[2]) : DEFAULT_FACTOR;
+        if ((base <= 0) || (factor < 1))
+            throw new IllegalArgumentException("Invalid restart policy: " + spec);
+
+        return new RestartPolicy(type, base, factor);
+    }
+
+    /**
+     * Get the number of boards a descent may expand.
+     *
+     * @param restarts The number of restarts so far
+     * @return The cutoff for the next descent
+     */
+
+    public long getCutoff(int restarts) {
+
+        switch (type) {
+
+            case FIXED:
+                return base;
+
+            case GEOMETRIC:
+                return (long) Math.min(base * Math.pow(factor, restarts), Long.MAX_VALUE);
+
+            case LUBY:
+                return base * luby(restarts + 1);
+
+            default:
+                return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Get a term of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ... Each run of cutoffs is repeated
+     * before the cutoff doubles, which is within a log factor of the best fixed cutoff without knowing what it is.
+     *
+     * @param i The position in the sequence, starting at 1
+     * @return The term
+     */
+
+    static long luby(int i) {
+
+        while (true) {
+
+            // Find the smallest k with i <= 2^k - 1, if i is at the end of a run the term is 2^(k-1)
+
+            int k = 1;
+            while ((1L << k) - 1 < i)
+                k++;
+            if (i == (1L << k) - 1)
+                return 1L << (k - 1);
+
+            // Otherwise it is the same as the term the same distance into the sequence
+
+            i -= (int) (1L << (k - 1)) - 1;
+        }
+    }
+
+    /** @see Object#toString() */
+
+    @Override
+    public String toString() {
+
+        switch (type) {
+
+            case NONE:
+                return "none";
+
+            case GEOMETRIC:
+                return "geometric:" + base + ":" + factor;
+
+            default:
+                return type.name().toLowerCase() + ":" + base;
+        }
+    }
+}
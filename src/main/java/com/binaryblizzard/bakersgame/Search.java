@@ -0,0 +1,17 @@
+package com.binaryblizzard.bakersgame;
+
+/**
+ * A search for solutions that publishes what it finds to a BestSolution. A search runs until the BestSolution says the
+ * run is finished or it has nothing left to try, so several of them can be run at once and stopped together.
+ */
+
+public interface Search extends Runnable {
+
+    /**
+     * Get a name for the search that says what strategy it uses.
+     *
+     * @return The name
+     */
+
+    String getName();
+}
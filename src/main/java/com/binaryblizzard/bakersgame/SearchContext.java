@@ -0,0 +1,427 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The state that is shared by all the boards of one search. It holds the seeded random number generator that breaks ties
+ * between moves of equal weight and the move ordering history. Giving each search its own seeded context makes a solve
+ * exactly repeatable.
+ */
+
+public class SearchContext {
+
+    /** The seed that the random number generator was created with. */
+
+    private final long seed;
+
+    /** The random number generator used to break ties between moves. */
+
+    private final SplittableRandom random;
+
+    /** The move ordering history. */
+
+    private final MoveHistory moveHistory;
+
+    /** True if boards derive their legal moves from their parent, false to always compute them from scratch. */
+
+    private boolean incrementalMoves = true;
+
+    /** True if incrementally derived moves should be checked against the ones computed from scratch. */
+
+    private boolean verifyingMoves = false;
+
+    /** True if boards drop the moves that undo their last move or only reorder moves already tried. */
+
+    private boolean reducingMoves = true;
+
+    /** True if new boards are checked for positions that can be proved to be dead. */
+
+    private boolean detectingDeadlocks = true;
+
+    /** True if the search skips boards that can't lead to a solution shorter than the best one known. */
+
+    private boolean pruning = false;
+
+    /** The policy that decides when a depth first search abandons a descent and starts again. */
+
+    private RestartPolicy restartPolicy = RestartPolicy.NONE;
+
+    /** True if the boards seen before are kept when a descent is abandoned. */
+
+    private boolean keepingVisited = false;
+
+    /** The most cards left off the Foundation for a depth first search to solve the board exactly, 0 for never. */
+
+    private int endgameCards = 0;
+
+    /** The store of positions known to be dead or solved, null if there is none. */
+
+    private PositionStore positionStore = null;
+
+    /** The pattern databases the endgame solver takes its lower bounds from, null to count the cards left instead. */
+
+    private PatternDatabase patternDatabase = null;
+
+    /** A solution known before the search started, null if there is none. */
+
+    private List<Move> knownSolution = null;
+
+    /** The number of boards a depth first search is expected to see, to size its set of them, 0 if not known. */
+
+    private int expectedBoards = 0;
+
+    /** True if a depth first search only keeps the boards on its path rather than every board it has seen. */
+
+    private boolean pathOnly = false;
+
+    /** The number of boards a depth first search that only keeps its path caches after it finishes them, 0 for none. */
+
+    private int recentBoards = 0;
+
+    /**
+     * Create a SearchContext.
+     *
+     * @param seed The seed for the random number generator
+     * @param moveHistory The move ordering history to use
+     */
+
+    public SearchContext(long seed, MoveHistory moveHistory) {
+
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        this.moveHistory = moveHistory;
+    }
+
+    /**
+     * Create a SearchContext with a random seed and an empty history.
+     */
+
+    public SearchContext() {
+        this(new SplittableRandom().nextLong(), new MoveHistory());
+    }
+
+    /**
+     * Get the seed.
+     *
+     * @return The seed the random number generator was created with
+     */
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the random number generator.
+     *
+     * @return The random number generator
+     */
+
+    public SplittableRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Get the move ordering history.
+     *
+     * @return The history
+     */
+
+    public MoveHistory getMoveHistory() {
+        return moveHistory;
+    }
+
+    /**
+     * Check if boards derive their legal moves from their parent.
+     *
+     * @return true if the moves are derived incrementally
+     */
+
+    public boolean isIncrementalMoves() {
+        return incrementalMoves;
+    }
+
+    /**
+     * Set whether boards derive their legal moves from their parent or compute them from scratch.
+     *
+     * @param incrementalMoves true to derive the moves incrementally
+     */
+
+    public void setIncrementalMoves(boolean incrementalMoves) {
+        this.incrementalMoves = incrementalMoves;
+    }
+
+    /**
+     * Check if incrementally derived moves are checked against the ones computed from scratch.
+     *
+     * @return true if the moves are verified
+     */
+
+    public boolean isVerifyingMoves() {
+        return verifyingMoves;
+    }
+
+    /**
+     * Set whether incrementally derived moves are checked against the ones computed from scratch. This is slow and is
+     * meant for testing.
+     *
+     * @param verifyingMoves true to verify the moves
+     */
+
+    public void setVerifyingMoves(boolean verifyingMoves) {
+        this.verifyingMoves = verifyingMoves;
+    }
+
+    /**
+     * Check if boards drop the moves that undo their last move or only reorder moves already tried.
+     *
+     * @return true if the moves are dropped
+     */
+
+    public boolean isReducingMoves() {
+        return reducingMoves;
+    }
+
+    /**
+     * Set whether boards drop the moves that undo their last move or only reorder moves already tried. Either kind only
+     * leads to a board that has been or is being searched, so dropping them saves making the board and looking it up.
+     * A depth first search that keeps a position store learns fewer dead positions with it, since it can't tell what
+     * the dropped moves would have led to.
+     *
+     * @param reducingMoves true to drop the moves
+     */
+
+    public void setReducingMoves(boolean reducingMoves) {
+        this.reducingMoves = reducingMoves;
+    }
+
+    /**
+     * Check if new boards are checked for positions that can be proved to be dead.
+     *
+     * @return true if they are checked
+     */
+
+    public boolean isDetectingDeadlocks() {
+        return detectingDeadlocks;
+    }
+
+    /**
+     * Set whether new boards are checked for positions that can be proved to be dead (see DeadlockDetector). The
+     * searches skip the boards that are.
+     *
+     * @param detectingDeadlocks true to check them
+     */
+
+    public void setDetectingDeadlocks(boolean detectingDeadlocks) {
+        this.detectingDeadlocks = detectingDeadlocks;
+    }
+
+    /**
+     * Check if the search prunes against the best solution.
+     *
+     * @return true if boards that can't beat the best solution are skipped
+     */
+
+    public boolean isPruning() {
+        return pruning;
+    }
+
+    /**
+     * Set whether the search prunes against the best solution. When it does every solution found is shorter than the
+     * last, so far fewer solutions are found but each one costs much less work.
+     *
+     * @param pruning true to skip boards that can't beat the best solution
+     */
+
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Get the restart policy.
+     *
+     * @return The policy that decides when a descent is abandoned
+     */
+
+    public RestartPolicy getRestartPolicy() {
+        return restartPolicy;
+    }
+
+    /**
+     * Set the restart policy.
+     *
+     * @param restartPolicy The policy that decides when a descent is abandoned
+     */
+
+    public void setRestartPolicy(RestartPolicy restartPolicy) {
+        this.restartPolicy = restartPolicy;
+    }
+
+    /**
+     * Check if the boards seen before are kept when a descent is abandoned.
+     *
+     * @return true if they are kept
+     */
+
+    public boolean isKeepingVisited() {
+        return keepingVisited;
+    }
+
+    /**
+     * Set whether the boards seen before are kept when a descent is abandoned. Keeping them means the next descent
+     * never repeats the work of the last one, but it also can't reach a board through a different path.
+     *
+     * @param keepingVisited true to keep them
+     */
+
+    public void setKeepingVisited(boolean keepingVisited) {
+        this.keepingVisited = keepingVisited;
+    }
+
+    /**
+     * Get the most cards left off the Foundation for a depth first search to solve the board exactly.
+     *
+     * @return The number of cards, 0 for never
+     */
+
+    public int getEndgameCards() {
+        return endgameCards;
+    }
+
+    /**
+     * Set the most cards left off the Foundation for a depth first search to solve the board exactly with an
+     * EndgameSolver rather than search it.
+     *
+     * @param endgameCards The number of cards, 0 for never
+     */
+
+    public void setEndgameCards(int endgameCards) {
+        this.endgameCards = endgameCards;
+    }
+
+    /**
+     * Get the store of positions known to be dead or solved.
+     *
+     * @return The store or null if there is none
+     */
+
+    public PositionStore getPositionStore() {
+        return positionStore;
+    }
+
+    /**
+     * Set the store of positions known to be dead or solved. A depth first search skips the dead positions, takes the
+     * solutions it finds there when they beat the best one, and adds what it learns.
+     *
+     * @param positionStore The store or null for none
+     */
+
+    public void setPositionStore(PositionStore positionStore) {
+        this.positionStore = positionStore;
+    }
+
+    /**
+     * Get the pattern databases the endgame solver takes its lower bounds from.
+     *
+     * @return The databases or null if there are none
+     */
+
+    public PatternDatabase getPatternDatabase() {
+        return patternDatabase;
+    }
+
+    /**
+     * Set the pattern databases the endgame solver takes its lower bounds from.
+     *
+     * @param patternDatabase The databases or null for none
+     */
+
+    public void setPatternDatabase(PatternDatabase patternDatabase) {
+        this.patternDatabase = patternDatabase;
+    }
+
+    /**
+     * Get the solution known before the search started.
+     *
+     * @return The moves of the solution or null if there is none
+     */
+
+    public List<Move> getKnownSolution() {
+        return knownSolution;
+    }
+
+    /**
+     * Set a solution known before the search started, e.g. one found by an earlier run. A depth first search skips a
+     * board it reaches in more moves than the known solution took to reach it, since the known way there is shorter.
+     *
+     * @param knownSolution The moves of the solution or null for none
+     */
+
+    public void setKnownSolution(List<Move> knownSolution) {
+        this.knownSolution = knownSolution;
+    }
+
+    /**
+     * Get the number of boards a depth first search is expected to see.
+     *
+     * @return The number of boards, 0 if not known
+     */
+
+    public int getExpectedBoards() {
+        return expectedBoards;
+    }
+
+    /**
+     * Set the number of boards a depth first search is expected to see, so its set of the boards seen before can be
+     * made big enough from the start rather than grown a step at a time.
+     *
+     * @param expectedBoards The number of boards, 0 if not known
+     */
+
+    public void setExpectedBoards(int expectedBoards) {
+        this.expectedBoards = expectedBoards;
+    }
+
+    /**
+     * Check if a depth first search only keeps the boards on its path.
+     *
+     * @return true if it only keeps its path
+     */
+
+    public boolean isPathOnly() {
+        return pathOnly;
+    }
+
+    /**
+     * Set whether a depth first search only keeps the boards on its path, so it still never goes round in a cycle but
+     * can search a board again when it comes to it by another path. Its memory then grows with the depth of the search
+     * rather than with the number of boards it has seen.
+     *
+     * @param pathOnly true to only keep the path
+     */
+
+    public void setPathOnly(boolean pathOnly) {
+        this.pathOnly = pathOnly;
+    }
+
+    /**
+     * Get the number of boards a depth first search that only keeps its path caches after it finishes them.
+     *
+     * @return The number of boards, 0 for no cache
+     */
+
+    public int getRecentBoards() {
+        return recentBoards;
+    }
+
+    /**
+     * Set the number of boards a depth first search that only keeps its path caches after it finishes them, so it
+     * skips most of the boards it would search again without keeping all of them.
+     *
+     * @param recentBoards The number of boards, 0 for no cache
+     */
+
+    public void setRecentBoards(int recentBoards) {
+        this.recentBoards = recentBoards;
+    }
+}
@@ -0,0 +1,458 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Runs a search spread over several ShardWorker processes, on this host or others. It waits for the workers to
+ * connect, gives each one its shard and sends the initial board to the shard that owns it. From then on it passes the
+ * boards the workers send on to the shards they belong to, checks the solutions they find, publishes them to the
+ * BestSolution and tells every worker when the best length drops.
+ * <p>
+ * The run ends when the BestSolution is finished, or when every worker is idle and has received every board passed on
+ * to it, which means every board that can beat the best solution has been searched. The boards a worker sends come
+ * before its IDLE on the same connection, so by the time a worker's IDLE is read the boards it made have already been
+ * counted against the shards they went to.
+ */
+
+public class ShardCoordinator implements Search {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(ShardCoordinator.class.getName());
+
+    /** The connection to one worker. */
+
+    private final class Connection {
+
+        /** The number of the worker's shard. */
+
+        private final int shard;
+
+        /** The socket. */
+
+        private final Socket socket;
+
+        /** The stream from the worker. */
+
+        private final DataInputStream in;
+
+        /** The stream to the worker, written by whichever thread holds the lock on it. */
+
+        private final DataOutputStream out;
+
+        /** The number of boards passed on to the worker, guarded by the coordinator's lock. */
+
+        private long forwarded = 0;
+
+        /** The number of boards the worker had received when it last said it was idle, -1 if it is busy. */
+
+        private long idleReceived = -1;
+
+        /** The worker's totals, null until it sends them. */
+
+        private long[] stats = null;
+
+        /**
+         * Create a Connection.
+         *
+         * @param shard The number of the worker's shard
+         * @param socket The socket
+         * @throws IOException If the socket's streams can't be opened
+         */
+
+        private Connection(int shard, Socket socket) throws IOException {
+
+            this.shard = shard;
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Read the messages from the worker until it sends its totals. This runs in its own thread.
+         */
+
+        private void readMessages() {
+
+            try {
+
+                while (true) {
+
+                    int type = in.readByte();
+                    if (type == ShardProtocol.BOARDS)
+                        forward(in.readInt(), in.readInt(), in.readNBytes(in.readInt()));
+
+                    else if (type == ShardProtocol.SOLUTION)
+                        offerSolution(this, ShardProtocol.readMoves(in));
+
+                    else if (type == ShardProtocol.NODES)
+                        bestSolution.countNodes(in.readInt());
+
+                    else if (type == ShardProtocol.IDLE)
+                        setIdle(this, in.readLong());
+
+                    else if (type == ShardProtocol.STATS) {
+                        long[] totals = {in.readLong(), in.readLong(), in.readLong()};
+                        synchronized (lock) {
+                            stats = totals;
+                            lock.notifyAll();
+                        }
+                        return;
+
+                    } else
+                        throw new IOException("Unexpected message " + type + " from shard " + shard);
+                }
+
+            } catch (IOException ex) {
+                fail(this, ex);
+            }
+        }
+
+        /**
+         * Send a message with no fields or an int field.
+         *
+         * @param type The type of the message
+         * @param value The int field, ignored for STOP
+         */
+
+        private void send(int type, int value) {
+
+            try {
+
+                synchronized (out) {
+                    out.writeByte(type);
+                    if (type != ShardProtocol.STOP)
+                        out.writeInt(value);
+                    out.flush();
+                }
+
+            } catch (IOException ex) {
+                fail(this, ex);
+            }
+        }
+    }
+
+    /** The initial deal. */
+
+    private final Board initialBoard;
+
+    /** The number of shards. */
+
+    private final int shards;
+
+    /** The socket the workers connect to. */
+
+    private final ServerSocket serverSocket;
+
+    /** Where solutions are published. */
+
+    private final BestSolution bestSolution;
+
+    /** Guards the counts of the connections and is notified when the run may have ended. */
+
+    private final Object lock = new Object();
+
+    /** The connections to the workers by shard. */
+
+    private final List<Connection> connections = new ArrayList<>();
+
+    /** The first failure of a connection, null if there is none. */
+
+    private IOException failure = null;
+
+    /** Set when every board has been searched. */
+
+    private boolean searched = false;
+
+    /** The number of boards the workers expanded between them, known once they have stopped. */
+
+    private long nodes = 0;
+
+    /**
+     * Create a ShardCoordinator and start listening for workers.
+     *
+     * @param initialBoard The initial deal, the workers have to be given the same one
+     * @param shards The number of workers to wait for
+     * @param port The port to listen on, 0 for any free port
+     * @param bestSolution Where to publish solutions
+     * @throws IOException If the port can't be listened on
+     */
+
+    public ShardCoordinator(Board initialBoard, int shards, int port, BestSolution bestSolution) throws IOException {
+
+        this.initialBoard = new Board(initialBoard, new SearchContext(0, new MoveHistory()));
+        this.shards = shards;
+        this.bestSolution = bestSolution;
+        serverSocket = new ServerSocket(port);
+
+        // Wake up every so often while waiting for workers to check if the run is over
+
+        serverSocket.setSoTimeout(1000);
+    }
+
+    /**
+     * Get the port the workers connect to.
+     *
+     * @return The port
+     */
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Run the search until the run is finished or every board has been searched.
+     */
+
+    @Override
+    public void run() {
+
+        try {
+
+            connect();
+            coordinate();
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException("The " + getName() + " failed", ex);
+
+        } finally {
+            for (Connection connection : connections)
+                try {
+                    connection.socket.close();
+                } catch (IOException ex) {
+                    LOG.warning("Failed to close the connection to shard " + connection.shard + ": " + ex);
+                }
+            try {
+                serverSocket.close();
+            } catch (IOException ex) {
+                LOG.warning("Failed to close the server socket: " + ex);
+            }
+        }
+    }
+
+    /**
+     * Wait for every worker to connect and give each one its shard.
+     *
+     * @throws IOException If a worker can't be reached
+     */
+
+    private void connect() throws IOException {
+
+        LOG.info("Waiting for " + shards + " workers on port " + getPort());
+        int dealHash = initialBoard.getSignature().hashCode();
+        while (connections.size() < shards) {
+
+            if (bestSolution.isFinished())
+                return;
+
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketTimeoutException ex) {
+                continue;
+            }
+
+            Connection connection = new Connection(connections.size(), socket);
+            connection.out.writeByte(ShardProtocol.HELLO);
+            connection.out.writeInt(connection.shard);
+            connection.out.writeInt(shards);
+            connection.out.writeInt(dealHash);
+            connection.out.writeInt(bestSolution.getBestLength());
+            connection.out.flush();
+            connections.add(connection);
+            LOG.info("Shard " + connection.shard + " is " + connection.socket.getRemoteSocketAddress());
+        }
+    }
+
+    /**
+     * Pass the boards around until the run ends, then stop the workers and collect their totals.
+     *
+     * @throws IOException If a worker was lost
+     */
+
+    private void coordinate() throws IOException {
+
+        if (connections.size() < shards)
+            return;
+
+        // The search starts from the initial board on the shard that owns it, which is counted before any worker can
+        // say it is idle
+
+        byte[] canonical = initialBoard.encodeCanonical(initialBoard.getCanonicalColumns());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeBoard(new DataOutputStream(bytes), initialBoard);
+        forward(ShardProtocol.getShard(canonical, shards), 1, bytes.toByteArray());
+
+        for (Connection connection : connections) {
+            Thread reader = new Thread(connection::readMessages, "Shard " + connection.shard + " coordinator");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        synchronized (lock) {
+
+            try {
+
+                while (! searched && (failure == null) && ! bestSolution.isFinished())
+                    lock.wait(100);
+
+                // Stop the workers and wait for their totals
+
+                for (Connection connection : connections)
+                    connection.send(ShardProtocol.STOP, 0);
+                for (Connection connection : connections)
+                    while ((connection.stats == null) && (failure == null))
+                        lock.wait(100);
+
+            } catch (InterruptedException ex) {
+                throw new IOException("Interrupted", ex);
+            }
+
+            if (failure != null)
+                throw failure;
+        }
+
+        long owned = 0;
+        long deadlocked = 0;
+        for (Connection connection : connections) {
+            nodes += connection.stats[0];
+            owned += connection.stats[1];
+            deadlocked += connection.stats[2];
+        }
+
+        LOG.info("The " + getName() + " expanded " + nodes + " boards, held " + owned + " between the shards and skipped " + deadlocked + " dead");
+        if (searched) {
+            LOG.info("The " + getName() + " searched every board, there is no shorter solution");
+            bestSolution.finish();
+        }
+    }
+
+    /**
+     * Pass a batch of boards on to the shard that owns them.
+     *
+     * @param shard The shard
+     * @param count The number of boards
+     * @param boards The encoded boards
+     * @throws IOException If there is no such shard
+     */
+
+    private void forward(int shard, int count, byte[] boards) throws IOException {
+
+        if ((shard < 0) || (shard >= shards))
+            throw new IOException("Boards sent to shard " + shard + " of " + shards);
+
+        // Count the boards before they can arrive so the shard can't look idle with them on the way
+
+        Connection connection = connections.get(shard);
+        synchronized (lock) {
+            connection.forwarded += count;
+            connection.idleReceived = -1;
+        }
+
+        try {
+
+            synchronized (connection.out) {
+                connection.out.writeByte(ShardProtocol.BOARDS);
+                connection.out.writeInt(shard);
+                connection.out.writeInt(count);
+                connection.out.writeInt(boards.length);
+                connection.out.write(boards);
+                connection.out.flush();
+            }
+
+        } catch (IOException ex) {
+            fail(connection, ex);
+        }
+    }
+
+    /**
+     * Check a solution a worker found and publish it, telling every worker if it is the shortest one.
+     *
+     * @param connection The connection to the worker
+     * @param codes The codes of the moves
+     * @throws IOException If the moves don't win the game
+     */
+
+    private void offerSolution(Connection connection, int[] codes) throws IOException {
+
+        Board board = ShardProtocol.replay(initialBoard, codes);
+        if (! board.gameIsWon())
+            throw new IOException("Shard " + connection.shard + " sent a solution that does not win the game");
+
+        if (bestSolution.offer(board, getName() + " shard " + connection.shard))
+            for (Connection other : connections)
+                other.send(ShardProtocol.BOUND, bestSolution.getBestLength());
+
+        if (bestSolution.isFinished())
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+    }
+
+    /**
+     * Note that a worker is idle, and end the run if every worker is idle and has received every board sent to it.
+     *
+     * @param connection The connection to the worker
+     * @param received The number of boards the worker has received
+     */
+
+    private void setIdle(Connection connection, long received) {
+
+        synchronized (lock) {
+
+            connection.idleReceived = received;
+            for (Connection other : connections)
+                if (other.idleReceived != other.forwarded)
+                    return;
+
+            searched = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * End the run because a worker was lost, unless it had already sent its totals.
+     *
+     * @param connection The connection to the worker
+     * @param ex Why the worker was lost
+     */
+
+    private void fail(Connection connection, IOException ex) {
+
+        synchronized (lock) {
+            if ((failure == null) && (connection.stats == null))
+                failure = new IOException("Lost shard " + connection.shard + ": " + ex.getMessage(), ex);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Get the number of boards the workers expanded between them.
+     *
+     * @return The number of boards, known once the run is over
+     */
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /** @see Search#getName() */
+
+    @Override
+    public String getName() {
+        return "search sharded over " + shards + " workers";
+    }
+}
@@ -0,0 +1,183 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The wire format between a ShardCoordinator and its ShardWorkers. Every message is a type byte followed by its fields
+ * in the order of DataOutputStream. A board is sent as its encoding, a byte count and the bytes, followed by the moves
+ * that reach it from the initial deal, a short move count and each move as its 16 bit code, so the path to a solution
+ * is never lost. The shard that receives it decodes the cards rather than replaying the moves, which would cost more
+ * than the board took to make. A solution is sent as just its moves and the coordinator replays them to check it.
+ * <pre>
+ * HELLO    coordinator to worker: int shard, int shards, int deal hash, int best length
+ * BOARDS   either way: int shard, int board count, int byte count, then the boards
+ * SOLUTION worker to coordinator: a short move count and the moves
+ * BOUND    coordinator to worker: int best length
+ * NODES    worker to coordinator: int boards expanded since the last NODES
+ * IDLE     worker to coordinator: long boards received so far
+ * STOP     coordinator to worker: no fields
+ * STATS    worker to coordinator, the last message: long boards expanded, long boards owned, long boards skipped dead
+ * </pre>
+ * A worker sends BOARDS with the shard they are for and the coordinator passes them on unchanged.
+ */
+
+final class ShardProtocol {
+
+    /** The coordinator tells a worker its shard. */
+
+    static final int HELLO = 1;
+
+    /** A batch of boards for a shard. */
+
+    static final int BOARDS = 2;
+
+    /** A worker found a solution. */
+
+    static final int SOLUTION = 3;
+
+    /** The coordinator has a shorter best solution. */
+
+    static final int BOUND = 4;
+
+    /** A worker reports the boards it expanded. */
+
+    static final int NODES = 5;
+
+    /** A worker has nothing left to expand. */
+
+    static final int IDLE = 6;
+
+    /** The coordinator ends the run. */
+
+    static final int STOP = 7;
+
+    /** A worker's totals, sent after STOP. */
+
+    static final int STATS = 8;
+
+    /** The port the coordinator listens on if none is given. */
+
+    static final int DEFAULT_PORT = 7077;
+
+    /** Not created. */
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Find the shard that owns a board. Boards that only differ in the order of their columns are owned by the same
+     * shard, so it can find them as duplicates.
+     *
+     * @param canonical The canonical encoding of the board
+     * @param shards The number of shards
+     * @return The shard
+     */
+
+    static int getShard(byte[] canonical, int shards) {
+
+        int hash = Arrays.hashCode(canonical);
+        hash ^= hash >>> 16;
+        hash *= 0x45D9F3B;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shards);
+    }
+
+    /**
+     * Write a board.
+     *
+     * @param out The stream
+     * @param board The board
+     * @throws IOException If the stream can't be written
+     */
+
+    static void writeBoard(DataOutputStream out, Board board) throws IOException {
+
+        byte[] encoding = board.getCore().encode();
+        out.writeByte(encoding.length);
+        out.write(encoding);
+        writeMoves(out, board.getSolution());
+    }
+
+    /**
+     * Read a board.
+     *
+     * @param in The stream
+     * @param context The search context for the board
+     * @return The board
+     * @throws IOException If the stream can't be read or holds a move that is not valid
+     */
+
+    static Board readBoard(DataInputStream in, SearchContext context) throws IOException {
+
+        BoardCore core = BoardCore.decode(in.readNBytes(in.readUnsignedByte()));
+        try {
+
+            MovePath solution = MovePath.EMPTY;
+            for (int code : readMoves(in))
+                solution = solution.append(Move.forCode(code));
+            return new Board(core, solution, context);
+
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Received a board with a move that is not valid: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Write the moves that reach a board.
+     *
+     * @param out The stream
+     * @param moves The moves
+     * @throws IOException If the stream can't be written
+     */
+
+    static void writeMoves(DataOutputStream out, List<Move> moves) throws IOException {
+
+        out.writeShort(moves.size());
+        for (Move move : moves)
+            out.writeShort(move.getCode());
+    }
+
+    /**
+     * Read the moves that reach a board.
+     *
+     * @param in The stream
+     * @return The codes of the moves
+     * @throws IOException If the stream can't be read
+     */
+
+    static int[] readMoves(DataInputStream in) throws IOException {
+
+        int[] codes = new int[in.readUnsignedShort()];
+        for (int i = 0; i < codes.length; i++)
+            codes[i] = in.readUnsignedShort();
+
+        return codes;
+    }
+
+    /**
+     * Make the moves of a solution.
+     *
+     * @param initialBoard The initial deal
+     * @param codes The codes of the moves
+     * @return The board at the end
+     * @throws IOException If a move is not legal
+     */
+
+    static Board replay(Board initialBoard, int[] codes) throws IOException {
+
+        try {
+
+            Board board = initialBoard;
+            for (int code : codes)
+                board = board.applyMove(Move.forCode(code));
+            return board;
+
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            throw new IOException("Received moves that can't be made: " + ex.getMessage(), ex);
+        }
+    }
+}
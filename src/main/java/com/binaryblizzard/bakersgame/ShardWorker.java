@@ -0,0 +1,452 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * One shard of a search spread over several processes. Each board belongs to one shard, picked by a hash of its
+ * canonical form, and only that shard keeps it in its set of boards seen before and its queue, so the memory for the
+ * search is split between the shards. A worker runs a best first search over the boards it owns. The boards it makes
+ * that belong to another shard are batched up and sent to the coordinator, which passes them on.
+ * <p>
+ * Everything the coordinator sends is read and decoded by a separate thread into an inbox, so the worker never blocks
+ * the coordinator. When the worker has nothing left to expand it says how many boards it has received, and the coordinator
+ * ends the run once every worker is idle and has received every board sent to it.
+ */
+
+public class ShardWorker {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(ShardWorker.class.getName());
+
+    /** The number of boards to expand before taking in the boards sent from the other shards. */
+
+    private static final int EXPAND_BATCH = 64;
+
+    /** The most boards for another shard to collect before sending them, they are also sent after every EXPAND_BATCH. */
+
+    private static final int SEND_BATCH = 256;
+
+    /** The number of boards to expand between reports to the coordinator. */
+
+    private static final int CHECK_INTERVAL = 4096;
+
+    /** Put in the inbox when the coordinator ends the run. */
+
+    private static final Board STOP = new Board();
+
+    /** A board waiting in the queue. */
+
+    private static final class Node {
+
+        /** The board. */
+
+        private final Board board;
+
+        /** The score of the board. */
+
+        private final int score;
+
+        /** The order the board was queued in. */
+
+        private final long order;
+
+        /**
+         * Create a Node.
+         *
+         * @param board The board
+         * @param score The score of the board
+         * @param order The order the board was queued in
+         */
+
+        private Node(Board board, int score, long order) {
+
+            this.board = board;
+            this.score = score;
+            this.order = order;
+        }
+    }
+
+    /** The boards waiting to be sent to one shard. */
+
+    private static final class Batch {
+
+        /** The encoded boards. */
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /** The stream the boards are encoded through. */
+
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        /** The number of boards in the batch. */
+
+        private int count = 0;
+    }
+
+    /** The search context for the boards of this shard. */
+
+    private final SearchContext context;
+
+    /** The connection to the coordinator. */
+
+    private final Socket socket;
+
+    /** The stream from the coordinator. */
+
+    private final DataInputStream in;
+
+    /** The stream to the coordinator. */
+
+    private final DataOutputStream out;
+
+    /** The weights used to score the boards. */
+
+    private final BoardEvaluator evaluator = BoardEvaluator.BALANCED;
+
+    /** The boards received, and STOP at the end. */
+
+    private final LinkedBlockingQueue<Board> inbox = new LinkedBlockingQueue<>();
+
+    /** The boards owned by this shard that are waiting to be expanded. */
+
+    private final PriorityQueue<Node> queue = new PriorityQueue<>((a, b) -> (a.score != b.score) ? Integer.compare(b.score, a.score) : Long.compare(a.order, b.order));
+
+    /** The canonical forms of the boards owned by this shard that have been seen. */
+
+    private final Set<String> previousBoards = new HashSet<>();
+
+    /** The number of this shard. */
+
+    private final int shard;
+
+    /** The number of shards. */
+
+    private final int shards;
+
+    /** The boards waiting to be sent to each shard. */
+
+    private final Batch[] batches;
+
+    /** The length of the best solution known. */
+
+    private volatile int bestLength;
+
+    /** Set if reading from the coordinator failed. */
+
+    private volatile IOException readFailure = null;
+
+    /** The number of boards queued, for ordering boards with the same score. */
+
+    private long order = 0;
+
+    /** The number of boards expanded. */
+
+    private long nodes = 0;
+
+    /** The number of boards skipped because they were proved to be dead. */
+
+    private long deadlocked = 0;
+
+    /**
+     * Create a ShardWorker and wait for the coordinator to give it its shard.
+     *
+     * @param initialBoard The initial deal, the same one as the coordinator's
+     * @param context The search context for the boards of this shard
+     * @param socket The connection to the coordinator
+     * @throws IOException If the coordinator can't be read or has a different deal
+     */
+
+    public ShardWorker(Board initialBoard, SearchContext context, Socket socket) throws IOException {
+
+        this.context = context;
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        if (in.readByte() != ShardProtocol.HELLO)
+            throw new IOException("Expected a HELLO from the coordinator");
+        shard = in.readInt();
+        shards = in.readInt();
+        if (in.readInt() != initialBoard.getSignature().hashCode())
+            throw new IOException("The coordinator is solving a different deal");
+        bestLength = in.readInt();
+
+        batches = new Batch[shards];
+        for (int i = 0; i < shards; i++)
+            batches[i] = new Batch();
+        LOG.info("Running shard " + shard + " of " + shards);
+    }
+
+    /**
+     * Search the boards of this shard until the coordinator ends the run.
+     *
+     * @throws IOException If the coordinator can't be read or written
+     */
+
+    public void run() throws IOException {
+
+        Thread reader = new Thread(this::readMessages, "Shard " + shard + " reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long received = 0;
+        long reportedReceived = -1;
+        int uncounted = 0;
+        try {
+
+            while (true) {
+
+                // Tell the coordinator when there is nothing left to do, after every board made has been sent
+
+                if (queue.isEmpty()) {
+                    flushBatches();
+                    if (received != reportedReceived) {
+                        out.writeByte(ShardProtocol.IDLE);
+                        out.writeLong(received);
+                        reportedReceived = received;
+                    }
+                    out.flush();
+                }
+
+                // Take in the boards sent from the other shards, waiting for them if there is nothing else to do
+
+                Board board = queue.isEmpty() ? inbox.poll(1, TimeUnit.SECONDS) : inbox.poll();
+                while (board != null) {
+                    if (board == STOP)
+                        return;
+                    received++;
+                    accept(board);
+                    board = inbox.poll();
+                }
+
+                if (readFailure != null)
+                    throw readFailure;
+
+                for (int i = 0; (i < EXPAND_BATCH) && ! queue.isEmpty(); i++) {
+                    expand(queue.poll().board);
+                    if (++uncounted == CHECK_INTERVAL) {
+                        out.writeByte(ShardProtocol.NODES);
+                        out.writeInt(uncounted);
+                        uncounted = 0;
+                    }
+                }
+
+                // Don't keep the other shards waiting for their boards
+
+                flushBatches();
+                out.flush();
+            }
+
+        } catch (InterruptedException ex) {
+            throw new IOException("Interrupted", ex);
+
+        } finally {
+
+            // The totals are the last thing the coordinator reads
+
+            if (readFailure == null) {
+                if (uncounted > 0) {
+                    out.writeByte(ShardProtocol.NODES);
+                    out.writeInt(uncounted);
+                }
+                out.writeByte(ShardProtocol.STATS);
+                out.writeLong(nodes);
+                out.writeLong(previousBoards.size());
+                out.writeLong(deadlocked);
+                out.flush();
+            }
+
+            LOG.info("Shard " + shard + " expanded " + nodes + " boards, owned " + previousBoards.size() + " and skipped " + deadlocked + " dead");
+            socket.close();
+        }
+    }
+
+    /**
+     * Make the moves of a board and pass on the boards they make.
+     *
+     * @param board The board
+     * @throws IOException If a board can't be sent
+     */
+
+    private void expand(Board board) throws IOException {
+
+        // The bound may have dropped since the board was queued
+
+        if (! canBeatBest(board))
+            return;
+        nodes++;
+
+        for (Board nextBoard : board.getNextBoards()) {
+
+            if (nextBoard.gameIsWon()) {
+                if (nextBoard.getSolutionLength() < bestLength) {
+                    bestLength = nextBoard.getSolutionLength();
+                    out.writeByte(ShardProtocol.SOLUTION);
+                    ShardProtocol.writeMoves(out, nextBoard.getSolution());
+                    out.flush();
+                }
+
+            } else if (nextBoard.isDead())
+                deadlocked++;
+
+            else if (canBeatBest(nextBoard)) {
+
+                int owner = ShardProtocol.getShard(nextBoard.encodeCanonical(nextBoard.getCanonicalColumns()), shards);
+                if (owner == shard)
+                    accept(nextBoard);
+                else {
+                    Batch batch = batches[owner];
+                    ShardProtocol.writeBoard(batch.out, nextBoard);
+                    if (++batch.count == SEND_BATCH)
+                        sendBatch(owner);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue a board owned by this shard unless it was seen before or can't lead to a shorter solution.
+     *
+     * @param board The board
+     */
+
+    private void accept(Board board) {
+
+        if (canBeatBest(board) && previousBoards.add(new String(board.encodeCanonical(board.getCanonicalColumns()), StandardCharsets.ISO_8859_1)))
+            queue.add(new Node(board, evaluator.evaluate(board), order++));
+    }
+
+    /**
+     * Check if a board could still lead to a solution shorter than the best one. Every card that is not on the
+     * Foundation needs at least one more move.
+     *
+     * @param board The board to check
+     * @return true if the board is worth expanding
+     */
+
+    private boolean canBeatBest(Board board) {
+        return board.getSolutionLength() + Card.DECK_SIZE - board.getFoundationCount() < bestLength;
+    }
+
+    /**
+     * Send the boards waiting for a shard.
+     *
+     * @param owner The shard
+     * @throws IOException If the coordinator can't be written
+     */
+
+    private void sendBatch(int owner) throws IOException {
+
+        Batch batch = batches[owner];
+        out.writeByte(ShardProtocol.BOARDS);
+        out.writeInt(owner);
+        out.writeInt(batch.count);
+        out.writeInt(batch.bytes.size());
+        batch.bytes.writeTo(out);
+        batch.bytes.reset();
+        batch.count = 0;
+    }
+
+    /**
+     * Send the boards waiting for every shard.
+     *
+     * @throws IOException If the coordinator can't be written
+     */
+
+    private void flushBatches() throws IOException {
+
+        for (int owner = 0; owner < shards; owner++)
+            if (batches[owner].count > 0)
+                sendBatch(owner);
+    }
+
+    /**
+     * Read the messages from the coordinator until the run ends. This runs in its own thread.
+     */
+
+    private void readMessages() {
+
+        try {
+
+            while (true) {
+
+                int type = in.readByte();
+                if (type == ShardProtocol.BOARDS) {
+                    in.readInt();
+                    int count = in.readInt();
+                    in.readInt();
+                    for (int i = 0; i < count; i++)
+                        inbox.add(ShardProtocol.readBoard(in, context));
+
+                } else if (type == ShardProtocol.BOUND)
+                    bestLength = Math.min(bestLength, in.readInt());
+
+                else if (type == ShardProtocol.STOP) {
+                    inbox.add(STOP);
+                    return;
+
+                } else
+                    throw new IOException("Unexpected message " + type + " from the coordinator");
+            }
+
+        } catch (EOFException ex) {
+            readFailure = new IOException("The coordinator closed the connection", ex);
+        } catch (IOException ex) {
+            readFailure = ex;
+        }
+    }
+
+    /**
+     * Run a worker.
+     *
+     * @param args The host and port of the coordinator, optionally --seed &lt;seed&gt;, and the board file:
+     *             <pre>[--seed &lt;seed&gt;] &lt;host&gt; &lt;port&gt; &lt;boardfile&gt;</pre>
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            long seed = new SplittableRandom().nextLong();
+            int first = 0;
+            if ((args.length > 1) && args[0].equals("--seed")) {
+                seed = Long.parseLong(args[1]);
+                first = 2;
+            }
+
+            if (args.length - first != 3) {
+                System.err.println("usage: ShardWorker [--seed <seed>] <host> <port> <boardfile>");
+                System.exit(2);
+            }
+
+            Board initialBoard = new Board(args[first + 2]);
+            Socket socket = new Socket(args[first], Integer.parseInt(args[first + 1]));
+            new ShardWorker(initialBoard, new SearchContext(seed, new MoveHistory()), socket).run();
+            System.exit(0);
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A benchmark of the sharded search on this host. For each deal it starts a coordinator, launches the workers as
+ * separate processes connected to it over localhost, and runs the search up to the first solution, first with one
+ * worker and then with the given number. It checks that every solution wins the game, the benchmark fails if one
+ * doesn't or a run finds none, and it reports the time, the boards expanded and the solution length of each run.
+ */
+
+public class ShardedSearchBenchmark {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(ShardedSearchBenchmark.class.getName());
+
+    /** The time budget for each run in milliseconds. */
+
+    private static final long TIME_BUDGET = 120_000;
+
+    /** The seed the workers use. */
+
+    private static final long SEED = 1;
+
+    /**
+     * Run the sharded search on a deal.
+     *
+     * @param boardFile The file with the initial deal
+     * @param shards The number of workers
+     * @return true if it found a solution that wins the game
+     * @throws Exception If a worker can't be launched or the search fails
+     */
+
+    private static boolean runSearch(String boardFile, int shards) throws Exception {
+
+        Board initialBoard = new Board(boardFile);
+        BestSolution bestSolution = new BestSolution(1, TIME_BUDGET);
+        ShardCoordinator coordinator = new ShardCoordinator(initialBoard, shards, 0, bestSolution);
+
+        // Launch the workers with the same Java and class path as this
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> workers = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++)
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ShardWorker.class.getName(),
+                    "--seed", Long.toString(SEED + i), "localhost", Integer.toString(coordinator.getPort()), boardFile).inheritIO().start());
+
+        long start = System.nanoTime();
+        try {
+            coordinator.run();
+        } finally {
+            bestSolution.finish();
+            for (Process worker : workers)
+                if (! worker.waitFor(10, TimeUnit.SECONDS))
+                    worker.destroyForcibly();
+        }
+        long time = System.nanoTime() - start;
+
+        List<Move> solution = bestSolution.getSolution();
+        Board board = initialBoard;
+        if (solution != null)
+            for (Move move : solution)
+                board = board.applyMove(move);
+        boolean won = (solution != null) && board.gameIsWon();
+
+        LOG.info(String.format("%s, %d workers: %s moves, %d boards expanded, %d ms", boardFile, shards,
+                (solution == null) ? "no" : Integer.toString(solution.size()), coordinator.getNodes(), time / 1_000_000));
+        return won;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of workers followed by the board files
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            int shards = Integer.parseInt(args[0]);
+            int failures = 0;
+            for (int i = 1; i < args.length; i++)
+                for (int count : new int[] {1, shards})
+                    if (! runSearch(args[i], count)) {
+                        failures++;
+                        LOG.severe(args[i] + ": no winning solution with " + count + " workers");
+                    }
+
+            System.exit((failures == 0) ? 0 : 1);
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A file of solutions in a compact binary form, one for each deal of a DealFile in the same order. The file is a header
+ * of a magic number, a version and the number of bits in a move, then the solutions one after another. A solution is
+ * its number of moves in two bytes, NO_SOLUTION for a deal that wasn't solved, then the moves in MOVE_BITS each, packed
+ * from the high bit down and padded out to a whole byte.
+ * <p>
+ * A move is its code (see Move.getCode()), which only uses MOVE_BITS: 6 for the card, 4 for where it came from and 4 for
+ * where it went. The moves can be read without the deal, a solution of 100 moves takes 177 bytes where the text form
+ * takes about 4 KB. The solutions are read in order through a buffer. SolutionFileWriter writes these.
+ */
+
+public class SolutionFile implements Closeable {
+
+    /** The magic number at the start of a solution file. */
+
+    static final int MAGIC = 0x42475346;
+
+    /** The version of the format. */
+
+    static final int VERSION = 1;
+
+    /** The size of the header. */
+
+    static final int HEADER_SIZE = 12;
+
+    /** The number of bits in a move. */
+
+    static final int MOVE_BITS = 14;
+
+    /** The move count of a deal that wasn't solved. */
+
+    static final int NO_SOLUTION = 0xFFFF;
+
+    /** The size of the buffer, big enough for the longest solution there can be. */
+
+    static final int BUFFER_SIZE = 2 + ((NO_SOLUTION - 1) * MOVE_BITS + 7) / 8;
+
+    /** The file channel. */
+
+    private final FileChannel channel;
+
+    /** The bytes read from the file and not yet used. */
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /** True when the end of the file has been read into the buffer. */
+
+    private boolean endOfFile = false;
+
+    /**
+     * Open a solution file.
+     *
+     * @param path The file
+     * @throws IOException If the file can't be read or is not a solution file
+     */
+
+    public SolutionFile(Path path) throws IOException {
+
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer.limit(0);
+        try {
+
+            if (! fill(HEADER_SIZE))
+                throw new IOException(path + " is not a solution file");
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION) || (buffer.getInt() != MOVE_BITS))
+                throw new IOException(path + " is not a solution file of version " + VERSION);
+
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Check if there are solutions left to read.
+     *
+     * @return true if next() has another solution
+     * @throws IOException If the file can't be read
+     */
+
+    public boolean hasNext() throws IOException {
+        return fill(2);
+    }
+
+    /**
+     * Read the next solution.
+     *
+     * @return The moves of the solution, null if the deal wasn't solved
+     * @throws IOException If the file can't be read, ends part way through a solution or has a move that is not valid
+     * @throws NoSuchElementException If every solution has been read
+     */
+
+    public List<Move> next() throws IOException, NoSuchElementException {
+
+        if (! fill(2))
+            throw new NoSuchElementException("Read every solution");
+
+        int moves = buffer.getShort() & 0xFFFF;
+        if (moves == NO_SOLUTION)
+            return null;
+        if (! fill(getPackedSize(moves)))
+            throw new IOException("The file ends part way through a solution of " + moves + " moves");
+
+        List<Move> solution = new ArrayList<>(moves);
+        long bits = 0;
+        int bitCount = 0;
+        try {
+
+            for (int i = 0; i < moves; i++) {
+                while (bitCount < MOVE_BITS) {
+                    bits = (bits << 8) | (buffer.get() & 0xFF);
+                    bitCount += 8;
+                }
+                bitCount -= MOVE_BITS;
+                solution.add(Move.forCode((int) (bits >>> bitCount) & ((1 << MOVE_BITS) - 1)));
+            }
+
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Solution with a move that is not valid: " + ex.getMessage(), ex);
+        }
+
+        return solution;
+    }
+
+    /** @see Closeable#close() */
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Make sure there are enough bytes in the buffer, reading more from the file if there aren't.
+     *
+     * @param bytes The number of bytes needed
+     * @return false if the file ends first
+     * @throws IOException If the file can't be read
+     */
+
+    private boolean fill(int bytes) throws IOException {
+
+        if (buffer.remaining() >= bytes)
+            return true;
+
+        buffer.compact();
+        while (! endOfFile && (buffer.position() < bytes))
+            endOfFile = channel.read(buffer) < 0;
+        buffer.flip();
+
+        return buffer.remaining() >= bytes;
+    }
+
+    /**
+     * Get the number of bytes the moves of a solution are packed into.
+     *
+     * @param moves The number of moves
+     * @return The number of bytes
+     */
+
+    static int getPackedSize(int moves) {
+        return (moves * MOVE_BITS + 7) / 8;
+    }
+
+    /**
+     * Pack a solution.
+     *
+     * @param solution The moves of the solution, null if the deal wasn't solved
+     * @param buffer The buffer to put the packed solution in at its position
+     * @throws IllegalArgumentException If the solution has too many moves
+     */
+
+    static void pack(List<Move> solution, ByteBuffer buffer) throws IllegalArgumentException {
+
+        if (solution == null) {
+            buffer.putShort((short) NO_SOLUTION);
+            return;
+        }
+
+        if (solution.size() >= NO_SOLUTION)
+            throw new IllegalArgumentException("Solution of " + solution.size() + " moves is too long");
+
+        buffer.putShort((short) solution.size());
+        long bits = 0;
+        int bitCount = 0;
+        for (Move move : solution) {
+            bits = (bits << MOVE_BITS) | move.getCode();
+            bitCount += MOVE_BITS;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                buffer.put((byte) (bits >>> bitCount));
+            }
+        }
+
+        if (bitCount > 0)
+            buffer.put((byte) (bits << (8 - bitCount)));
+    }
+}
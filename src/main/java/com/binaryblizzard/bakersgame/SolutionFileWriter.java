@@ -0,0 +1,95 @@
+package com.binaryblizzard.bakersgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes a file of solutions in the compact binary form read by SolutionFile. The solutions are packed into a direct
+ * buffer and written to the channel when the next one might not fit.
+ */
+
+public class SolutionFileWriter implements Closeable {
+
+    /** The file channel. */
+
+    private final FileChannel channel;
+
+    /** The solutions waiting to be written. */
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(SolutionFile.BUFFER_SIZE);
+
+    /** The number of solutions written, including the deals that weren't solved. */
+
+    private long count = 0;
+
+    /**
+     * Create a SolutionFileWriter, replacing the file if it exists.
+     *
+     * @param path The file
+     * @throws IOException If the file can't be written
+     */
+
+    public SolutionFileWriter(Path path) throws IOException {
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer.putInt(SolutionFile.MAGIC).putInt(SolutionFile.VERSION).putInt(SolutionFile.MOVE_BITS);
+    }
+
+    /**
+     * Write a solution.
+     *
+     * @param solution The moves of the solution, null if the deal wasn't solved
+     * @throws IOException If the file can't be written
+     * @throws IllegalArgumentException If the solution has too many moves
+     */
+
+    public void write(List<Move> solution) throws IOException, IllegalArgumentException {
+
+        if (buffer.remaining() < 2 + SolutionFile.getPackedSize((solution == null) ? 0 : solution.size()))
+            flush();
+
+        SolutionFile.pack(solution, buffer);
+        count++;
+    }
+
+    /**
+     * Get the number of solutions written.
+     *
+     * @return The number of solutions
+     */
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Write the buffered solutions to the file.
+     *
+     * @throws IOException If the file can't be written
+     */
+
+    private void flush() throws IOException {
+
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /** @see Closeable#close() */
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Shortens a solution after it is found. The searches often take detours, e.g. parking a card in the Reserve and moving
+ * it back, that a short look at the boards along the solution can take out. Three things are tried over and over until
+ * none of them helps:
+ * <ul>
+ * <li>Loops: when a board comes up twice along the solution the moves between are dropped.</li>
+ * <li>Merges: a card that is moved twice is moved once instead, straight from where it started to where it ended up,
+ * or not at all if it ended up where it started, as long as the rest of the solution still works.</li>
+ * <li>Shortcuts: a breadth first search of a few moves from each board looks for a board further along the solution
+ * than the number of moves it took to reach it.</li>
+ * </ul>
+ * Every change is checked by replaying the solution, so what comes out always wins the game.
+ */
+
+public class SolutionShortener {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(SolutionShortener.class.getName());
+
+    /** The depth of the breadth first search for shortcuts if none is given. */
+
+    public static final int DEFAULT_DEPTH = 3;
+
+    /** The context of the boards along the solutions. */
+
+    private final SearchContext context;
+
+    /** The initial board the solutions start from. */
+
+    private final Board initialBoard;
+
+    /** The most moves in a shortcut, 0 for none. */
+
+    private final int depth;
+
+    /**
+     * Create a SolutionShortener.
+     *
+     * @param initialBoard The initial board the solutions start from
+     * @param depth The most moves in a shortcut, 0 to only remove loops and merge moves
+     */
+
+    public SolutionShortener(Board initialBoard, int depth) {
+
+        // The boards along a solution can't be dead so don't spend time checking them
+
+        context = new SearchContext(0, new MoveHistory());
+        context.setDetectingDeadlocks(false);
+        this.initialBoard = new Board(initialBoard, context);
+        this.depth = depth;
+    }
+
+    /**
+     * Shorten a solution.
+     *
+     * @param solution The moves that win the game from the initial board
+     * @return A solution that is no longer, the given one if it doesn't win the game
+     */
+
+    public List<Move> shorten(List<Move> solution) {
+
+        if (replay(initialBoard, solution, 0) == null) {
+            LOG.warning("Not shortening a solution that does not win the game");
+            return solution;
+        }
+
+        List<Move> moves = new ArrayList<>(solution);
+        int length;
+        do {
+            length = moves.size();
+            removeLoops(moves);
+            mergeMoves(moves);
+            takeShortcuts(moves);
+        } while (moves.size() < length);
+
+        if (replay(initialBoard, moves, 0) == null)
+            throw new IllegalStateException("Shortened solution does not win the game: " + moves);
+
+        return moves;
+    }
+
+    /**
+     * Get the boards along a solution.
+     *
+     * @param moves The moves of the solution
+     * @return The initial board followed by the board after each move
+     */
+
+    private List<Board> getBoards(List<Move> moves) {
+
+        List<Board> boards = new ArrayList<>(moves.size() + 1);
+        Board board = initialBoard;
+        boards.add(board);
+        for (Move move : moves) {
+            board = board.applyMove(move);
+            boards.add(board);
+        }
+
+        return boards;
+    }
+
+    /**
+     * Drop the moves between two visits to the same board.
+     *
+     * @param moves The moves of the solution, changed in place
+     */
+
+    private void removeLoops(List<Move> moves) {
+
+        List<Board> boards = getBoards(moves);
+        Map<String, Integer> firstSeen = new HashMap<>();
+        List<Move> shortened = new ArrayList<>(moves.size());
+        for (int i = 0; i < boards.size(); i++) {
+
+            // Going back to a board seen before undoes everything since
+
+            Integer seen = firstSeen.putIfAbsent(boards.get(i).getSignature(), shortened.size());
+            if (seen != null)
+                shortened.subList(seen, shortened.size()).clear();
+            if (i < moves.size())
+                shortened.add(moves.get(i));
+        }
+
+        moves.clear();
+        moves.addAll(shortened);
+    }
+
+    /**
+     * Merge the moves of each card that is moved twice in a row, i.e. with no other move of the same card between.
+     *
+     * @param moves The moves of the solution, changed in place
+     */
+
+    private void mergeMoves(List<Move> moves) {
+
+        List<Board> boards = getBoards(moves);
+        for (int i = 0; i < moves.size(); i++) {
+
+            Move first = moves.get(i);
+            int j = i + 1;
+            while ((j < moves.size()) && (moves.get(j).getCard().getIndex() != first.getCard().getIndex()))
+                j++;
+            if (j == moves.size())
+                continue;
+
+            // Drop both moves if the card went back where it came from, otherwise try the merged move where either of
+            // the two moves was
+
+            Move second = moves.get(j);
+            List<List<Move>> candidates = new ArrayList<>(2);
+            if (first.getFrom() == second.getTo())
+                candidates.add(without(moves, i, j, -1, null));
+            else {
+                Move merged = new Move(first.getFrom(), second.getTo(), first.getCard());
+                candidates.add(without(moves, i, j, j, merged));
+                candidates.add(without(moves, i, j, i, merged));
+            }
+
+            for (List<Move> candidate : candidates)
+                if (replay(boards.get(i), candidate, i) != null) {
+                    moves.clear();
+                    moves.addAll(candidate);
+                    boards = getBoards(moves);
+                    i--;
+                    break;
+                }
+        }
+    }
+
+    /**
+     * Copy a solution without two of its moves, optionally putting another move in place of one of them.
+     *
+     * @param moves The moves of the solution
+     * @param i The first move to leave out
+     * @param j The second move to leave out
+     * @param at The position of the move to put in, -1 for none
+     * @param move The move to put in
+     * @return The new moves
+     */
+
+    private static List<Move> without(List<Move> moves, int i, int j, int at, Move move) {
+
+        List<Move> copy = new ArrayList<>(moves.size());
+        for (int k = 0; k < moves.size(); k++)
+            if (k == at)
+                copy.add(move);
+            else if ((k != i) && (k != j))
+                copy.add(moves.get(k));
+
+        return copy;
+    }
+
+    /**
+     * Replace stretches of the solution with shorter ways between the same boards.
+     *
+     * @param moves The moves of the solution, changed in place
+     */
+
+    private void takeShortcuts(List<Move> moves) {
+
+        if (depth == 0)
+            return;
+
+        List<Board> boards = getBoards(moves);
+        Map<String, Integer> lastSeen = new HashMap<>();
+        for (int i = 0; i < boards.size(); i++)
+            lastSeen.put(boards.get(i).getSignature(), i);
+
+        for (int i = 0; i < boards.size(); i++) {
+
+            // Search out from the board a level at a time, keeping the board that is furthest along the solution for
+            // the moves it took
+
+            Board start = boards.get(i);
+            Board best = null;
+            int bestGain = 0;
+            Set<String> searched = new HashSet<>();
+            searched.add(start.getSignature());
+            List<Board> level = List.of(new Board(start, context));
+            for (int moveCount = 1; (moveCount <= depth) && ! level.isEmpty(); moveCount++) {
+
+                List<Board> nextLevel = new ArrayList<>();
+                for (Board board : level)
+                    for (Board nextBoard : board.getNextBoards()) {
+                        String signature = nextBoard.getSignature();
+                        if (! searched.add(signature))
+                            continue;
+
+                        Integer index = lastSeen.get(signature);
+                        if ((index != null) && (index - i - moveCount > bestGain)) {
+                            best = nextBoard;
+                            bestGain = index - i - moveCount;
+                        }
+                        nextLevel.add(nextBoard);
+                    }
+
+                level = nextLevel;
+            }
+
+            if (best == null)
+                continue;
+
+            // Splice the shortcut in and start again from the board after it
+
+            List<Move> shortcut = best.getSolution().subList(i, best.getSolutionLength());
+            int end = lastSeen.get(best.getSignature());
+            List<Move> shortened = new ArrayList<>(moves.subList(0, i));
+            shortened.addAll(shortcut);
+            shortened.addAll(moves.subList(end, moves.size()));
+            moves.clear();
+            moves.addAll(shortened);
+
+            boards = getBoards(moves);
+            lastSeen.clear();
+            for (int k = 0; k < boards.size(); k++)
+                lastSeen.put(boards.get(k).getSignature(), k);
+        }
+    }
+
+    /**
+     * Replay the end of a solution.
+     *
+     * @param board The board to start from
+     * @param moves The moves of the solution
+     * @param from The first move to replay
+     * @return The won board at the end or null if a move is illegal or the game is not won
+     */
+
+    private static Board replay(Board board, List<Move> moves, int from) {
+
+        try {
+
+            for (int i = from; i < moves.size(); i++)
+                board = board.applyMove(moves.get(i));
+
+        } catch (IllegalStateException ex) {
+            return null;
+        }
+
+        return board.gameIsWon() ? board : null;
+    }
+}
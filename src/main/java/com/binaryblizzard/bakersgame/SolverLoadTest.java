@@ -0,0 +1,281 @@
+package com.binaryblizzard.bakersgame;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Loads a SolverService on this host with requests from a number of clients at once and reports the throughput, the
+ * spread of the latencies and the answers it got. The deals are taken from a deal file or made from a range of deal
+ * numbers and sent in turn, so when there are more requests than deals the later ones repeat deals and should be
+ * answered from the cache. Every solution is replayed on its deal and the run fails if one doesn't win.
+ */
+
+public class SolverLoadTest {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(SolverLoadTest.class.getName());
+
+    /** What one request got. */
+
+    private static final class Result {
+
+        /** The time from sending the request to reading the answer in nanoseconds. */
+
+        private final long time;
+
+        /** The HTTP status, 0 if the request failed. */
+
+        private final int status;
+
+        /** true if the answer came from the cache. */
+
+        private final boolean cached;
+
+        /** true if a solution was returned. */
+
+        private final boolean solved;
+
+        /**
+         * Create a Result.
+         *
+         * @param time The time from sending the request to reading the answer in nanoseconds
+         * @param status The HTTP status, 0 if the request failed
+         * @param cached true if the answer came from the cache
+         * @param solved true if a solution was returned
+         */
+
+        private Result(long time, int status, boolean cached, boolean solved) {
+
+            this.time = time;
+            this.status = status;
+            this.cached = cached;
+            this.solved = solved;
+        }
+    }
+
+    /** The HTTP client shared by the requests. */
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10)).build();
+
+    /** The address of the solve requests. */
+
+    private final URI solveUri;
+
+    /** The deals sent. */
+
+    private final List<Board> deals;
+
+    /** The JSON of the deals. */
+
+    private final List<String> dealJson = new ArrayList<>();
+
+    /**
+     * Create a SolverLoadTest.
+     *
+     * @param port The port of the service
+     * @param deadline The deadline of each request in milliseconds, 0 for the service's default
+     * @param deals The deals to send
+     */
+
+    public SolverLoadTest(int port, long deadline, List<Board> deals) {
+
+        solveUri = URI.create("http://localhost:" + port + "/solve" + ((deadline > 0) ? "?deadline=" + deadline : ""));
+        this.deals = deals;
+        for (Board deal : deals)
+            dealJson.add(deal.toJson());
+    }
+
+    /**
+     * Send one request and check the answer.
+     *
+     * @param index The number of the request, which picks the deal
+     * @return What the request got
+     */
+
+    private Result send(int index) {
+
+        int deal = index % deals.size();
+        HttpRequest request = HttpRequest.newBuilder(solveUri).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(dealJson.get(deal))).build();
+
+        long start = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (Exception ex) {
+            LOG.warning("Request " + index + " failed: " + ex);
+            return new Result(System.nanoTime() - start, 0, false, false);
+        }
+        long time = System.nanoTime() - start;
+
+        if (response.statusCode() != 200)
+            return new Result(time, response.statusCode(), false, false);
+
+        JsonObject answer = JsonParser.parseString(response.body()).getAsJsonObject();
+        boolean solved = answer.get("solved").getAsBoolean();
+        if (solved)
+            check(deals.get(deal), answer);
+
+        return new Result(time, 200, answer.get("cached").getAsBoolean(), solved);
+    }
+
+    /**
+     * Check that a solution wins its deal.
+     *
+     * @param deal The deal
+     * @param answer The answer with the solution
+     * @throws IllegalStateException If the solution doesn't win the deal
+     */
+
+    private static void check(Board deal, JsonObject answer) throws IllegalStateException {
+
+        Board board = deal;
+        for (JsonElement element : answer.getAsJsonArray("moves")) {
+            JsonObject move = element.getAsJsonObject();
+            board = board.applyMove(new Move(CardPosition.parse(move.get("from").getAsString()),
+                    CardPosition.parse(move.get("to").getAsString()), new Card(move.get("card").getAsString())));
+        }
+
+        if (! board.gameIsWon())
+            throw new IllegalStateException("A solution doesn't win its deal: " + answer);
+    }
+
+    /**
+     * Send the requests and report what they got.
+     *
+     * @param requests The number of requests
+     * @param concurrency The number of requests in flight at once
+     * @throws Exception If a request can't be made or a solution is wrong
+     */
+
+    private void run(int requests, int concurrency) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        AtomicInteger next = new AtomicInteger();
+        List<Future<List<Result>>> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+
+            // Each client sends its next request as soon as it has the answer to the last one
+
+            for (int i = 0; i < concurrency; i++)
+                clients.add(executor.submit(() -> {
+                    List<Result> results = new ArrayList<>();
+                    for (int index = next.getAndIncrement(); index < requests; index = next.getAndIncrement())
+                        results.add(send(index));
+                    return results;
+                }));
+
+            List<Result> results = new ArrayList<>();
+            for (Future<List<Result>> future : clients)
+                results.addAll(future.get());
+            long elapsed = System.nanoTime() - start;
+
+            long[] times = new long[results.size()];
+            long[] cachedTimes = new long[results.size()];
+            int cached = 0;
+            int solved = 0;
+            Map<Integer, Integer> statuses = new TreeMap<>();
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                times[i] = result.time;
+                statuses.merge(result.status, 1, Integer::sum);
+                if (result.cached)
+                    cachedTimes[cached++] = result.time;
+                if (result.solved)
+                    solved++;
+            }
+
+            LOG.info(String.format("%d requests from %d clients in %d ms, %.1f requests a second", results.size(), concurrency,
+                    elapsed / 1_000_000, results.size() * 1e9 / elapsed));
+            LOG.info("Statuses: " + statuses + ", " + solved + " solved, " + cached + " from the cache, every solution wins");
+            LOG.info("Latency in ms: " + Percentiles.describe(times, 1_000_000));
+            LOG.info("Latency from the cache in us: " + Percentiles.describe(Arrays.copyOf(cachedTimes, cached), 1_000));
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Load a SolverService.
+     *
+     * @param args The options followed by a deal file or --deals and a range of deal numbers:
+     *             <pre>[--port &lt;port&gt;] [--requests &lt;count&gt;] [--concurrency &lt;count&gt;] [--deadline &lt;ms&gt;] &lt;dealfile&gt;|--deals &lt;first&gt; &lt;count&gt;</pre>
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            int port = SolverService.DEFAULT_PORT;
+            int requests = 1000;
+            int concurrency = 16;
+            long deadline = 0;
+            String dealPath = null;
+            long firstDeal = 0;
+            long count = -1;
+            for (int i = 0; i < args.length; i++)
+                if (args[i].equals("--port"))
+                    port = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--requests"))
+                    requests = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--concurrency"))
+                    concurrency = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--deadline"))
+                    deadline = Long.parseLong(args[++i]);
+                else if (args[i].equals("--deals")) {
+                    firstDeal = Long.parseLong(args[++i]);
+                    count = Long.parseLong(args[++i]);
+                } else
+                    dealPath = args[i];
+
+            if ((dealPath == null) == (count < 0)) {
+                System.err.println("usage: SolverLoadTest [--port <port>] [--requests <count>] [--concurrency <count>] [--deadline <ms>] <dealfile>|--deals <first> <count>");
+                System.exit(2);
+            }
+
+            List<Board> deals = new ArrayList<>();
+            if (dealPath != null)
+                try (DealFile dealFile = new DealFile(Paths.get(dealPath))) {
+                    while (dealFile.hasNext())
+                        deals.add(dealFile.next());
+                }
+            else
+                DealGenerator.deals(firstDeal, count).forEach(deals::add);
+
+            if (deals.isEmpty())
+                throw new IllegalArgumentException("No deals to send");
+
+            new SolverLoadTest(port, deadline, deals).run(requests, concurrency);
+            System.exit(0);
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
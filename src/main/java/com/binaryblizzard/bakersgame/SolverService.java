@@ -0,0 +1,527 @@
+package com.binaryblizzard.bakersgame;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A solver that runs as a local HTTP service, so other programs can have deals solved without starting a JVM for each
+ * one. POST /solve takes a board in the JSON form of the board files and returns a solution, with an optional deadline
+ * in milliseconds as the query parameter deadline. GET /stats returns the counts of what the service has done.
+ * <p>
+ * The requests are handled on virtual threads when the JVM has them, found by reflection so this still runs on Java 17
+ * with a cached thread pool instead, since a request spends nearly all its time waiting. The searches themselves run on
+ * a fixed pool with a thread for each processor and a bounded queue, and a request that finds the queue full is turned
+ * away straight away rather than left to wait. Each search gets what is left of its request's deadline.
+ * <p>
+ * Solutions are cached by the canonical form of the deal with their columns numbered in the canonical order, so a deal
+ * seen before, even with its columns in another order, is answered from the cache without a search. A deal that wasn't
+ * solved is cached too, with the deadline of the request it was searched for, and a request for it with no longer a
+ * deadline is told so straight away rather than searching it again for nothing.
+ */
+
+public class SolverService {
+
+    /** The logger for this class. */
+
+    private static final Logger LOG = Logger.getLogger(SolverService.class.getName());
+
+    /** The port the service listens on if none is given. */
+
+    public static final int DEFAULT_PORT = 8077;
+
+    /** The deadline of a request that doesn't give one, in milliseconds. */
+
+    private static final long DEFAULT_DEADLINE = 10_000;
+
+    /** The longest deadline a request may have, in milliseconds. */
+
+    private static final long MAX_DEADLINE = 600_000;
+
+    /** The time on top of the deadline for shortening the solution and answering, in milliseconds. */
+
+    private static final long GRACE_TIME = 2_000;
+
+    /** The most bytes in a request, a board is well under 1 KB. */
+
+    private static final int MAX_REQUEST_BYTES = 1 << 16;
+
+    /** The number of searches that may wait for each search thread. */
+
+    private static final int QUEUE_PER_THREAD = 16;
+
+    /** The most solutions cached. */
+
+    private static final int CACHE_SIZE = 100_000;
+
+    /** The seed of every search, so the same deal always gets the same answer. */
+
+    private static final long SEED = 1;
+
+    /** What is known about a deal seen before. */
+
+    private static final class CacheEntry {
+
+        /** The codes of the moves of the solution with the columns in the canonical order, null if none was found. */
+
+        private final int[] codes;
+
+        /** The deadline of the request the deal was searched for in milliseconds. */
+
+        private final long deadline;
+
+        /**
+         * Create a CacheEntry.
+         *
+         * @param codes The codes of the moves of the solution, null if none was found
+         * @param deadline The deadline of the request the deal was searched for in milliseconds
+         */
+
+        private CacheEntry(int[] codes, long deadline) {
+
+            this.codes = codes;
+            this.deadline = deadline;
+        }
+    }
+
+    /** The HTTP server. */
+
+    private final HttpServer server;
+
+    /** Runs the request handlers. */
+
+    private final ExecutorService requestExecutor;
+
+    /** Runs the searches. */
+
+    private final ThreadPoolExecutor solverPool;
+
+    /** What is known about the deals seen before by their canonical form, the least recently used is dropped first. */
+
+    private final Map<String, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /** The deadline of a request that doesn't give one, in milliseconds. */
+
+    private final long defaultDeadline;
+
+    /** The number of requests. */
+
+    private final AtomicLong requests = new AtomicLong();
+
+    /** The number of requests answered from the cache. */
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /** The number of searches that found a solution. */
+
+    private final AtomicLong solved = new AtomicLong();
+
+    /** The number of searches that found no solution before the deadline. */
+
+    private final AtomicLong unsolved = new AtomicLong();
+
+    /** The number of requests turned away because the search queue was full. */
+
+    private final AtomicLong busy = new AtomicLong();
+
+    /**
+     * Create a SolverService listening on localhost. It doesn't answer until it is started.
+     *
+     * @param port The port to listen on, 0 for any free port
+     * @param solverThreads The number of searches to run at once
+     * @param defaultDeadline The deadline of a request that doesn't give one, in milliseconds
+     * @throws IOException If the port can't be listened on
+     */
+
+    public SolverService(int port, int solverThreads, long defaultDeadline) throws IOException {
+
+        this.defaultDeadline = defaultDeadline;
+        solverPool = new ThreadPoolExecutor(solverThreads, solverThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(solverThreads * QUEUE_PER_THREAD));
+        requestExecutor = newRequestExecutor();
+
+        // Without this the server holds back the body of each response until the headers are acknowledged, which adds
+        // 40 ms to every answer on most systems. It is read once, when the first server is made
+
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Make the executor for the request handlers, with a virtual thread for each request if the JVM has them.
+     *
+     * @return The executor
+     */
+
+    private static ExecutorService newRequestExecutor() {
+
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            LOG.info("Handling requests on virtual threads");
+            return executor;
+
+        } catch (ReflectiveOperationException ex) {
+            LOG.info("Virtual threads are not available, handling requests on a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Start answering requests.
+     */
+
+    public void start() {
+
+        server.start();
+        LOG.info("Listening on " + server.getAddress() + " with " + solverPool.getCorePoolSize() + " search threads");
+    }
+
+    /**
+     * Stop answering requests and stop the searches.
+     */
+
+    public void stop() {
+
+        server.stop(0);
+        solverPool.shutdownNow();
+        requestExecutor.shutdownNow();
+    }
+
+    /**
+     * Get the port the service listens on.
+     *
+     * @return The port
+     */
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Answer a request to solve a deal.
+     *
+     * @param exchange The request and its response
+     */
+
+    private void handleSolve(HttpExchange exchange) {
+
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+
+            if (! exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "Use POST with a board");
+                return;
+            }
+
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_REQUEST_BYTES + 1);
+            if (body.length > MAX_REQUEST_BYTES) {
+                sendError(exchange, 413, "The request is too big for a board");
+                return;
+            }
+
+            long deadline;
+            Board board;
+            try {
+                deadline = getDeadline(exchange.getRequestURI().getRawQuery());
+                board = Board.fromJson(new String(body, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException ex) {
+                sendError(exchange, 400, ex.getMessage());
+                return;
+            }
+
+            // Answer from the cache if the deal was solved before, or a search for a request with as long a deadline failed
+
+            int[] canonicalColumns = board.getCanonicalColumns();
+            String key = new String(board.encodeCanonical(canonicalColumns), StandardCharsets.ISO_8859_1);
+            CacheEntry entry;
+            synchronized (cache) {
+                entry = cache.get(key);
+            }
+
+            if ((entry != null) && ((entry.codes != null) || (deadline <= entry.deadline))) {
+                cacheHits.incrementAndGet();
+                List<Move> solution = null;
+                if (entry.codes != null) {
+                    solution = new ArrayList<>(entry.codes.length);
+                    for (int code : entry.codes)
+                        solution.add(PositionStore.fromCanonicalCode(code, canonicalColumns));
+                }
+                sendSolution(exchange, solution, true, start);
+                return;
+            }
+
+            // Otherwise queue a search, it gets whatever is left of the deadline when it starts
+
+            long end = System.currentTimeMillis() + deadline;
+            boolean[] started = new boolean[1];
+            Future<List<Move>> future;
+            try {
+                future = solverPool.submit(() -> solve(board, end, started));
+            } catch (RejectedExecutionException ex) {
+                busy.incrementAndGet();
+                sendError(exchange, 503, "Every search thread is busy, try again later");
+                return;
+            }
+
+            List<Move> solution;
+            try {
+                solution = future.get(deadline + GRACE_TIME, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                future.cancel(true);
+                sendError(exchange, 504, "The search did not finish in time");
+                return;
+            } catch (ExecutionException ex) {
+                LOG.log(Level.WARNING, "A search failed", ex.getCause());
+                sendError(exchange, 500, "The search failed: " + ex.getCause());
+                return;
+            }
+
+            int[] codes = null;
+            if (solution != null) {
+                solved.incrementAndGet();
+                codes = new int[solution.size()];
+                for (int i = 0; i < codes.length; i++)
+                    codes[i] = PositionStore.toCanonicalCode(solution.get(i), canonicalColumns);
+            } else
+                unsolved.incrementAndGet();
+
+            // A search that waited in the queue until the deadline passed never ran, so there is nothing to cache
+
+            if ((solution != null) || started[0])
+                synchronized (cache) {
+                    cache.put(key, new CacheEntry(codes, deadline));
+                }
+
+            sendSolution(exchange, solution, false, start);
+
+        } catch (IOException ex) {
+            LOG.warning("Failed to answer a request: " + ex);
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Answer a request for the counts of what the service has done.
+     *
+     * @param exchange The request and its response
+     */
+
+    private void handleStats(HttpExchange exchange) {
+
+        try {
+
+            JsonObject stats = new JsonObject();
+            stats.addProperty("requests", requests.get());
+            stats.addProperty("cacheHits", cacheHits.get());
+            stats.addProperty("solved", solved.get());
+            stats.addProperty("unsolved", unsolved.get());
+            stats.addProperty("busy", busy.get());
+            stats.addProperty("searching", solverPool.getActiveCount());
+            stats.addProperty("queued", solverPool.getQueue().size());
+            synchronized (cache) {
+                stats.addProperty("cached", cache.size());
+            }
+            send(exchange, 200, stats);
+
+        } catch (IOException ex) {
+            LOG.warning("Failed to answer a request: " + ex);
+
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Get the deadline of a request.
+     *
+     * @param query The query of the request, null if there is none
+     * @return The deadline in milliseconds
+     * @throws IllegalArgumentException If the deadline is not valid
+     */
+
+    private long getDeadline(String query) throws IllegalArgumentException {
+
+        if (query != null)
+            for (String parameter : query.split("&"))
+                if (parameter.startsWith("deadline=")) {
+                    long deadline = Long.parseLong(parameter.substring("deadline=".length()));
+                    if (deadline <= 0)
+                        throw new IllegalArgumentException("Invalid deadline: " + deadline);
+                    return Math.min(deadline, MAX_DEADLINE);
+                }
+
+        return defaultDeadline;
+    }
+
+    /**
+     * Search for a solution to a deal and shorten it. This runs on the search pool.
+     *
+     * @param board The deal
+     * @param end The time the request's deadline passes
+     * @param started Set to true if the search started before the deadline passed
+     * @return The solution or null if none was found in time
+     */
+
+    private List<Move> solve(Board board, long end, boolean[] started) {
+
+        long timeBudget = end - System.currentTimeMillis();
+        if (timeBudget <= 0)
+            return null;
+
+        started[0] = true;
+        BestSolution bestSolution = new BestSolution(1, timeBudget);
+        new DepthFirstSearch(board, new SearchContext(SEED, new MoveHistory()), bestSolution).run();
+        bestSolution.finish();
+
+        List<Move> solution = bestSolution.getSolution();
+        return (solution == null) ? null : new SolutionShortener(board, SolutionShortener.DEFAULT_DEPTH).shorten(solution);
+    }
+
+    /**
+     * Send the answer to a request to solve a deal. Each move is its card and the short forms of where it goes from and
+     * to, e.g. {"card": "7S", "from": "T3", "to": "F"}.
+     *
+     * @param exchange The request and its response
+     * @param solution The solution, null if none was found
+     * @param cached true if the solution came from the cache
+     * @param start The time the request arrived in nanoseconds
+     * @throws IOException If the response can't be sent
+     */
+
+    private void sendSolution(HttpExchange exchange, List<Move> solution, boolean cached, long start) throws IOException {
+
+        JsonObject answer = new JsonObject();
+        answer.addProperty("solved", solution != null);
+        answer.addProperty("cached", cached);
+        if (solution != null) {
+            answer.addProperty("length", solution.size());
+            JsonArray moves = new JsonArray();
+            for (Move move : solution) {
+                JsonObject moveObject = new JsonObject();
+                moveObject.addProperty("card", move.getCard().toString());
+                moveObject.addProperty("from", move.getFrom().toString());
+                moveObject.addProperty("to", move.getTo().toString());
+                moves.add(moveObject);
+            }
+            answer.add("moves", moves);
+        }
+        answer.addProperty("micros", (System.nanoTime() - start) / 1000);
+
+        send(exchange, 200, answer);
+    }
+
+    /**
+     * Send an error.
+     *
+     * @param exchange The request and its response
+     * @param status The HTTP status
+     * @param message What went wrong
+     * @throws IOException If the response can't be sent
+     */
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        send(exchange, status, error);
+    }
+
+    /**
+     * Send a JSON response.
+     *
+     * @param exchange The request and its response
+     * @param status The HTTP status
+     * @param body The body
+     * @throws IOException If the response can't be sent
+     */
+
+    private void send(HttpExchange exchange, int status, JsonObject body) throws IOException {
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Run the service until the process is stopped.
+     *
+     * @param args The options:
+     *             <pre>[--port &lt;port&gt;] [--threads &lt;count&gt;] [--deadline &lt;seconds&gt;]</pre>
+     */
+
+    public static void main(String[] args) {
+
+        System.setProperty("java.util.logging.SimpleFormatter.format", "%1$tF %1$tT %4$s %2$s %5$s%6$s%n");
+        try {
+
+            int port = DEFAULT_PORT;
+            int threads = Runtime.getRuntime().availableProcessors();
+            long deadline = DEFAULT_DEADLINE;
+            for (int i = 0; i < args.length; i++)
+                if (args[i].equals("--port"))
+                    port = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--deadline"))
+                    deadline = Long.parseLong(args[++i]) * 1000;
+                else {
+                    System.err.println("usage: SolverService [--port <port>] [--threads <count>] [--deadline <seconds>]");
+                    System.exit(2);
+                }
+
+            // The searches log every solution and their statistics, that is too much for a service
+
+            Logger.getLogger(DepthFirstSearch.class.getName()).setLevel(Level.WARNING);
+            Logger.getLogger(BestSolution.class.getName()).setLevel(Level.WARNING);
+
+            new SolverService(port, threads, deadline).start();
+
+        } catch (Exception ex) {
+
+            ex.printStackTrace();
+            LOG.severe("Caught exception: " +  ex);
+            System.exit(1);
+        }
+    }
+}
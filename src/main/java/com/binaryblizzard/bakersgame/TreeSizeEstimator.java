@@ -0,0 +1,241 @@
+package com.binaryblizzard.bakersgame;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Estimates how big the search tree of a deal is before searching it, with Knuth's random probes. Each probe walks
+ * from the initial board to a leaf taking one of the moves at random, and a board with d moves stands for d times as
+ * many boards at the next depth, so the sum over the probe of the product of the numbers of moves so far is an
+ * unbiased estimate of the number of boards in the tree. The mean over many probes is the estimate.
+ * <p>
+ * A probe ends when it wins the game, runs out of moves or only has moves back to boards already on its path. The
+ * probes don't know about the boards the searches have seen before, so the estimate is of the tree rather than of the
+ * boards a search with a set of them would expand, and it is usually far too high for a whole deal. It is still good
+ * for telling a deal that solves in milliseconds from one that takes hours. The depths the probes win at show how
+ * long the solutions are and how easy they are to come across.
+ */
+
+public class TreeSizeEstimator {
+
+    /** The number of boards the probes may make if no budget is given. */
+
+    public static final long DEFAULT_NODE_BUDGET = 20_000;
+
+    /** The most moves in one probe. */
+
+    private static final int MAX_DEPTH = 1000;
+
+    /** The most probes in one estimate, whatever the budget. */
+
+    private static final int MAX_PROBES = 10_000;
+
+    /** The result of an estimate. */
+
+    public static final class Estimate {
+
+        /** The number of probes. */
+
+        private int probes = 0;
+
+        /** The sum over the probes of their estimates of the tree size. */
+
+        private double sizeSum = 0;
+
+        /** The number of probes that won the game. */
+
+        private int solved = 0;
+
+        /** The number of moves of each probe that won the game. */
+
+        private final List<Integer> solutionDepths = new ArrayList<>();
+
+        /** The sum of the numbers of moves of the probes. */
+
+        private long depthSum = 0;
+
+        /** The number of boards the probes made. */
+
+        private long boards = 0;
+
+        /** The time the probes took in nanoseconds. */
+
+        private long time = 0;
+
+        /**
+         * Get the estimated number of boards in the tree.
+         *
+         * @return The number of boards
+         */
+
+        public double getTreeSize() {
+            return (probes == 0) ? 0 : sizeSum / probes;
+        }
+
+        /**
+         * Get the share of the probes that won the game, i.e. how likely a random walk is to come across a solution.
+         *
+         * @return The share between 0 and 1
+         */
+
+        public double getSolutionRate() {
+            return (probes == 0) ? 0 : (double) solved / probes;
+        }
+
+        /**
+         * Get the median number of moves of the probes that won the game.
+         *
+         * @return The number of moves or -1 if no probe won
+         */
+
+        public int getMedianSolutionDepth() {
+            return solutionDepths.isEmpty() ? -1 : solutionDepths.stream().sorted().toList().get(solutionDepths.size() / 2);
+        }
+
+        /**
+         * Get the fewest moves of the probes that won the game.
+         *
+         * @return The number of moves or -1 if no probe won
+         */
+
+        public int getShortestSolutionDepth() {
+            return solutionDepths.stream().mapToInt(Integer::intValue).min().orElse(-1);
+        }
+
+        /**
+         * Get the number of boards the probes made each second, which is close to the rate a search makes them.
+         *
+         * @return The number of boards
+         */
+
+        public double getBoardsPerSecond() {
+            return (time == 0) ? 0 : boards * 1e9 / time;
+        }
+
+        /**
+         * Get the estimated time to search the whole tree at the rate the probes made boards.
+         *
+         * @return The time in milliseconds, capped at Long.MAX_VALUE
+         */
+
+        public long getTreeTime() {
+
+            double boardsPerSecond = getBoardsPerSecond();
+            return (boardsPerSecond == 0) ? Long.MAX_VALUE : (long) Math.min(Long.MAX_VALUE, getTreeSize() / boardsPerSecond * 1000);
+        }
+
+        /** @see Object#toString() */
+
+        @Override
+        public String toString() {
+
+            return String.format("%.3g boards in the tree from %d probes of %.1f moves on average, %d probes (%.1f%%) won%s, making %d boards in %d ms",
+                    getTreeSize(), probes, (probes == 0) ? 0.0 : (double) depthSum / probes, solved, 100 * getSolutionRate(),
+                    solved == 0 ? "" : " in " + getShortestSolutionDepth() + " moves at best and " + getMedianSolutionDepth() + " typically",
+                    boards, time / 1_000_000);
+        }
+    }
+
+    /** The context of the boards of the probes. */
+
+    private final SearchContext context;
+
+    /** Picks the moves of the probes. */
+
+    private final SplittableRandom random;
+
+    /**
+     * Create a TreeSizeEstimator.
+     *
+     * @param seed The seed for the random choice of moves
+     */
+
+    public TreeSizeEstimator(long seed) {
+
+        context = new SearchContext(seed, new MoveHistory());
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Estimate the size of the search tree of a deal. The probes stop when they have made the budget of boards, after
+     * MAX_PROBES probes, or at once if the deal has no moves, e.g. when it is already won.
+     *
+     * @param initialBoard The initial deal
+     * @param nodeBudget The number of boards the probes may make between them
+     * @return The estimate
+     */
+
+    public Estimate estimate(Board initialBoard, long nodeBudget) {
+
+        Estimate estimate = new Estimate();
+        long start = System.nanoTime();
+        while ((estimate.boards < nodeBudget) && (estimate.probes < MAX_PROBES)) {
+
+            // A probe that makes no boards found no moves from the deal, so every other probe would do the same
+
+            long boards = estimate.boards;
+            probe(new Board(initialBoard, context), estimate);
+            if (estimate.boards == boards)
+                break;
+        }
+        estimate.time = System.nanoTime() - start;
+
+        return estimate;
+    }
+
+    /**
+     * Walk from a board to a leaf taking a random move each time, adding the probe's estimate to the totals.
+     *
+     * @param board The board to start from
+     * @param estimate The totals
+     */
+
+    private void probe(Board board, Estimate estimate) {
+
+        Set<String> path = new HashSet<>();
+        path.add(board.getSignature());
+        double width = 1;
+        double size = 1;
+        int depth = 0;
+        board.computePendingMoves();
+
+        while (depth < MAX_DEPTH) {
+
+            // The dead boards are dropped straight away by the searches so they don't count
+
+            List<Board> nextBoards = new ArrayList<>();
+            Board wonBoard = null;
+            for (Board nextBoard : board.getNextBoards()) {
+                estimate.boards++;
+                if (nextBoard.gameIsWon())
+                    wonBoard = nextBoard;
+                else if (! nextBoard.isDead() && ! path.contains(nextBoard.getSignature()))
+                    nextBoards.add(nextBoard);
+            }
+
+            if (wonBoard != null) {
+                size += width;
+                depth++;
+                estimate.solved++;
+                estimate.solutionDepths.add(depth);
+                break;
+            }
+
+            if (nextBoards.isEmpty())
+                break;
+
+            width *= nextBoards.size();
+            size += width;
+            depth++;
+            board = nextBoards.get(random.nextInt(nextBoards.size()));
+            path.add(board.getSignature());
+        }
+
+        estimate.probes++;
+        estimate.sizeSum += size;
+        estimate.depthSum += depth;
+    }
+}
@@ -7,7 +7,6 @@ import com.binaryblizzard.bakersgame.Move;
 
 import java.util.List;
 
-@SuppressWarnings({"unchecked"})
 public class ReserveEmptySlotForNextMove implements Heuristic {
 
     /**
@@ -23,18 +22,19 @@ public class ReserveEmptySlotForNextMove implements Heuristic {
         CardPosition from = move.getFrom();
         CardPosition to = move.getTo();
         Card card = move.getCard();
-        List<Card>[] tableau = board.getTableau();
         if (from.getArea() == CardPosition.Area.RESERVE && to.getArea() == CardPosition.Area.TABLEAU) {
 
             // Check the other cards in the tableau and see if any of them can be moved on to this move's card in the next turn
             // There is an extra bonus if this will empty a slot in the tableau
 
-            for (int i = 0; i < tableau.length; i++)
-                if (i != to.getColumn() && (! tableau[i].isEmpty())) {
-                    Card futureCard = tableau[i].get(tableau[i].size() - 1);
+            for (int i = 0; i < CardPosition.TABLEAU.length; i++) {
+                List<Card> column = board.getColumn(i);
+                if (i != to.getColumn() && (! column.isEmpty())) {
+                    Card futureCard = column.get(column.size() - 1);
                     if ((futureCard.getSuit() == card.getSuit()) && (futureCard.getRank().getValue() == card.getRank().getValue() - 1))
-                        weight += (tableau[i].size() == 1 ? 2 : 1);
+                        weight += (column.size() == 1 ? 2 : 1);
                 }
+            }
         }
 
         return weight;
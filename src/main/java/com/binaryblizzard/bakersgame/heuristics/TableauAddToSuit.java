@@ -7,7 +7,6 @@ import com.binaryblizzard.bakersgame.Move;
 
 import java.util.List;
 
-@SuppressWarnings("unchecked")
 public class TableauAddToSuit implements Heuristic {
 
     /**
@@ -28,7 +27,7 @@ public class TableauAddToSuit implements Heuristic {
         // Collect information about the move
 
         Card card = move.getCard();
-        List<Card> targetColumn = board.getTableau()[to.getColumn()];
+        List<Card> targetColumn = board.getColumn(to.getColumn());
 
         // Check if the card at the bottom of the target column is the one higher than the current card in its suit
 
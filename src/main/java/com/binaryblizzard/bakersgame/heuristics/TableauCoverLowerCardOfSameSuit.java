@@ -7,7 +7,6 @@ import com.binaryblizzard.bakersgame.Move;
 
 import java.util.List;
 
-@SuppressWarnings("unchecked")
 public class TableauCoverLowerCardOfSameSuit implements Heuristic {
 
     /**
@@ -30,7 +29,7 @@ public class TableauCoverLowerCardOfSameSuit implements Heuristic {
         // Look at all the cards in the target column and add a penalty for any of the same suit and lesser rank
 
         Card card = move.getCard();
-        List<Card> targetColumn = board.getTableau()[to.getColumn()];
+        List<Card> targetColumn = board.getColumn(to.getColumn());
         for (int i = targetColumn.size() - 1; i >= 0; i--) {
             Card lowerCard = targetColumn.get(i);
             if ((lowerCard.getSuit() == card.getSuit()) && (lowerCard.getRank().getValue() < card.getRank().getValue())) {
@@ -18,8 +18,8 @@ public class TableauEmptyAColumn implements Heuristic {
         CardPosition from = move.getFrom();
         CardPosition to = move.getTo();
         int weight = 0;
-        if ((from.getArea() == CardPosition.Area.TABLEAU) && (board.getTableau()[from.getColumn()].size() == 1)) {
-            if ((to.getArea() == CardPosition.Area.TABLEAU) && (! board.getTableau()[to.getColumn()].isEmpty()))
+        if ((from.getArea() == CardPosition.Area.TABLEAU) && (board.getColumn(from.getColumn()).size() == 1)) {
+            if ((to.getArea() == CardPosition.Area.TABLEAU) && (! board.getColumn(to.getColumn()).isEmpty()))
                 weight = 2;
             else
                 weight = -5;
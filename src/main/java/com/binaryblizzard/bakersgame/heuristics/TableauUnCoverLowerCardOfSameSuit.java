@@ -7,7 +7,6 @@ import com.binaryblizzard.bakersgame.Move;
 
 import java.util.List;
 
-@SuppressWarnings("unchecked")
 public class TableauUnCoverLowerCardOfSameSuit implements Heuristic {
 
     /**
@@ -30,7 +29,7 @@ public class TableauUnCoverLowerCardOfSameSuit implements Heuristic {
         // Look at all the cards in the source column and add a bonus for any of the same suit and lesser rank
 
         Card card = move.getCard();
-        List<Card> sourceColumn = board.getTableau()[from.getColumn()];
+        List<Card> sourceColumn = board.getColumn(from.getColumn());
         for (int i = sourceColumn.size() - 2; i >= 0; i--) {
             Card uncoveredCard = sourceColumn.get(i);
             if ((uncoveredCard.getSuit() == card.getSuit()) && (uncoveredCard.getRank().getValue() < card.getRank().getValue())) {
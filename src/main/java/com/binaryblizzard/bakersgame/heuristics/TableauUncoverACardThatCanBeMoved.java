@@ -9,7 +9,6 @@ import com.binaryblizzard.bakersgame.Move;
 import java.util.ArrayList;
 import java.util.List;
 
-@SuppressWarnings("unchecked")
 public class TableauUncoverACardThatCanBeMoved implements Heuristic{
 
     /**
@@ -29,7 +28,7 @@ public class TableauUncoverACardThatCanBeMoved implements Heuristic{
             Card card = move.getCard();
             CardPosition from = move.getFrom();
             CardPosition to = move.getTo();
-            List<Card> fromColumn = board.getTableau()[from.getColumn()];
+            List<Card> fromColumn = board.getColumn(from.getColumn());
             if (fromColumn.size() > 1) {
 
                 // Get the uncovered card figure create a list of columns that we can't move it to
@@ -42,7 +41,7 @@ public class TableauUncoverACardThatCanBeMoved implements Heuristic{
 
                 // Check if it can move the uncovered card to another column
 
-                for (int i = 0; i < board.getTableau().length; i++)
+                for (int i = 0; i < CardPosition.TABLEAU.length; i++)
                     if (! exclude.contains(i) && board.isMoveLegal(uncoveredCard, new CardPosition(CardPosition.Area.TABLEAU, i)))
                         weight++;
 
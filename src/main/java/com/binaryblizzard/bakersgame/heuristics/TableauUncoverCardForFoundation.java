@@ -7,7 +7,6 @@ import com.binaryblizzard.bakersgame.Move;
 
 import java.util.List;
 
-@SuppressWarnings("unchecked")
 public class TableauUncoverCardForFoundation implements Heuristic {
 
     /**
@@ -23,7 +22,7 @@ public class TableauUncoverCardForFoundation implements Heuristic {
         CardPosition from = move.getFrom();
         if (from.getArea() == CardPosition.Area.TABLEAU) {
 
-            List<Card> fromColumn = board.getTableau()[from.getColumn()];
+            List<Card> fromColumn = board.getColumn(from.getColumn());
             if (fromColumn.size() > 1) {
                 Card uncovered = fromColumn.get(fromColumn.size() - 2);
                 if (board.isMoveLegal(uncovered, CardPosition.FOUNDATION))
@@ -0,0 +1,81 @@
+package com.binaryblizzard.bakersgame;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for BestSolution.
+ */
+
+public class BestSolutionTest {
+
+    /**
+     * Find a solution to a board with a depth first search.
+     *
+     * @param board The board
+     * @return The winning board
+     */
+
+    private static Board solve(Board board) {
+
+        BestSolution bestSolution = new BestSolution(1, 0);
+        new DepthFirstSearch(board, new SearchContext(2, new MoveHistory()), bestSolution).run();
+        assertNotNull(bestSolution.getSolution(), "No solution to start from");
+
+        Board wonBoard = board;
+        for (Move move : bestSolution.getSolution())
+            wonBoard = wonBoard.applyMove(move);
+        return wonBoard;
+    }
+
+    /**
+     * A seeded solution bounds the searches but is not counted as one of the solutions of the run.
+     *
+     * @throws IOException If the board can't be read
+     */
+
+    @Test
+    public void seedIsNotCountedAsASolution() throws IOException {
+
+        Board board = new Board("board2.json");
+        Board wonBoard = solve(board);
+
+        BestSolution bestSolution = new BestSolution(1, 0);
+        bestSolution.seed(wonBoard, "known solution");
+
+        assertEquals(wonBoard.getSolutionLength(), bestSolution.getBestLength());
+        assertEquals(0, bestSolution.getSolutions());
+        assertFalse(bestSolution.isFinished());
+    }
+
+    /**
+     * A warm-started run that stops after one solution still searches for a shorter one.
+     *
+     * @throws IOException If the board can't be read
+     */
+
+    @Test
+    public void warmStartWithOneSolutionStillSearches() throws IOException {
+
+        Board board = new Board("board2.json");
+        Board wonBoard = solve(board);
+        List<Move> known = wonBoard.getSolution();
+
+        BestSolution bestSolution = new BestSolution(1, 0, 100_000);
+        bestSolution.seed(wonBoard, "known solution");
+        SearchContext context = new SearchContext(3, new MoveHistory());
+        context.setPruning(true);
+        context.setKnownSolution(known);
+        new DepthFirstSearch(board, context, bestSolution).run();
+
+        assertTrue(bestSolution.getNodes() > 0, "The warm-started search expanded no boards");
+        assertTrue(bestSolution.getBestLength() <= known.size());
+    }
+}